@@ -0,0 +1,58 @@
+package ecommerce.carga;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Latências em nanossegundos, guardadas sem caixas; os percentis ordenam uma cópia ao final
+final class Amostras {
+
+    private final ReentrantLock trava = new ReentrantLock();
+    private long[] valores = new long[1 << 16];
+    private int tamanho;
+
+    void registrar(long nanos) {
+        trava.lock();
+        try {
+            if (tamanho == valores.length) {
+                valores = Arrays.copyOf(valores, tamanho * 2);
+            }
+            valores[tamanho++] = nanos;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    Resumo resumir() {
+        long[] ordenados;
+        trava.lock();
+        try {
+            ordenados = Arrays.copyOf(valores, tamanho);
+        } finally {
+            trava.unlock();
+        }
+        Arrays.sort(ordenados);
+        if (ordenados.length == 0) {
+            return new Resumo(0, 0, 0, 0, 0, 0, 0);
+        }
+        double soma = 0;
+        for (long valor : ordenados) {
+            soma += valor;
+        }
+        return new Resumo(ordenados.length, milissegundos(soma / ordenados.length), percentil(ordenados, 50),
+                percentil(ordenados, 95), percentil(ordenados, 99), percentil(ordenados, 99.9),
+                milissegundos(ordenados[ordenados.length - 1]));
+    }
+
+    // Método do posto mais próximo
+    private static double percentil(long[] ordenados, double percentil) {
+        int posto = (int) Math.ceil(percentil / 100 * ordenados.length);
+        return milissegundos(ordenados[Math.max(0, posto - 1)]);
+    }
+
+    private static double milissegundos(double nanos) {
+        return Math.round(nanos / 1_000) / 1_000.0;
+    }
+
+    record Resumo(int quantidade, double media, double p50, double p95, double p99, double p999, double maximo) {
+    }
+}
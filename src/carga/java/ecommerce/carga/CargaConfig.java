@@ -0,0 +1,93 @@
+package ecommerce.carga;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.external.fake.PagamentoSimulado;
+
+/*
+ * Substitui os serviços simulados por versões com latência configurável, com os mesmos nomes de
+ * bean: ficam por baixo dos compartimentos e do agrupamento de chamadas (quando ligado), então a
+ * carga passa pela aplicação inteira. O pagamento autoriza tudo, exceto a fração configurada de recusas.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+class CargaConfig {
+
+    @Bean(name = "pagamentoSimulado")
+    PagamentoSimulado pagamentoComLatencia(@Value("${carga.latencia.pagamento:20ms}") Duration latencia,
+            @Value("${carga.pagamento.taxa-recusa:0.02}") double taxaRecusa) {
+        return new PagamentoComLatencia(latencia, taxaRecusa);
+    }
+
+    @Bean(name = "estoqueSimulado")
+    EstoqueSimulado estoqueComLatencia(@Value("${carga.latencia.estoque:5ms}") Duration latencia,
+            @Value("${ecommerce.estoque.simulado.quantidade-inicial:0}") long quantidadeInicial,
+            @Value("${ecommerce.estoque.simulado.listras:256}") int listras) {
+        return new EstoqueComLatencia(latencia, quantidadeInicial, listras);
+    }
+
+    static class PagamentoComLatencia extends PagamentoSimulado {
+
+        private final Duration latencia;
+        private final double taxaRecusa;
+
+        PagamentoComLatencia(Duration latencia, double taxaRecusa) {
+            this.latencia = latencia;
+            this.taxaRecusa = taxaRecusa;
+        }
+
+        @Override
+        public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+            esperar(latencia);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return new PagamentoDTO(random.nextDouble() >= taxaRecusa, random.nextLong(Long.MAX_VALUE));
+        }
+
+        @Override
+        public void cancelarPagamento(Long pagamentoId, Long usuarioId) {
+            esperar(latencia);
+        }
+    }
+
+    static class EstoqueComLatencia extends EstoqueSimulado {
+
+        private final Duration latencia;
+
+        EstoqueComLatencia(Duration latencia, long quantidadeInicial, int listras) {
+            super(quantidadeInicial, listras);
+            this.latencia = latencia;
+        }
+
+        @Override
+        public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+            esperar(latencia);
+            return super.darBaixa(produtosIds, produtosQuantidades);
+        }
+
+        @Override
+        public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+            esperar(latencia);
+            return super.verificarDisponibilidade(produtosIds, produtosQuantidades);
+        }
+    }
+
+    private static void esperar(Duration latencia) {
+        if (latencia.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(latencia);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
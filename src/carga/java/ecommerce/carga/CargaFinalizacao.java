@@ -0,0 +1,239 @@
+package ecommerce.carga;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ecommerce.CompraApplication;
+import ecommerce.entity.SituacaoEvento;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.EventoEstoqueRepository;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.service.CatalogoProdutos;
+
+/*
+ * Teste de carga do POST /finalizar: sobe a aplicação inteira numa porta livre, com estoque e
+ * pagamento substituídos por versões com latência configurável (CargaConfig), popula o H2 e
+ * dispara compras por HTTP durante o aquecimento e depois durante a medição. Só a medição entra
+ * no relatório, gravado em JSON em carga.saida.
+ *
+ * Com carga.taxa = 0 a carga é fechada: carga.concorrencia clientes, cada um enviando a próxima
+ * compra assim que recebe a resposta. Com carga.taxa > 0 a carga é aberta: as compras saem em
+ * horários fixos, a latência conta a partir do horário previsto (uma aplicação lenta não reduz a
+ * carga nem esconde a fila) e carga.concorrencia limita as compras em voo. As que passariam do
+ * limite esperam uma vaga e são enviadas depois, com a espera dentro da latência: nenhuma compra
+ * prevista fica fora das amostras, justamente as dos períodos mais lentos.
+ */
+public class CargaFinalizacao {
+
+    private static final Logger log = LoggerFactory.getLogger(CargaFinalizacao.class);
+
+    private static final Duration TEMPO_LIMITE = Duration.ofSeconds(30);
+
+    private static final Map<String, Object> PADROES = Map.of(
+            "server.port", 0,
+            "spring.main.banner-mode", "off",
+            "spring.main.allow-bean-definition-overriding", true,
+            "logging.level.root", "WARN",
+            "logging.level.ecommerce.carga", "INFO",
+            // Threads dos compartimentos param depois do Tomcat; o aviso de vazamento na saída é ruído
+            "logging.level.org.apache.catalina.loader", "ERROR",
+            // Estoque suficiente para a medição inteira, mesmo nos produtos mais populares
+            "ecommerce.estoque.simulado.quantidade-inicial", 1_000_000_000_000L);
+
+    private final ConfigurableApplicationContext contexto;
+    private final HttpClient http;
+    private final String base;
+
+    CargaFinalizacao(ConfigurableApplicationContext contexto, ExecutorService executor) {
+        this.contexto = contexto;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(executor)
+                .build();
+        this.base = "http://localhost:" + ((WebServerApplicationContext) contexto).getWebServer().getPort();
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext contexto = new SpringApplicationBuilder(CompraApplication.class, CargaConfig.class)
+                .properties(PADROES)
+                .run(args);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            new CargaFinalizacao(contexto, executor).executar(args);
+        } finally {
+            SpringApplication.exit(contexto);
+        }
+    }
+
+    private void executar(String[] args) throws IOException {
+        Environment ambiente = contexto.getEnvironment();
+        int clientes = ambiente.getProperty("carga.clientes", Integer.class, 1_000);
+        int produtos = ambiente.getProperty("carga.produtos", Integer.class, 500);
+        int carrinhos = ambiente.getProperty("carga.carrinhos", Integer.class, 5_000);
+        int concorrencia = ambiente.getProperty("carga.concorrencia", Integer.class, 64);
+        double taxa = ambiente.getProperty("carga.taxa", Double.class, 0.0);
+        Duration aquecimento = ambiente.getProperty("carga.aquecimento", Duration.class, Duration.ofSeconds(10));
+        Duration duracao = ambiente.getProperty("carga.duracao", Duration.class, Duration.ofSeconds(30));
+        long semente = ambiente.getProperty("carga.semente", Long.class, 42L);
+        Path saida = Path.of(ambiente.getProperty("carga.saida", "target/carga-resultado.json"));
+
+        long inicioSemeadura = System.nanoTime();
+        Semeador.Massa massa = new Semeador(contexto.getBean(ClienteRepository.class),
+                contexto.getBean(ProdutoRepository.class), contexto.getBean(CarrinhoDeComprasRepository.class),
+                contexto.getBean(TransactionTemplate.class), semente)
+                .semear(clientes, produtos, carrinhos, contexto.getBean(CatalogoProdutos.class).versaoPrecos());
+        log.info("{} clientes, {} produtos e {} carrinhos gravados em {} ms.", clientes, produtos, carrinhos,
+                (System.nanoTime() - inicioSemeadura) / 1_000_000);
+
+        log.info("Aquecendo por {} s.", aquecimento.toSeconds());
+        rodar(massa, aquecimento, concorrencia, taxa, new Medicao());
+        log.info("Medindo por {} s.", duracao.toSeconds());
+        Medicao medicao = new Medicao();
+        Instant iniciadaEm = Instant.now();
+        long inicio = System.nanoTime();
+        rodar(massa, duracao, concorrencia, taxa, medicao);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        Amostras.Resumo latencia = medicao.amostras.resumir();
+        Map<String, Object> configuracao = new LinkedHashMap<>();
+        configuracao.put("clientes", clientes);
+        configuracao.put("produtos", produtos);
+        configuracao.put("carrinhos", carrinhos);
+        configuracao.put("modo", taxa > 0 ? "aberto" : "fechado");
+        configuracao.put("concorrencia", concorrencia);
+        configuracao.put("taxa", taxa);
+        configuracao.put("aquecimentoSegundos", aquecimento.toSeconds());
+        configuracao.put("duracaoSegundos", duracao.toSeconds());
+        configuracao.put("latenciaPagamento", ambiente.getProperty("carga.latencia.pagamento", "20ms"));
+        configuracao.put("latenciaEstoque", ambiente.getProperty("carga.latencia.estoque", "5ms"));
+        configuracao.put("semente", semente);
+        configuracao.put("argumentos", List.of(args));
+
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("inicio", iniciadaEm.toString());
+        relatorio.put("configuracao", configuracao);
+        relatorio.put("segundos", segundos);
+        relatorio.put("respostas", latencia.quantidade());
+        relatorio.put("vazao", latencia.quantidade() / segundos);
+        relatorio.put("latenciaMs", latencia);
+        relatorio.put("status", medicao.statusOrdenados());
+        relatorio.put("falhasDeConexao", medicao.falhas.sum());
+        // Compras da carga aberta que esperaram vaga no limite de concorrência; a espera está na latência
+        relatorio.put("enfileiradas", medicao.enfileiradas.sum());
+        // Baixas de estoque ainda no outbox ao fim da medição; crescendo de uma rodada para outra, o despachante não acompanha
+        relatorio.put("baixasPendentes", contexto.getBean(EventoEstoqueRepository.class).countBySituacao(SituacaoEvento.PENDENTE));
+
+        if (saida.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(saida.toAbsolutePath().getParent());
+        }
+        contexto.getBean(ObjectMapper.class).writerWithDefaultPrettyPrinter().writeValue(saida.toFile(), relatorio);
+        log.info("{} respostas em {} s: {} por segundo, p50 {} ms, p95 {} ms, p99 {} ms, status {}. Relatório em {}.",
+                latencia.quantidade(), String.format("%.1f", segundos), String.format("%.1f", latencia.quantidade() / segundos),
+                latencia.p50(), latencia.p95(), latencia.p99(), medicao.statusOrdenados(), saida.toAbsolutePath());
+    }
+
+    private void rodar(Semeador.Massa massa, Duration duracao, int concorrencia, double taxa, Medicao medicao) {
+        long inicio = System.nanoTime();
+        long fim = inicio + duracao.toNanos();
+        try (ExecutorService clientes = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (taxa <= 0) {
+                for (int i = 0; i < concorrencia; i++) {
+                    clientes.execute(() -> {
+                        while (System.nanoTime() < fim && !Thread.currentThread().isInterrupted()) {
+                            enviar(massa, System.nanoTime(), medicao);
+                        }
+                    });
+                }
+                return;
+            }
+            Semaphore emVoo = new Semaphore(concorrencia);
+            for (long n = 0;; n++) {
+                long previsto = inicio + (long) (n * 1e9 / taxa);
+                if (previsto >= fim) {
+                    return;
+                }
+                long espera = previsto - System.nanoTime();
+                if (espera > 0) {
+                    LockSupport.parkNanos(espera);
+                }
+                clientes.execute(() -> {
+                    if (!emVoo.tryAcquire()) {
+                        medicao.enfileiradas.increment();
+                        try {
+                            emVoo.acquire();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                    try {
+                        enviar(massa, previsto, medicao);
+                    } finally {
+                        emVoo.release();
+                    }
+                });
+            }
+        }
+    }
+
+    private void enviar(Semeador.Massa massa, long inicio, Medicao medicao) {
+        int i = ThreadLocalRandom.current().nextInt(massa.carrinhoIds().length);
+        HttpRequest requisicao = HttpRequest.newBuilder(URI.create(base + "/finalizar?carrinhoId="
+                        + massa.carrinhoIds()[i] + "&clienteId=" + massa.clienteIds()[i]))
+                .timeout(TEMPO_LIMITE)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        try {
+            HttpResponse<Void> resposta = http.send(requisicao, HttpResponse.BodyHandlers.discarding());
+            medicao.amostras.registrar(System.nanoTime() - inicio);
+            medicao.status.computeIfAbsent(resposta.statusCode(), status -> new LongAdder()).increment();
+        } catch (IOException e) {
+            medicao.falhas.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Medicao {
+        final Amostras amostras = new Amostras();
+        final Map<Integer, LongAdder> status = new ConcurrentHashMap<>();
+        final LongAdder falhas = new LongAdder();
+        final LongAdder enfileiradas = new LongAdder();
+
+        Map<Integer, Long> statusOrdenados() {
+            Map<Integer, Long> ordenados = new TreeMap<>();
+            status.forEach((codigo, quantidade) -> ordenados.put(codigo, quantidade.sum()));
+            return ordenados;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ecommerce.carga;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.ProdutoRepository;
+
+/*
+ * Popula o H2 com distribuições próximas das de produção: 70% dos clientes BRONZE, 25% PRATA e
+ * 5% OURO; preços log-normais (mediana de R$ 80, entre R$ 1 e R$ 5.000); 60% dos produtos com
+ * até 1 kg, 30% entre 2 e 5 kg e 10% volumosos, de 10 a 40 kg; carrinhos com 1 a 20 itens (média
+ * perto de 3) e produtos escolhidos por popularidade de Zipf. Cada lote de 1.000 registros é
+ * gravado em uma transação, então o contexto de persistência não cresce com a massa. Os itens
+ * apontam para os produtos já gravados (destacados), que só contribuem com a chave estrangeira.
+ */
+final class Semeador {
+
+    private static final int LOTE = 1_000;
+
+    private final ClienteRepository clientes;
+    private final ProdutoRepository produtos;
+    private final CarrinhoDeComprasRepository carrinhos;
+    private final TransactionTemplate transacao;
+    private final Random random;
+
+    Semeador(ClienteRepository clientes, ProdutoRepository produtos, CarrinhoDeComprasRepository carrinhos,
+            TransactionTemplate transacao, long semente) {
+        this.clientes = clientes;
+        this.produtos = produtos;
+        this.carrinhos = carrinhos;
+        this.transacao = transacao;
+        this.random = new Random(semente);
+    }
+
+    // Pares (carrinho, dono do carrinho) prontos para o /finalizar
+    record Massa(long[] carrinhoIds, long[] clienteIds) {
+    }
+
+    // Os carrinhos saem com subtotal e peso somados na versão de preços informada, como os montados pelo serviço
+    Massa semear(int quantidadeClientes, int quantidadeProdutos, int quantidadeCarrinhos, long versaoPrecos) {
+        long[] clienteIds = gravarClientes(quantidadeClientes);
+        Produto[] produtosGravados = gravarProdutos(quantidadeProdutos);
+        double[] popularidade = zipf(produtosGravados.length);
+
+        long[] carrinhoIds = new long[quantidadeCarrinhos];
+        long[] donos = new long[quantidadeCarrinhos];
+        for (int inicio = 0; inicio < quantidadeCarrinhos; inicio += LOTE) {
+            int fim = Math.min(quantidadeCarrinhos, inicio + LOTE);
+            int primeiro = inicio;
+            transacao.executeWithoutResult(status -> {
+                List<CarrinhoDeCompras> lote = new ArrayList<>(fim - primeiro);
+                for (int i = primeiro; i < fim; i++) {
+                    donos[i] = clienteIds[random.nextInt(clienteIds.length)];
+                    List<ItemCompra> itens = new ArrayList<>();
+                    for (int item = quantidadeItens(); item > 0; item--) {
+                        itens.add(new ItemCompra(null, produtosGravados[escolher(popularidade)], quantidade()));
+                    }
+                    CarrinhoDeCompras carrinho = new CarrinhoDeCompras(null, clientes.getReferenceById(donos[i]), itens, null);
+                    carrinho.recalcularTotais(versaoPrecos);
+                    lote.add(carrinho);
+                }
+                List<CarrinhoDeCompras> gravados = carrinhos.saveAll(lote);
+                for (int i = 0; i < gravados.size(); i++) {
+                    carrinhoIds[primeiro + i] = gravados.get(i).getId();
+                }
+            });
+        }
+        return new Massa(carrinhoIds, donos);
+    }
+
+    private long[] gravarClientes(int quantidade) {
+        long[] ids = new long[quantidade];
+        for (int inicio = 0; inicio < quantidade; inicio += LOTE) {
+            int fim = Math.min(quantidade, inicio + LOTE);
+            int primeiro = inicio;
+            transacao.executeWithoutResult(status -> {
+                List<Cliente> lote = new ArrayList<>(fim - primeiro);
+                for (int i = primeiro; i < fim; i++) {
+                    lote.add(new Cliente(null, "Cliente " + i, "Endereço " + i, tipoCliente()));
+                }
+                List<Cliente> gravados = clientes.saveAll(lote);
+                for (int i = 0; i < gravados.size(); i++) {
+                    ids[primeiro + i] = gravados.get(i).getId();
+                }
+            });
+        }
+        return ids;
+    }
+
+    private Produto[] gravarProdutos(int quantidade) {
+        Produto[] gravados = new Produto[quantidade];
+        TipoProduto[] tipos = TipoProduto.values();
+        for (int inicio = 0; inicio < quantidade; inicio += LOTE) {
+            int fim = Math.min(quantidade, inicio + LOTE);
+            int primeiro = inicio;
+            transacao.executeWithoutResult(status -> {
+                List<Produto> lote = new ArrayList<>(fim - primeiro);
+                for (int i = primeiro; i < fim; i++) {
+                    lote.add(new Produto(null, "Produto " + i, "Descrição do produto " + i, preco(), peso(),
+                            tipos[random.nextInt(tipos.length)]));
+                }
+                List<Produto> salvos = produtos.saveAll(lote);
+                for (int i = 0; i < salvos.size(); i++) {
+                    gravados[primeiro + i] = salvos.get(i);
+                }
+            });
+        }
+        return gravados;
+    }
+
+    private TipoCliente tipoCliente() {
+        int sorteio = random.nextInt(100);
+        if (sorteio < 70) {
+            return TipoCliente.BRONZE;
+        }
+        return sorteio < 95 ? TipoCliente.PRATA : TipoCliente.OURO;
+    }
+
+    private BigDecimal preco() {
+        double reais = Math.exp(Math.log(80) + random.nextGaussian());
+        return BigDecimal.valueOf(Math.round(Math.min(5_000, Math.max(1, reais)) * 100), 2);
+    }
+
+    private int peso() {
+        int sorteio = random.nextInt(100);
+        if (sorteio < 60) {
+            return random.nextInt(2);
+        }
+        return sorteio < 90 ? 2 + random.nextInt(4) : 10 + random.nextInt(31);
+    }
+
+    // 1 + geométrica com p = 0,4, limitada a 20 itens
+    private int quantidadeItens() {
+        int itens = 1;
+        while (itens < 20 && random.nextDouble() >= 0.4) {
+            itens++;
+        }
+        return itens;
+    }
+
+    private long quantidade() {
+        int sorteio = random.nextInt(100);
+        if (sorteio < 75) {
+            return 1;
+        }
+        return sorteio < 95 ? 2 : 3 + random.nextInt(3);
+    }
+
+    // Distribuição acumulada de Zipf (s = 1): o produto de posição k é escolhido com peso 1/k
+    private static double[] zipf(int quantidade) {
+        double[] acumulada = new double[quantidade];
+        double soma = 0;
+        for (int k = 0; k < quantidade; k++) {
+            soma += 1.0 / (k + 1);
+            acumulada[k] = soma;
+        }
+        for (int k = 0; k < quantidade; k++) {
+            acumulada[k] /= soma;
+        }
+        return acumulada;
+    }
+
+    private int escolher(double[] acumulada) {
+        int posicao = Arrays.binarySearch(acumulada, random.nextDouble());
+        return Math.min(acumulada.length - 1, posicao >= 0 ? posicao : -posicao - 1);
+    }
+}
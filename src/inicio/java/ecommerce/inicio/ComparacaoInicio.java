@@ -0,0 +1,177 @@
+package ecommerce.inicio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Compara o tempo de início da aplicação em cada modo gerado pelo perfil inicio-rapido: jar
+ * executável, jar fino, jar fino com o código AOT e jar fino com AOT e AppCDS, mais a imagem
+ * nativa quando ela existir. Cada execução sobe a aplicação numa porta livre com
+ * ecommerce.inicio.encerrar-apos-iniciar=true e mede o "process running for" do log do Spring
+ * (tempo até a aplicação ficar pronta, desde o início da JVM) e o tempo total do processo.
+ * As repetições alternam os modos, para que um aquecimento do disco não favoreça só o primeiro,
+ * e uma execução de cada modo antes da medição é descartada. O relatório sai em JSON.
+ */
+public class ComparacaoInicio {
+
+    private static final Logger log = LoggerFactory.getLogger(ComparacaoInicio.class);
+
+    private static final Pattern INICIADA = Pattern.compile(
+            "Started \\S+ in [\\d.]+ seconds \\(process running for ([\\d.]+)\\)");
+
+    private static final List<String> ARGUMENTOS_APLICACAO = List.of(
+            "--ecommerce.inicio.encerrar-apos-iniciar=true",
+            "--server.port=0",
+            "--spring.main.banner-mode=off");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> opcoes = lerOpcoes(args);
+        Path diretorio = Path.of(opcoes.getOrDefault("inicio.diretorio", "target/inicio-rapido"));
+        Path jar = Path.of(opcoes.get("inicio.jar"));
+        int repeticoes = Integer.parseInt(opcoes.getOrDefault("inicio.repeticoes", "5"));
+        Path saida = Path.of(opcoes.getOrDefault("inicio.saida", diretorio.resolve("comparacao-inicio.json").toString()));
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        Map<String, List<String>> modos = new LinkedHashMap<>();
+        adicionar(modos, "jar executável", opcoes.get("inicio.executavel"), java, "-jar", opcoes.get("inicio.executavel"));
+        adicionar(modos, "jar fino", jar.toString(), java, "-jar", jar.toString());
+        adicionar(modos, "jar fino + AOT", jar.toString(), java, "-Dspring.aot.enabled=true", "-jar", jar.toString());
+        Path arquivoCds = diretorio.resolve("app.jsa");
+        adicionar(modos, "jar fino + AOT + AppCDS", arquivoCds.toString(), java, "-Dspring.aot.enabled=true",
+                "-XX:SharedArchiveFile=" + arquivoCds, "-Xshare:auto", "-jar", jar.toString());
+        adicionar(modos, "imagem nativa", opcoes.get("inicio.nativo"), opcoes.get("inicio.nativo"));
+
+        Map<String, Medicoes> medicoes = new LinkedHashMap<>();
+        modos.keySet().forEach(modo -> medicoes.put(modo, new Medicoes()));
+        for (int rodada = -1; rodada < repeticoes; rodada++) {
+            for (Map.Entry<String, List<String>> modo : modos.entrySet()) {
+                Execucao execucao = executar(modo.getValue());
+                if (rodada >= 0) {
+                    medicoes.get(modo.getKey()).registrar(execucao);
+                }
+                log.info("{} {}: pronta em {} ms, processo em {} ms.", rodada < 0 ? "Aquecimento" : "Rodada " + (rodada + 1),
+                        modo.getKey(), execucao.prontaMs(), execucao.totalMs());
+            }
+        }
+
+        List<Map<String, Object>> resultados = new ArrayList<>();
+        for (Map.Entry<String, Medicoes> medicao : medicoes.entrySet()) {
+            Map<String, Object> resultado = new LinkedHashMap<>();
+            resultado.put("modo", medicao.getKey());
+            resultado.put("comando", modos.get(medicao.getKey()));
+            resultado.put("prontaMs", medicao.getValue().prontas.resumir());
+            resultado.put("processoMs", medicao.getValue().totais.resumir());
+            resultados.add(resultado);
+        }
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("inicio", Instant.now().toString());
+        relatorio.put("java", System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"));
+        relatorio.put("processadores", Runtime.getRuntime().availableProcessors());
+        relatorio.put("repeticoes", repeticoes);
+        relatorio.put("modos", resultados);
+
+        if (saida.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(saida.toAbsolutePath().getParent());
+        }
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(saida.toFile(), relatorio);
+        for (Map<String, Object> resultado : resultados) {
+            Resumo pronta = (Resumo) resultado.get("prontaMs");
+            Resumo processo = (Resumo) resultado.get("processoMs");
+            log.info(String.format("%-26s pronta em %6d ms (mínimo %6d), processo em %6d ms", resultado.get("modo"),
+                    pronta.mediana(), pronta.minimo(), processo.mediana()));
+        }
+        log.info("Relatório em {}.", saida.toAbsolutePath());
+    }
+
+    // Modos cujo arquivo não existe (imagem nativa não compilada, por exemplo) ficam de fora
+    private static void adicionar(Map<String, List<String>> modos, String modo, String arquivo, String... comando) {
+        if (arquivo == null || !Files.exists(Path.of(arquivo))) {
+            log.warn("Modo \"{}\" ignorado: {} não encontrado.", modo, arquivo);
+            return;
+        }
+        List<String> completo = new ArrayList<>(Arrays.asList(comando));
+        completo.addAll(ARGUMENTOS_APLICACAO);
+        modos.put(modo, completo);
+    }
+
+    private static Execucao executar(List<String> comando) throws IOException, InterruptedException {
+        long inicio = System.nanoTime();
+        Process processo = new ProcessBuilder(comando).redirectErrorStream(true).start();
+        long prontaMs = -1;
+        List<String> ultimas = new ArrayList<>();
+        try (BufferedReader saida = new BufferedReader(
+                new InputStreamReader(processo.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String linha = saida.readLine(); linha != null; linha = saida.readLine()) {
+                Matcher iniciada = INICIADA.matcher(linha);
+                if (iniciada.find()) {
+                    prontaMs = Math.round(Double.parseDouble(iniciada.group(1)) * 1_000);
+                }
+                if (ultimas.size() == 20) {
+                    ultimas.remove(0);
+                }
+                ultimas.add(linha);
+            }
+        }
+        int codigo = processo.waitFor();
+        long totalMs = (System.nanoTime() - inicio) / 1_000_000;
+        if (codigo != 0 || prontaMs < 0) {
+            throw new IllegalStateException("Execução de " + comando + " terminou com código " + codigo
+                    + " sem registrar o início:\n" + String.join("\n", ultimas));
+        }
+        return new Execucao(prontaMs, totalMs);
+    }
+
+    private static Map<String, String> lerOpcoes(String[] args) {
+        Map<String, String> opcoes = new HashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (arg.startsWith("--") && igual > 2) {
+                opcoes.put(arg.substring(2, igual), arg.substring(igual + 1));
+            }
+        }
+        return opcoes;
+    }
+
+    private record Execucao(long prontaMs, long totalMs) {
+    }
+
+    private static final class Medicoes {
+        final Valores prontas = new Valores();
+        final Valores totais = new Valores();
+
+        void registrar(Execucao execucao) {
+            prontas.valores.add(execucao.prontaMs());
+            totais.valores.add(execucao.totalMs());
+        }
+    }
+
+    private static final class Valores {
+        final List<Long> valores = new ArrayList<>();
+
+        Resumo resumir() {
+            long[] ordenados = valores.stream().mapToLong(Long::longValue).sorted().toArray();
+            return new Resumo(ordenados[0], ordenados[(ordenados.length - 1) / 2], ordenados[ordenados.length - 1]);
+        }
+    }
+
+    record Resumo(long minimo, long mediana, long maximo) {
+    }
+}
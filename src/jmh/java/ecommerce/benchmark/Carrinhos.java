@@ -0,0 +1,56 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+public final class Carrinhos {
+
+    // Peso total do carrinho em cada faixa de frete
+    public enum FaixaPeso {
+        ISENTO(5), ATE_10(10), ATE_50(50), ACIMA_50(20_000);
+
+        final int pesoTotal;
+
+        FaixaPeso(int pesoTotal) {
+            this.pesoTotal = pesoTotal;
+        }
+    }
+
+    // Custo aproximado dos produtos em cada faixa de desconto, em centavos
+    public enum FaixaDesconto {
+        SEM_DESCONTO(10_000), DESCONTO_10(60_000), DESCONTO_20(150_000);
+
+        final long custoProdutos;
+
+        FaixaDesconto(long custoProdutos) {
+            this.custoProdutos = custoProdutos;
+        }
+    }
+
+    private Carrinhos() {
+    }
+
+    static CarrinhoDeCompras criar(int tamanho, TipoCliente tipoCliente, FaixaPeso faixaPeso,
+            FaixaDesconto faixaDesconto) {
+        Cliente cliente = new Cliente(1L, "Cliente", "Endereço", tipoCliente);
+        BigDecimal preco = BigDecimal.valueOf(Math.max(1, faixaDesconto.custoProdutos / tamanho), 2);
+
+        List<ItemCompra> itens = new ArrayList<>(tamanho);
+        for (int i = 0; i < tamanho; i++) {
+            // Distribui o peso para que a soma caia exatamente na faixa escolhida
+            int peso = faixaPeso.pesoTotal / tamanho + (i < faixaPeso.pesoTotal % tamanho ? 1 : 0);
+            Produto produto = new Produto((long) i + 1, "Produto " + i, "Descrição", preco, peso,
+                    TipoProduto.values()[i % TipoProduto.values().length]);
+            itens.add(new ItemCompra((long) i + 1, produto, 1L));
+        }
+        return new CarrinhoDeCompras(1L, cliente, itens, null);
+    }
+}
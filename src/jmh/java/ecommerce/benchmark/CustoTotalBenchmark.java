@@ -0,0 +1,64 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.TipoCliente;
+import ecommerce.service.CalculadoraCusto;
+
+/*
+ * Custo total por tamanho de carrinho, tipo de cliente, faixa de peso (frete) e faixa de desconto.
+ * calcularCustoTotalExato é o algoritmo original com BigDecimal, mantido como linha de base.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustoTotalBenchmark {
+
+    @Param({ "1", "10", "100", "1000", "10000" })
+    private int tamanho;
+
+    @Param({ "BRONZE", "PRATA", "OURO" })
+    private TipoCliente tipoCliente;
+
+    @Param({ "ISENTO", "ATE_10", "ATE_50", "ACIMA_50" })
+    private Carrinhos.FaixaPeso faixaPeso;
+
+    @Param({ "SEM_DESCONTO", "DESCONTO_10", "DESCONTO_20" })
+    private Carrinhos.FaixaDesconto faixaDesconto;
+
+    private final CalculadoraCusto calculadora = new CalculadoraCusto();
+
+    private CarrinhoDeCompras carrinho;
+
+    @Setup
+    public void setUp() {
+        carrinho = Carrinhos.criar(tamanho, tipoCliente, faixaPeso, faixaDesconto);
+    }
+
+    @Benchmark
+    public BigDecimal calcularCustoTotal() {
+        return calculadora.calcularCustoTotal(carrinho);
+    }
+
+    @Benchmark
+    public BigDecimal calcularCustoTotalExato() {
+        return calculadora.calcularCustoTotalExato(carrinho);
+    }
+}
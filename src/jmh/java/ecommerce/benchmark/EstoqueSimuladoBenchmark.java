@@ -0,0 +1,75 @@
+package ecommerce.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.external.fake.EstoqueSimulado;
+
+/*
+ * Vazão do estoque em memória com todas as threads disputando o mesmo conjunto de produtos.
+ * Poucos produtos simulam uma venda relâmpago; muitos produtos medem o custo sem contenção.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class EstoqueSimuladoBenchmark {
+
+    @Param({ "16", "100000" })
+    private int produtos;
+
+    @Param({ "1", "3" })
+    private int itensPorPedido;
+
+    private EstoqueSimulado estoque;
+
+    @Setup
+    public void setUp() {
+        estoque = new EstoqueSimulado(0, 256);
+        for (long id = 1; id <= produtos; id++) {
+            estoque.definirEstoque(id, Long.MAX_VALUE / 2);
+        }
+    }
+
+    @Benchmark
+    public EstoqueBaixaDTO darBaixa() {
+        return estoque.darBaixa(idsAleatorios(), quantidades());
+    }
+
+    @Benchmark
+    public DisponibilidadeDTO verificarDisponibilidade() {
+        return estoque.verificarDisponibilidade(idsAleatorios(), quantidades());
+    }
+
+    private List<Long> idsAleatorios() {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        Long[] ids = new Long[itensPorPedido];
+        for (int i = 0; i < itensPorPedido; i++) {
+            ids[i] = aleatorio.nextLong(1, produtos + 1);
+        }
+        return List.of(ids);
+    }
+
+    private List<Long> quantidades() {
+        return itensPorPedido == 1 ? List.of(1L) : List.of(1L, 1L, 1L);
+    }
+}
@@ -0,0 +1,172 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.Pedido;
+import ecommerce.entity.TipoCliente;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.ClienteService;
+import ecommerce.service.CalculadoraCusto;
+import ecommerce.service.CompraService;
+import ecommerce.service.MetricasCompra;
+import ecommerce.service.PedidoService;
+import ecommerce.service.RegrasPreco;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/*
+ * finalizarCompra de ponta a ponta, sem banco nem serviços remotos: clientes, carrinhos,
+ * estoque e pagamento são substitutos em memória que respondem imediatamente. O parâmetro
+ * registro mede o custo das métricas por etapa: NENHUM usa medidores sem efeito (registro
+ * composto vazio) como linha de base.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FinalizarCompraBenchmark {
+
+    @Param({ "1", "10", "100", "1000", "10000" })
+    private int tamanho;
+
+    @Param({ "BRONZE", "PRATA", "OURO" })
+    private TipoCliente tipoCliente;
+
+    @Param({ "NENHUM", "SIMPLES", "PROMETHEUS" })
+    private Registro registro;
+
+    private CompraService compraService;
+
+    public enum Registro {
+        NENHUM, SIMPLES, PROMETHEUS;
+
+        MeterRegistry criar() {
+            return switch (this) {
+                case NENHUM -> new CompositeMeterRegistry();
+                case SIMPLES -> new SimpleMeterRegistry();
+                case PROMETHEUS -> new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+            };
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        CarrinhoDeCompras carrinho = Carrinhos.criar(tamanho, tipoCliente, Carrinhos.FaixaPeso.ATE_50,
+                Carrinhos.FaixaDesconto.DESCONTO_10);
+        compraService = new CompraService(new CarrinhosEmMemoria(carrinho), new ClientesEmMemoria(carrinho.getCliente()),
+                new EstoqueEmMemoria(), new PagamentoEmMemoria(), Runnable::run, Duration.ofSeconds(2),
+                Duration.ofSeconds(5), new MetricasCompra(registro.criar()), new CalculadoraCusto(),
+                new PedidosEmMemoria());
+    }
+
+    @Benchmark
+    public CompraDTO finalizarCompra() {
+        return compraService.finalizarCompra(1L, 1L);
+    }
+
+    static class ClientesEmMemoria extends ClienteService {
+
+        private final Cliente cliente;
+
+        ClientesEmMemoria(Cliente cliente) {
+            super(null, 1, Duration.ofMinutes(1));
+            this.cliente = cliente;
+        }
+
+        @Override
+        public Cliente buscarPorId(Long clienteId) {
+            return cliente;
+        }
+
+        @Override
+        public TipoCliente buscarTipoPorId(Long clienteId) {
+            return cliente.getTipo();
+        }
+    }
+
+    static class CarrinhosEmMemoria extends CarrinhoDeComprasService {
+
+        private final CarrinhoDeCompras carrinho;
+
+        CarrinhosEmMemoria(CarrinhoDeCompras carrinho) {
+            super(null, null);
+            this.carrinho = carrinho;
+        }
+
+        @Override
+        public CarrinhoDeCompras buscarPorCarrinhoIdEClienteId(Long carrinhoId, Long clienteId, RegrasPreco regras) {
+            return carrinho;
+        }
+    }
+
+    // O pedido não é gravado: o benchmark mede a finalização sem banco
+    static class PedidosEmMemoria extends PedidoService {
+
+        PedidosEmMemoria() {
+            super(null, null);
+        }
+
+        @Override
+        public Pedido registrar(Long clienteId, CarrinhoDeCompras carrinho, BigDecimal custoTotal, Long transacaoId) {
+            return null;
+        }
+    }
+
+    static class EstoqueEmMemoria implements IEstoqueExternal {
+
+        private static final EstoqueBaixaDTO BAIXA = new EstoqueBaixaDTO(true);
+        private static final DisponibilidadeDTO DISPONIVEL = new DisponibilidadeDTO(true, List.of());
+
+        @Override
+        public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+            return BAIXA;
+        }
+
+        @Override
+        public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+            return DISPONIVEL;
+        }
+    }
+
+    static class PagamentoEmMemoria implements IPagamentoExternal {
+
+        private long transacoes;
+
+        @Override
+        public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+            return new PagamentoDTO(true, ++transacoes);
+        }
+
+        @Override
+        public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.service.CalculadoraCusto;
+import ecommerce.service.Promocao;
+import ecommerce.service.RegrasPreco;
+import ecommerce.service.TabelasPreco;
+
+/*
+ * Custo total com um número crescente de promoções, metade percentuais e metade leve-pague,
+ * espalhadas pelos tipos de produto. Com as regras compiladas por tipo o custo com 1.000
+ * promoções deve ficar no mesmo patamar do custo com uma; a linha de 0 promoções é a passada
+ * sem acumuladores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromocoesBenchmark {
+
+    @Param({ "0", "1", "10", "100", "1000" })
+    private int promocoes;
+
+    @Param({ "10", "1000" })
+    private int tamanho;
+
+    private CalculadoraCusto calculadora;
+
+    private CarrinhoDeCompras carrinho;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        TipoProduto[] tipos = TipoProduto.values();
+        List<Promocao> regras = new ArrayList<>(promocoes);
+        for (int i = 0; i < promocoes; i++) {
+            TipoProduto tipo = tipos[i % tipos.length];
+            int leve = 2 + random.nextInt(9);
+            regras.add(i % 2 == 0 ? Promocao.percentual(tipo, 1 + random.nextInt(50))
+                    : Promocao.levePague(tipo, leve, 1 + random.nextInt(leve - 1)));
+        }
+        calculadora = new CalculadoraCusto(new TabelasPreco(RegrasPreco.compilar(List.of(5, 10, 50),
+                List.of(BigDecimal.ZERO, BigDecimal.valueOf(2), BigDecimal.valueOf(4), BigDecimal.valueOf(7)),
+                List.of(BigDecimal.ONE, new BigDecimal("0.5"), BigDecimal.ZERO),
+                List.of(BigDecimal.valueOf(500), BigDecimal.valueOf(1000)), List.of(10, 20), regras)));
+        carrinho = Carrinhos.criar(tamanho, TipoCliente.BRONZE, Carrinhos.FaixaPeso.ATE_50,
+                Carrinhos.FaixaDesconto.DESCONTO_10);
+    }
+
+    @Benchmark
+    public BigDecimal calcularCustoTotal() {
+        return calculadora.calcularCustoTotal(carrinho);
+    }
+}
@@ -0,0 +1,134 @@
+package ecommerce.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.TipoCliente;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.service.CalculadoraCusto;
+import ecommerce.service.CompraService;
+import ecommerce.service.MetricasCompra;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/*
+ * Teste de carga comparando o pool de threads de plataforma do Tomcat (200 threads por padrão)
+ * com uma thread virtual por requisição. Cada operação dispara uma rajada de checkouts
+ * simultâneos cujo pagamento bloqueia pela latência configurada; o tempo médio por rajada
+ * dividido pelo número de checkouts dá a vazão de cada modo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadsVirtuaisBenchmark {
+
+    public enum Modo {
+        PLATAFORMA, VIRTUAL
+    }
+
+    private static final int THREADS_TOMCAT = 200;
+    private static final int THREADS_CHAMADAS_EXTERNAS = 64;
+
+    @Param({ "PLATAFORMA", "VIRTUAL" })
+    private Modo modo;
+
+    @Param({ "200", "1000", "5000" })
+    private int checkoutsSimultaneos;
+
+    @Param({ "20" })
+    private int latenciaMs;
+
+    private ExecutorService executor;
+
+    private ExecutorService chamadasExternas;
+
+    private CompraService compraService;
+
+    @Setup
+    public void setUp() {
+        CarrinhoDeCompras carrinho = Carrinhos.criar(10, TipoCliente.PRATA, Carrinhos.FaixaPeso.ATE_10,
+                Carrinhos.FaixaDesconto.DESCONTO_10);
+        executor = modo == Modo.PLATAFORMA
+                ? Executors.newFixedThreadPool(THREADS_TOMCAT)
+                : Executors.newVirtualThreadPerTaskExecutor();
+        chamadasExternas = modo == Modo.PLATAFORMA
+                ? Executors.newFixedThreadPool(THREADS_CHAMADAS_EXTERNAS)
+                : Executors.newVirtualThreadPerTaskExecutor();
+        compraService = new CompraService(new FinalizarCompraBenchmark.CarrinhosEmMemoria(carrinho),
+                new FinalizarCompraBenchmark.ClientesEmMemoria(carrinho.getCliente()),
+                new FinalizarCompraBenchmark.EstoqueEmMemoria(), new PagamentoComLatencia(latenciaMs),
+                chamadasExternas, Duration.ofSeconds(30), Duration.ofSeconds(30),
+                new MetricasCompra(new SimpleMeterRegistry()), new CalculadoraCusto(),
+                new FinalizarCompraBenchmark.PedidosEmMemoria());
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        chamadasExternas.shutdownNow();
+    }
+
+    @Benchmark
+    public int rajadaDeCheckouts() throws InterruptedException, ExecutionException {
+        List<Future<CompraDTO>> compras = new ArrayList<>(checkoutsSimultaneos);
+        for (int i = 0; i < checkoutsSimultaneos; i++) {
+            compras.add(executor.submit(() -> compraService.finalizarCompra(1L, 1L)));
+        }
+        int finalizadas = 0;
+        for (Future<CompraDTO> compra : compras) {
+            if (compra.get().sucesso()) {
+                finalizadas++;
+            }
+        }
+        return finalizadas;
+    }
+
+    static class PagamentoComLatencia implements IPagamentoExternal {
+
+        private final AtomicLong transacoes = new AtomicLong();
+        private final long latenciaMs;
+
+        PagamentoComLatencia(long latenciaMs) {
+            this.latenciaMs = latenciaMs;
+        }
+
+        @Override
+        public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+            try {
+                Thread.sleep(latenciaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new PagamentoDTO(true, transacoes.incrementAndGet());
+        }
+
+        @Override
+        public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+        }
+    }
+}
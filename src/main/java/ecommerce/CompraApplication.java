@@ -2,8 +2,12 @@ package ecommerce;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import ecommerce.config.DicasAot;
 
 @SpringBootApplication
+@ImportRuntimeHints(DicasAot.class)
 public class CompraApplication {
     public static void main(String[] args) {
         SpringApplication.run(CompraApplication.class, args);
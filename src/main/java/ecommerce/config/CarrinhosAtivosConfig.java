@@ -0,0 +1,49 @@
+package ecommerce.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.CarrinhosAtivos;
+
+/*
+ * Grava nas tabelas os carrinhos ativos sem uso além de ecommerce.carrinhos-ativos.expiracao, em
+ * rodadas a cada ecommerce.carrinhos-ativos.intervalo-expiracao, e todos os que restarem no
+ * encerramento da aplicação, antes de o banco fechar. Como no OutboxConfig, a propriedade que
+ * habilita o armazenamento é lida na execução.
+ */
+@Configuration
+@EnableScheduling
+public class CarrinhosAtivosConfig implements SchedulingConfigurer, DisposableBean {
+
+	private final CarrinhoDeComprasService carrinhoService;
+	private final CarrinhosAtivos carrinhosAtivos;
+	private final Duration intervalo;
+
+	public CarrinhosAtivosConfig(CarrinhoDeComprasService carrinhoService, CarrinhosAtivos carrinhosAtivos,
+								 @Value("${ecommerce.carrinhos-ativos.intervalo-expiracao:1m}") Duration intervalo) {
+		this.carrinhoService = carrinhoService;
+		this.carrinhosAtivos = carrinhosAtivos;
+		this.intervalo = intervalo;
+	}
+
+	@Override
+	public void configureTasks(ScheduledTaskRegistrar registrar) {
+		if (carrinhosAtivos.habilitado()) {
+			registrar.addFixedDelayTask(carrinhoService::gravarExpirados, intervalo);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (carrinhosAtivos.habilitado()) {
+			carrinhoService.gravarAtivos();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package ecommerce.config;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import ecommerce.dto.CarrinhoDTO;
+import ecommerce.dto.CarrinhoExportadoDTO;
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.FinalizacaoCompraDTO;
+import ecommerce.dto.ItemCarrinhoDTO;
+import ecommerce.dto.ItemOrcamentoDTO;
+import ecommerce.dto.LinhaExportacaoDTO;
+import ecommerce.dto.OrcamentoDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.dto.SituacaoCompraDTO;
+import ecommerce.dto.TotaisCarrinhoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.EventoEstoque;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Pedido;
+import ecommerce.entity.Produto;
+import ecommerce.entity.SequenciaComIdAtribuido;
+import ecommerce.entity.SituacaoEvento;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.entity.VersaoPrecos;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+
+/*
+ * Dicas para a imagem nativa do que é usado por reflexão e não aparece nas assinaturas que o
+ * processamento AOT do Spring analisa: campos e construtores das entidades (o Hibernate acessa
+ * por campo) e do gerador de ids dos itens, enums gravados por nome, construtores dos DTOs montados por "select new" nas
+ * consultas e records escritos pelo ObjectMapper fora dos controllers, como na exportação.
+ * Os clientes de estoque e pagamento são expostos só pelas interfaces, com os decoradores montados
+ * em métodos @Bean; as interfaces ficam registradas para proxies JDK, usados quando um aspecto os
+ * envolve com spring.aop.proxy-target-class=false.
+ */
+public class DicasAot implements RuntimeHintsRegistrar {
+
+	private static final Class<?>[] ENTIDADES = { CarrinhoDeCompras.class, Cliente.class, ItemCompra.class,
+			Produto.class, Pedido.class, EventoEstoque.class, VersaoPrecos.class };
+
+	private static final Class<?>[] ENUMS = { TipoCliente.class, TipoProduto.class, SituacaoEvento.class };
+
+	private static final Class<?>[] DTOS = { CarrinhoDTO.class, CarrinhoExportadoDTO.class, CompraDTO.class,
+			DisponibilidadeDTO.class, EstoqueBaixaDTO.class, FinalizacaoCompraDTO.class, ItemCarrinhoDTO.class,
+			ItemOrcamentoDTO.class, LinhaExportacaoDTO.class, OrcamentoDTO.class, PagamentoDTO.class,
+			SituacaoCompraDTO.class, TotaisCarrinhoDTO.class };
+
+	@Override
+	public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+		for (Class<?> entidade : ENTIDADES) {
+			hints.reflection().registerType(entidade, MemberCategory.DECLARED_FIELDS,
+					MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+		}
+		hints.reflection().registerType(SequenciaComIdAtribuido.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+		for (Class<?> tipo : ENUMS) {
+			hints.reflection().registerType(tipo, MemberCategory.PUBLIC_FIELDS, MemberCategory.INVOKE_PUBLIC_METHODS);
+		}
+		new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), DTOS);
+		hints.proxies().registerJdkProxy(IEstoqueExternal.class);
+		hints.proxies().registerJdkProxy(IPagamentoExternal.class);
+	}
+}
@@ -0,0 +1,29 @@
+package ecommerce.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/*
+ * Com ecommerce.inicio.encerrar-apos-iniciar=true a aplicação sai assim que fica pronta: é a
+ * execução de treino do AppCDS, que só grava o arquivo numa saída normal da JVM, e a medição do
+ * tempo de início. A propriedade é lida na execução, não no processamento AOT.
+ */
+@Component
+public class EncerramentoAposInicio implements ApplicationListener<ApplicationReadyEvent> {
+
+	private final boolean encerrar;
+
+	public EncerramentoAposInicio(@Value("${ecommerce.inicio.encerrar-apos-iniciar:false}") boolean encerrar) {
+		this.encerrar = encerrar;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationReadyEvent evento) {
+		if (encerrar) {
+			System.exit(SpringApplication.exit(evento.getApplicationContext()));
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package ecommerce.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import ecommerce.external.EstoqueAgrupado;
+import ecommerce.external.EstoqueResiliente;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.Isolamento;
+import ecommerce.external.fake.EstoqueSimulado;
+
+/*
+ * Monta o cliente do serviço de estoque: o EstoqueSimulado dentro do compartimento do estoque
+ * (prazo e disjuntor) e, com o agrupamento ligado, o agrupamento de chamadas na frente, para que
+ * cada lote ocupe uma única thread do compartimento.
+ */
+@Configuration
+public class EstoqueConfig {
+
+	@Bean
+	@Primary
+	public IEstoqueExternal estoqueExternal(EstoqueSimulado estoque,
+			@Qualifier(ResilienciaConfig.ISOLAMENTO_ESTOQUE) Isolamento isolamento,
+			@Value("${ecommerce.estoque.agrupamento.habilitado:false}") boolean agrupamento,
+			@Value("${ecommerce.estoque.agrupamento.janela:5ms}") Duration janela,
+			@Value("${ecommerce.estoque.agrupamento.tamanho-maximo:200}") int tamanhoMaximo) {
+		IEstoqueExternal resiliente = new EstoqueResiliente(estoque, isolamento);
+		if (!agrupamento) {
+			return resiliente;
+		}
+		return new EstoqueAgrupado(resiliente, janela, tamanhoMaximo);
+	}
+}
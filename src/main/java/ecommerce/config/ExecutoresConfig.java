@@ -0,0 +1,52 @@
+package ecommerce.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/*
+ * Executor das chamadas aos serviços externos (estoque e pagamento). No modo com threads
+ * virtuais o ThreadsVirtuaisConfig registra um executor virtual com o mesmo nome e este
+ * pool de threads de plataforma não é criado.
+ *
+ * O checkout assíncrono tem um pool próprio com fila limitada: fila cheia recusa a tarefa na
+ * hora, e o controller responde 429 em vez de acumular compras sem limite.
+ */
+@Configuration
+public class ExecutoresConfig {
+
+	public static final String CHAMADAS_EXTERNAS = "chamadasExternasExecutor";
+	public static final String CHECKOUT_ASSINCRONO = "checkoutAssincronoExecutor";
+
+	@Bean(name = CHAMADAS_EXTERNAS)
+	@ConditionalOnProperty(name = "ecommerce.threads.virtuais", havingValue = "false", matchIfMissing = true)
+	public ThreadPoolTaskExecutor chamadasExternasExecutor(
+			@Value("${ecommerce.chamadas-externas.threads:64}") int threads) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setThreadNamePrefix("chamada-externa-");
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(threads * 4);
+		return executor;
+	}
+
+	// A quantidade de threads limita as compras simultâneas também no modo com threads virtuais
+	@Bean(name = CHECKOUT_ASSINCRONO)
+	public ThreadPoolTaskExecutor checkoutAssincronoExecutor(
+			@Value("${ecommerce.checkout.assincrono.threads:16}") int threads,
+			@Value("${ecommerce.checkout.assincrono.capacidade-fila:1000}") int capacidadeFila,
+			@Value("${ecommerce.threads.virtuais:false}") boolean threadsVirtuais) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setThreadNamePrefix("checkout-");
+		if (threadsVirtuais) {
+			executor.setThreadFactory(Thread.ofVirtual().name("checkout-", 0).factory());
+		}
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(capacidadeFila);
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		return executor;
+	}
+}
@@ -0,0 +1,41 @@
+package ecommerce.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import ecommerce.service.DespachanteEstoque;
+
+/*
+ * Agenda o DespachanteEstoque: uma rodada a cada ecommerce.outbox.intervalo, contado do fim da
+ * anterior, então duas rodadas nunca se sobrepõem. Com ecommerce.outbox.habilitado=false as
+ * baixas só se acumulam no banco. A propriedade é lida na execução, e não numa condição do bean,
+ * para valer também com o código gerado pelo processamento AOT.
+ */
+@Configuration
+@EnableScheduling
+public class OutboxConfig implements SchedulingConfigurer {
+
+	private final DespachanteEstoque despachante;
+	private final boolean habilitado;
+	private final Duration intervalo;
+
+	public OutboxConfig(DespachanteEstoque despachante,
+						@Value("${ecommerce.outbox.habilitado:true}") boolean habilitado,
+						@Value("${ecommerce.outbox.intervalo:200ms}") Duration intervalo) {
+		this.despachante = despachante;
+		this.habilitado = habilitado;
+		this.intervalo = intervalo;
+	}
+
+	@Override
+	public void configureTasks(ScheduledTaskRegistrar registrar) {
+		if (habilitado) {
+			registrar.addFixedDelayTask(despachante::despachar, intervalo);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package ecommerce.config;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import ecommerce.external.Disjuntor;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.Isolamento;
+import ecommerce.external.PagamentoResiliente;
+import ecommerce.external.fake.PagamentoSimulado;
+
+/*
+ * Um compartimento por serviço externo, cada um com suas threads, prazo e disjuntor: um estoque
+ * lento esgota só as threads do estoque e não tira capacidade do pagamento. O decorador do
+ * estoque é montado no EstoqueConfig, por baixo do agrupamento de chamadas.
+ */
+@Configuration
+public class ResilienciaConfig {
+
+	public static final String ISOLAMENTO_ESTOQUE = "isolamentoEstoque";
+	public static final String ISOLAMENTO_PAGAMENTO = "isolamentoPagamento";
+
+	@Bean(name = ISOLAMENTO_ESTOQUE)
+	public Isolamento isolamentoEstoque(
+			@Value("${ecommerce.resiliencia.estoque.threads:32}") int threads,
+			@Value("${ecommerce.resiliencia.estoque.prazo:2s}") Duration prazo,
+			@Value("${ecommerce.resiliencia.estoque.falhas-para-abrir:5}") int falhasParaAbrir,
+			@Value("${ecommerce.resiliencia.estoque.tempo-aberto:10s}") Duration tempoAberto,
+			@Value("${ecommerce.threads.virtuais:false}") boolean threadsVirtuais) {
+		return new Isolamento("estoque", threads, prazo, new Disjuntor("estoque", falhasParaAbrir, tempoAberto),
+				threadFactory("estoque-", threadsVirtuais));
+	}
+
+	@Bean(name = ISOLAMENTO_PAGAMENTO)
+	public Isolamento isolamentoPagamento(
+			@Value("${ecommerce.resiliencia.pagamento.threads:32}") int threads,
+			@Value("${ecommerce.resiliencia.pagamento.prazo:5s}") Duration prazo,
+			@Value("${ecommerce.resiliencia.pagamento.falhas-para-abrir:5}") int falhasParaAbrir,
+			@Value("${ecommerce.resiliencia.pagamento.tempo-aberto:30s}") Duration tempoAberto,
+			@Value("${ecommerce.threads.virtuais:false}") boolean threadsVirtuais) {
+		return new Isolamento("pagamento", threads, prazo, new Disjuntor("pagamento", falhasParaAbrir, tempoAberto),
+				threadFactory("pagamento-", threadsVirtuais));
+	}
+
+	@Bean
+	@Primary
+	public IPagamentoExternal pagamentoResiliente(PagamentoSimulado pagamento,
+			@Qualifier(ISOLAMENTO_PAGAMENTO) Isolamento isolamento) {
+		return new PagamentoResiliente(pagamento, isolamento);
+	}
+
+	// Com threads virtuais o limite do compartimento continua sendo o número de threads do pool
+	private static ThreadFactory threadFactory(String prefixo, boolean threadsVirtuais) {
+		if (threadsVirtuais) {
+			return Thread.ofVirtual().name(prefixo, 0).factory();
+		}
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefixo);
+		threadFactory.setDaemon(true);
+		return threadFactory;
+	}
+}
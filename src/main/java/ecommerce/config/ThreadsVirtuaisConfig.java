@@ -0,0 +1,35 @@
+package ecommerce.config;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+/*
+ * Modo opcional (ecommerce.threads.virtuais=true) em que o Tomcat atende cada requisição em uma
+ * thread virtual e as tarefas assíncronas da aplicação também rodam em threads virtuais.
+ * As chamadas bloqueantes ao banco e aos serviços externos passam a liberar a thread
+ * carregadora em vez de ocupar uma thread do pool do Tomcat.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ecommerce.threads.virtuais", havingValue = "true")
+public class ThreadsVirtuaisConfig {
+
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> executorVirtualTomcat() {
+		return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+	}
+
+	@Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+			ExecutoresConfig.CHAMADAS_EXTERNAS })
+	public AsyncTaskExecutor executorVirtual() {
+		Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+		return new TaskExecutorAdapter(executor);
+	}
+}
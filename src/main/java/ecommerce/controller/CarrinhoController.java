@@ -0,0 +1,140 @@
+package ecommerce.controller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ecommerce.dto.CarrinhoDTO;
+import ecommerce.dto.ItemCarrinhoDTO;
+import ecommerce.dto.OrcamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.ChaveOrcamento;
+import ecommerce.service.CompraService;
+import ecommerce.service.OrcamentoService;
+
+@RestController
+@RequestMapping("/carrinhos")
+public class CarrinhoController {
+
+	private static final String NDJSON = "application/x-ndjson";
+
+	private final CarrinhoDeComprasService carrinhoService;
+	private final CompraService compraService;
+	private final OrcamentoService orcamentoService;
+	private final ObjectMapper objectMapper;
+
+	@Autowired
+	public CarrinhoController(CarrinhoDeComprasService carrinhoService, CompraService compraService,
+			OrcamentoService orcamentoService, ObjectMapper objectMapper) {
+		this.carrinhoService = carrinhoService;
+		this.compraService = compraService;
+		this.orcamentoService = orcamentoService;
+		this.objectMapper = objectMapper;
+	}
+
+	/*
+	 * Orçamento sem finalizar a compra. Quem manda If-None-Match com a ETag atual recebe 304 sem
+	 * que o carrinho seja carregado ou precificado; no-cache faz o navegador sempre revalidar.
+	 */
+	@GetMapping("/{carrinhoId}/orcamento")
+	public ResponseEntity<OrcamentoDTO> orcar(@PathVariable Long carrinhoId, @RequestParam Long clienteId,
+			WebRequest requisicao) {
+		try {
+			ChaveOrcamento chave = orcamentoService.identificar(carrinhoId, clienteId);
+			if (requisicao.checkNotModified(chave.etag())) {
+				return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(chave.etag())
+						.cacheControl(CacheControl.noCache()).build();
+			}
+			return ResponseEntity.ok().eTag(chave.etag()).cacheControl(CacheControl.noCache())
+					.body(orcamentoService.orcar(chave));
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		} catch (Exception e) {
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	/*
+	 * Todos os carrinhos com o custo total, um JSON por linha, escritos à medida que são lidos do
+	 * banco. Um erro no meio da exportação interrompe a resposta, que chega truncada ao cliente.
+	 */
+	@GetMapping(value = "/exportacao", produces = NDJSON)
+	public ResponseEntity<StreamingResponseBody> exportar() {
+		StreamingResponseBody corpo = saida -> {
+			// O gerador é um só para a exportação inteira; quem fecha a saída é o Spring
+			try (JsonGenerator gerador = objectMapper.getFactory().createGenerator(saida)
+					.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+					.setRootValueSeparator(null)) {
+				compraService.exportarCarrinhos(carrinho -> {
+					try {
+						gerador.writeObject(carrinho);
+						gerador.writeRaw('\n');
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			}
+		};
+		return ResponseEntity.ok().header("Content-Type", NDJSON).body(corpo);
+	}
+
+	// Aceita vários itens por requisição, gravados em uma transação com INSERTs em lote
+	@PostMapping("/{carrinhoId}/itens")
+	public ResponseEntity<CarrinhoDTO> adicionarItens(@PathVariable Long carrinhoId, @RequestParam Long clienteId,
+			@RequestBody List<ItemCarrinhoDTO> itens) {
+		return executar(() -> carrinhoService.adicionarItens(carrinhoId, clienteId, itens));
+	}
+
+	@PutMapping("/{carrinhoId}/itens")
+	public ResponseEntity<CarrinhoDTO> alterarQuantidades(@PathVariable Long carrinhoId, @RequestParam Long clienteId,
+			@RequestBody List<ItemCarrinhoDTO> itens) {
+		return executar(() -> carrinhoService.alterarQuantidades(carrinhoId, clienteId, itens));
+	}
+
+	@PutMapping("/{carrinhoId}/itens/{itemId}")
+	public ResponseEntity<CarrinhoDTO> alterarQuantidade(@PathVariable Long carrinhoId, @PathVariable Long itemId,
+			@RequestParam Long clienteId, @RequestParam Long quantidade) {
+		return executar(() -> carrinhoService.alterarQuantidade(carrinhoId, clienteId, itemId, quantidade));
+	}
+
+	@DeleteMapping("/{carrinhoId}/itens/{itemId}")
+	public ResponseEntity<CarrinhoDTO> removerItem(@PathVariable Long carrinhoId, @PathVariable Long itemId,
+			@RequestParam Long clienteId) {
+		return executar(() -> carrinhoService.removerItem(carrinhoId, clienteId, itemId));
+	}
+
+	private ResponseEntity<CarrinhoDTO> executar(Supplier<CarrinhoDeCompras> alteracao) {
+		try {
+			return ResponseEntity.ok(paraDTO(alteracao.get()));
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		} catch (OptimisticLockingFailureException e) {
+			// Outra alteração do mesmo carrinho terminou primeiro
+			return ResponseEntity.status(HttpStatus.CONFLICT).build();
+		} catch (Exception e) {
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	// Itens novos já têm o id definitivo: gerado no commit da alteração ou, no carrinho ativo, ao ser adicionados
+	private static CarrinhoDTO paraDTO(CarrinhoDeCompras carrinho) {
+		List<ItemCarrinhoDTO> itens = carrinho.getItens().stream()
+				.map(item -> new ItemCarrinhoDTO(item.getId(), item.getProduto().getId(), item.getQuantidade()))
+				.toList();
+		return new CarrinhoDTO(carrinho.getId(), itens, carrinho.getSubtotal(), carrinho.getPesoTotal());
+	}
+}
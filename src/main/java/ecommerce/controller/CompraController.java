@@ -1,31 +1,53 @@
 package ecommerce.controller;
 
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import ecommerce.dto.CompraDTO;
+import ecommerce.dto.FinalizacaoCompraDTO;
+import ecommerce.dto.SituacaoCompraDTO;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.service.CheckoutAssincronoService;
+import ecommerce.service.CompraRecusadaException;
 import ecommerce.service.CompraService;
+import ecommerce.service.IdempotenciaService;
 
 @RestController
 @RequestMapping("/")
 public class CompraController {
 
 	private final CompraService compraService;
+	private final IdempotenciaService idempotenciaService;
+	private final CheckoutAssincronoService checkoutAssincrono;
 
 	@Autowired
-	public CompraController(CompraService compraService) {
+	public CompraController(CompraService compraService, IdempotenciaService idempotenciaService,
+			CheckoutAssincronoService checkoutAssincrono) {
 		this.compraService = compraService;
+		this.idempotenciaService = idempotenciaService;
+		this.checkoutAssincrono = checkoutAssincrono;
 	}
 
 	@PostMapping("/finalizar")
-	public ResponseEntity<CompraDTO> finalizarCompra(@RequestParam Long carrinhoId, @RequestParam Long clienteId) {
+	public ResponseEntity<CompraDTO> finalizarCompra(@RequestParam Long carrinhoId, @RequestParam Long clienteId,
+			@RequestHeader(value = "Idempotency-Key", required = false) String chaveIdempotencia) {
+		if (chaveIdempotencia == null || chaveIdempotencia.isBlank()) {
+			return finalizar(carrinhoId, clienteId).entidade();
+		}
+		/*
+		 * Repetições com a mesma chave recebem a resposta da primeira execução, sem nova autorização de
+		 * pagamento. Só respostas definitivas ficam guardadas; prazo esgotado, serviço indisponível e
+		 * erro interno deixam a repetição executar de novo.
+		 */
 		try {
-			CompraDTO compraDTO = compraService.finalizarCompra(carrinhoId, clienteId);
-			return ResponseEntity.ok(compraDTO);
-		} catch (IllegalArgumentException e) {
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage()));
+			return idempotenciaService.executar(chaveIdempotencia, List.of(carrinhoId, clienteId),
+					() -> finalizar(carrinhoId, clienteId), Resposta::definitiva).entidade();
 		} catch (IllegalStateException e) {
 			return ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, e.getMessage()));
 		} catch (Exception e) {
@@ -33,4 +55,57 @@ public class CompraController {
 					.body(new CompraDTO(false, null, "Erro ao processar compra."));
 		}
 	}
+
+	private Resposta finalizar(Long carrinhoId, Long clienteId) {
+		try {
+			CompraDTO compraDTO = compraService.finalizarCompra(carrinhoId, clienteId);
+			return new Resposta(ResponseEntity.ok(compraDTO), true);
+		} catch (IllegalArgumentException e) {
+			return new Resposta(
+					ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage())), true);
+		} catch (IllegalStateException e) {
+			// Só a recusa de estoque ou pagamento é definitiva; prazos esgotados podem dar certo na repetição
+			return new Resposta(ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, e.getMessage())),
+					e instanceof CompraRecusadaException);
+		} catch (ServicoIndisponivelException e) {
+			// Circuito aberto ou compartimento cheio: recusa imediata, sem nada autorizado
+			return new Resposta(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.body(new CompraDTO(false, null, e.getMessage())), false);
+		} catch (Exception e) {
+			return new Resposta(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(new CompraDTO(false, null, "Erro ao processar compra.")), false);
+		}
+	}
+
+	@PostMapping("/finalizar/lote")
+	public ResponseEntity<List<CompraDTO>> finalizarCompras(@RequestBody List<FinalizacaoCompraDTO> finalizacoes) {
+		// Falhas individuais já vêm como CompraDTO sem sucesso; aqui só sobra erro inesperado do lote
+		try {
+			return ResponseEntity.ok(compraService.finalizarCompras(finalizacoes));
+		} catch (Exception e) {
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+
+	// Responde na hora com o ticket; o resultado é consultado depois em GET /finalizar/assincrono/{ticket}
+	@PostMapping("/finalizar/assincrono")
+	public ResponseEntity<SituacaoCompraDTO> finalizarCompraAssincrona(@RequestParam Long carrinhoId,
+			@RequestParam Long clienteId) {
+		try {
+			SituacaoCompraDTO situacao = checkoutAssincrono.enfileirar(carrinhoId, clienteId);
+			return ResponseEntity.accepted()
+					.location(URI.create("/finalizar/assincrono/" + situacao.ticket()))
+					.body(situacao);
+		} catch (RejectedExecutionException e) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "1").build();
+		}
+	}
+
+	@GetMapping("/finalizar/assincrono/{ticket}")
+	public ResponseEntity<SituacaoCompraDTO> consultarCompraAssincrona(@PathVariable String ticket) {
+		return ResponseEntity.of(checkoutAssincrono.consultar(ticket));
+	}
+
+	private record Resposta(ResponseEntity<CompraDTO> entidade, boolean definitiva) {
+	}
 }
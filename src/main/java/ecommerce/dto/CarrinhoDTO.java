@@ -0,0 +1,7 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public record CarrinhoDTO(Long id, List<ItemCarrinhoDTO> itens, BigDecimal subtotal, Integer pesoTotal) {
+}
@@ -0,0 +1,8 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record CarrinhoExportadoDTO(Long carrinhoId, Long clienteId, LocalDate data, Integer quantidadeItens,
+		BigDecimal custoTotal) {
+}
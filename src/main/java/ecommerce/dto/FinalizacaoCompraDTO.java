@@ -0,0 +1,4 @@
+package ecommerce.dto;
+
+public record FinalizacaoCompraDTO(Long carrinhoId, Long clienteId) {
+}
@@ -0,0 +1,4 @@
+package ecommerce.dto;
+
+public record ItemCarrinhoDTO(Long id, Long produtoId, Long quantidade) {
+}
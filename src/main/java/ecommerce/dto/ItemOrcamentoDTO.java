@@ -0,0 +1,7 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+public record ItemOrcamentoDTO(Long id, Long produtoId, String nome, Long quantidade, BigDecimal precoUnitario,
+		BigDecimal valor) {
+}
@@ -0,0 +1,9 @@
+package ecommerce.dto;
+
+import java.time.LocalDate;
+
+import ecommerce.entity.TipoCliente;
+
+public record LinhaExportacaoDTO(Long carrinhoId, Long clienteId, TipoCliente tipoCliente, LocalDate data, Long itemId,
+		Long produtoId, Long quantidade) {
+}
@@ -0,0 +1,10 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import ecommerce.entity.TipoCliente;
+
+public record OrcamentoDTO(Long carrinhoId, TipoCliente tipoCliente, List<ItemOrcamentoDTO> itens,
+		BigDecimal subtotal, BigDecimal promocoes, BigDecimal desconto, BigDecimal frete, BigDecimal total) {
+}
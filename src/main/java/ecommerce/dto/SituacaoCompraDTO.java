@@ -0,0 +1,8 @@
+package ecommerce.dto;
+
+public record SituacaoCompraDTO(String ticket, Situacao situacao, CompraDTO compra) {
+
+	public enum Situacao {
+		PENDENTE, PROCESSANDO, CONCLUIDA
+	}
+}
@@ -0,0 +1,6 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+public record TotaisCarrinhoDTO(Long carrinhoId, BigDecimal subtotal, Long pesoTotal) {
+}
@@ -1,35 +1,57 @@
 package ecommerce.entity;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Transient;
+import jakarta.persistence.Version;
 
 @Entity
 public class CarrinhoDeCompras {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "carrinho_de_compras_seq")
+    @SequenceGenerator(name = "carrinho_de_compras_seq", sequenceName = "carrinho_de_compras_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne // Um cliente pode ter vários carrinhos
+    @ManyToOne(fetch = FetchType.LAZY) // Um cliente pode ter vários carrinhos; o tipo vem do cache do ClienteService
     @JoinColumn(name = "cliente_id") // Nome da chave estrangeira
     private Cliente cliente;
 
     @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true) // Um carrinho tem vários itens
-    @JoinColumn(name = "carrinho_id") // Mapeamento de chave estrangeira na tabela ItemCompra
+    // Chave estrangeira na tabela ItemCompra, gravada só no INSERT do item; sem isso cada item novo gera também um UPDATE
+    @JoinColumn(name = "carrinho_id", nullable = false, updatable = false)
     private List<ItemCompra> itens = new ArrayList<>();
 
     private LocalDate data;
 
+    // Muda a cada alteração do carrinho ou dos itens; identifica os orçamentos (ETag)
+    @Version
+    private Long versao;
+
+    // Totais mantidos a cada alteração de item, válidos só para a versão de preços em que foram somados
+    private BigDecimal subtotal;
+
+    private Integer pesoTotal;
+
+    private Long versaoTotais;
+
+    // Marcado pelo CarrinhoDeComprasService quando os totais batem com a versão atual do catálogo
+    @Transient
+    private boolean totaisConferidos;
+
     public CarrinhoDeCompras() {}
 
     public CarrinhoDeCompras(Long id, Cliente cliente, List<ItemCompra> itens, LocalDate data) {
@@ -39,6 +61,55 @@ public class CarrinhoDeCompras {
         this.data = data;
     }
 
+    public void adicionarItem(ItemCompra item) {
+        itens.add(item);
+        somar(item.getProduto(), item.getQuantidade());
+    }
+
+    public void removerItem(ItemCompra item) {
+        if (itens.remove(item)) {
+            somar(item.getProduto(), -item.getQuantidade());
+        }
+    }
+
+    public void alterarQuantidade(ItemCompra item, Long quantidade) {
+        somar(item.getProduto(), quantidade - item.getQuantidade());
+        item.setQuantidade(quantidade);
+    }
+
+    // Soma todos os itens de novo; os produtos precisam estar com preço e peso da versão informada
+    public void recalcularTotais(long versaoPrecos) {
+        BigDecimal soma = BigDecimal.ZERO;
+        int peso = 0;
+        for (ItemCompra item : itens) {
+            soma = soma.add(item.getProduto().getPreco().multiply(BigDecimal.valueOf(item.getQuantidade())));
+            peso += item.getProduto().getPeso() * item.getQuantidade().intValue();
+        }
+        this.subtotal = soma;
+        this.pesoTotal = peso;
+        this.versaoTotais = versaoPrecos;
+    }
+
+    public boolean totaisValidos(long versaoPrecos) {
+        return versaoTotais != null && versaoTotais == versaoPrecos && subtotal != null && pesoTotal != null;
+    }
+
+    // Totais somados pelo banco para precificar um carrinho lido só para leitura; a versão dos totais não muda
+    public void usarTotais(BigDecimal subtotal, int pesoTotal) {
+        this.subtotal = subtotal;
+        this.pesoTotal = pesoTotal;
+        this.totaisConferidos = true;
+    }
+
+    private void somar(Produto produto, long quantidade) {
+        if (versaoTotais == null) {
+            return;
+        }
+        subtotal = subtotal.add(produto.getPreco().multiply(BigDecimal.valueOf(quantidade)));
+        // Mesma aritmética int do cálculo item a item, inclusive em caso de estouro
+        pesoTotal += produto.getPeso() * (int) quantidade;
+    }
+
     // Getters e Setters
     public Long getId() {
         return id;
@@ -71,4 +142,33 @@ public class CarrinhoDeCompras {
     public void setData(LocalDate data) {
         this.data = data;
     }
+
+    public Long getVersao() {
+        return versao;
+    }
+
+    // Só para carrinhos montados fora da sessão a partir dos carrinhos ativos; nos gravados quem muda é o Hibernate
+    public void setVersao(Long versao) {
+        this.versao = versao;
+    }
+
+    public BigDecimal getSubtotal() {
+        return subtotal;
+    }
+
+    public Integer getPesoTotal() {
+        return pesoTotal;
+    }
+
+    public Long getVersaoTotais() {
+        return versaoTotais;
+    }
+
+    public boolean isTotaisConferidos() {
+        return totaisConferidos;
+    }
+
+    public void setTotaisConferidos(boolean totaisConferidos) {
+        this.totaisConferidos = totaisConferidos;
+    }
 }
@@ -0,0 +1,127 @@
+package ecommerce.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+/*
+ * Baixa de estoque pendente de um pedido (outbox), gravada na mesma transação do pedido. A ordem
+ * dos ids é a ordem de envio: eventos do mesmo produto saem sempre do menor id para o maior.
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_evento_estoque_situacao", columnList = "situacao, proximaTentativa, id"),
+        // Pendentes anteriores do mesmo produto, consultados para cada evento pronto
+        @Index(name = "idx_evento_estoque_produto", columnList = "produtoId, situacao, id") })
+public class EventoEstoque {
+
+    public static final int TAMANHO_ERRO = 500;
+
+    @Id
+    // Um id por item do carrinho; blocos grandes evitam uma ida à sequência por pedido
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "evento_estoque_seq")
+    @SequenceGenerator(name = "evento_estoque_seq", sequenceName = "evento_estoque_seq", allocationSize = 500)
+    private Long id;
+
+    private Long pedidoId;
+
+    private Long produtoId;
+
+    private Long quantidade;
+
+    @Enumerated(EnumType.STRING)
+    private SituacaoEvento situacao;
+
+    private int tentativas;
+
+    // Pendentes só são enviados a partir deste instante; cresce a cada falha
+    private Instant proximaTentativa;
+
+    private Instant criadoEm;
+
+    private Instant processadoEm;
+
+    @Column(length = TAMANHO_ERRO)
+    private String ultimoErro;
+
+    public EventoEstoque() {}
+
+    public EventoEstoque(Long pedidoId, Long produtoId, Long quantidade, Instant criadoEm) {
+        this.pedidoId = pedidoId;
+        this.produtoId = produtoId;
+        this.quantidade = quantidade;
+        this.situacao = SituacaoEvento.PENDENTE;
+        this.proximaTentativa = criadoEm;
+        this.criadoEm = criadoEm;
+    }
+
+    // Getters e Setters
+    public Long getId() {
+        return id;
+    }
+
+    public Long getPedidoId() {
+        return pedidoId;
+    }
+
+    public Long getProdutoId() {
+        return produtoId;
+    }
+
+    public Long getQuantidade() {
+        return quantidade;
+    }
+
+    public SituacaoEvento getSituacao() {
+        return situacao;
+    }
+
+    public void setSituacao(SituacaoEvento situacao) {
+        this.situacao = situacao;
+    }
+
+    public int getTentativas() {
+        return tentativas;
+    }
+
+    public void setTentativas(int tentativas) {
+        this.tentativas = tentativas;
+    }
+
+    public Instant getProximaTentativa() {
+        return proximaTentativa;
+    }
+
+    public void setProximaTentativa(Instant proximaTentativa) {
+        this.proximaTentativa = proximaTentativa;
+    }
+
+    public Instant getCriadoEm() {
+        return criadoEm;
+    }
+
+    public Instant getProcessadoEm() {
+        return processadoEm;
+    }
+
+    public void setProcessadoEm(Instant processadoEm) {
+        this.processadoEm = processadoEm;
+    }
+
+    public String getUltimoErro() {
+        return ultimoErro;
+    }
+
+    public void setUltimoErro(String ultimoErro) {
+        this.ultimoErro = ultimoErro;
+    }
+}
@@ -1,25 +1,38 @@
 package ecommerce.entity;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Version;
 
 @Entity
 public class ItemCompra {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Sequência com blocos grandes: um carrinho de mil itens reserva os ids em duas idas ao banco.
+    // Itens de carrinhos ativos chegam com o id já tirado dela, que é mantido
+    @GeneratedValue(generator = "item_compra_seq")
+    @GenericGenerator(name = "item_compra_seq", type = SequenciaComIdAtribuido.class, parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "item_compra_seq"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "500") })
     private Long id;
 
-    @ManyToOne // Vários itens podem se referir ao mesmo produto
+    @ManyToOne(fetch = FetchType.LAZY) // Vários itens podem se referir ao mesmo produto; preço e peso vêm do CatalogoProdutos
     @JoinColumn(name = "produto_id")
     private Produto produto;
 
     private Long quantidade;
 
+    @Version
+    private Long versao;
+
     public ItemCompra() {}
 
     public ItemCompra(Long id, Produto produto, Long quantidade) {
@@ -45,6 +58,10 @@ public class ItemCompra {
         this.produto = produto;
     }
 
+    public Long getVersao() {
+        return versao;
+    }
+
     public Long getQuantidade() {
         return quantidade;
     }
@@ -0,0 +1,66 @@
+package ecommerce.entity;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+
+@Entity
+public class Pedido {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pedido_seq")
+    @SequenceGenerator(name = "pedido_seq", sequenceName = "pedido_seq", allocationSize = 50)
+    private Long id;
+
+    // Só os ids: gravar o pedido não carrega cliente nem carrinho
+    private Long clienteId;
+
+    private Long carrinhoId;
+
+    // Transação autorizada pelo serviço de pagamento
+    private Long transacaoId;
+
+    private BigDecimal custoTotal;
+
+    private Instant criadoEm;
+
+    public Pedido() {}
+
+    public Pedido(Long clienteId, Long carrinhoId, Long transacaoId, BigDecimal custoTotal, Instant criadoEm) {
+        this.clienteId = clienteId;
+        this.carrinhoId = carrinhoId;
+        this.transacaoId = transacaoId;
+        this.custoTotal = custoTotal;
+        this.criadoEm = criadoEm;
+    }
+
+    // Getters
+    public Long getId() {
+        return id;
+    }
+
+    public Long getClienteId() {
+        return clienteId;
+    }
+
+    public Long getCarrinhoId() {
+        return carrinhoId;
+    }
+
+    public Long getTransacaoId() {
+        return transacaoId;
+    }
+
+    public BigDecimal getCustoTotal() {
+        return custoTotal;
+    }
+
+    public Instant getCriadoEm() {
+        return criadoEm;
+    }
+}
@@ -0,0 +1,20 @@
+package ecommerce.entity;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+/*
+ * Sequência em blocos que mantém o id de um item que já chega com um. Os carrinhos ativos tiram
+ * ids desta mesma sequência ao adicionar itens, e o item é gravado depois com o id que o cliente
+ * já recebeu. Chamada sem entidade, só avança a sequência.
+ */
+public class SequenciaComIdAtribuido extends SequenceStyleGenerator {
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        if (object instanceof ItemCompra item && item.getId() != null) {
+            return item.getId();
+        }
+        return super.generate(session, object);
+    }
+}
@@ -0,0 +1,5 @@
+package ecommerce.entity;
+
+public enum SituacaoEvento {
+    PENDENTE, ENVIADO, FALHOU
+}
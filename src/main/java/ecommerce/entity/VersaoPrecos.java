@@ -0,0 +1,44 @@
+package ecommerce.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/*
+ * Linha única com a versão de preços do catálogo, avançada na mesma transação de cada mudança de
+ * preço ou peso de produto. Totais guardados nos carrinhos e ETags de orçamento valem só para a
+ * versão em que foram calculados, em qualquer instância da aplicação.
+ */
+@Entity
+public class VersaoPrecos {
+
+    public static final long ID = 1L;
+
+    @Id
+    private Long id;
+
+    private Long valor;
+
+    public VersaoPrecos() {}
+
+    public VersaoPrecos(Long id, Long valor) {
+        this.id = id;
+        this.valor = valor;
+    }
+
+    // Getters e Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getValor() {
+        return valor;
+    }
+
+    public void setValor(Long valor) {
+        this.valor = valor;
+    }
+}
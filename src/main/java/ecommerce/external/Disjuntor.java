@@ -0,0 +1,106 @@
+package ecommerce.external;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Circuit breaker por falhas consecutivas. Fechado, conta as falhas seguidas e abre ao atingir o
+ * limite; aberto, recusa tudo até passar o tempo configurado; depois deixa passar uma única
+ * chamada de teste, que fecha o circuito se der certo ou o abre de novo se falhar. O estado é um
+ * record imutável trocado por compareAndSet, sem travas.
+ */
+public class Disjuntor {
+
+	private static final Logger log = LoggerFactory.getLogger(Disjuntor.class);
+
+	public enum Situacao {
+		FECHADO, ABERTO, MEIO_ABERTO
+	}
+
+	private final String nome;
+	private final int limiteFalhas;
+	private final long tempoAberto;
+	private final LongSupplier relogio;
+	private final AtomicReference<Estado> estado = new AtomicReference<>(new Estado(Situacao.FECHADO, 0, 0));
+
+	public Disjuntor(String nome, int limiteFalhas, Duration tempoAberto) {
+		this(nome, limiteFalhas, tempoAberto, System::nanoTime);
+	}
+
+	public Disjuntor(String nome, int limiteFalhas, Duration tempoAberto, LongSupplier relogio) {
+		if (limiteFalhas < 1) {
+			throw new IllegalArgumentException("O limite de falhas precisa ser maior que zero.");
+		}
+		this.nome = nome;
+		this.limiteFalhas = limiteFalhas;
+		this.tempoAberto = tempoAberto.toNanos();
+		this.relogio = relogio;
+	}
+
+	public boolean permitir() {
+		while (true) {
+			Estado atual = estado.get();
+			if (atual.situacao() == Situacao.FECHADO) {
+				return true;
+			}
+			if (atual.situacao() == Situacao.MEIO_ABERTO || relogio.getAsLong() - atual.abertoDesde() < tempoAberto) {
+				return false;
+			}
+			// Só quem vencer a troca faz a chamada de teste
+			if (estado.compareAndSet(atual, new Estado(Situacao.MEIO_ABERTO, atual.falhas(), atual.abertoDesde()))) {
+				return true;
+			}
+		}
+	}
+
+	/*
+	 * A chamada permitida não chegou a sair (compartimento cheio, executor encerrado) ou foi
+	 * abandonada sem resultado. Se era a de teste, o circuito volta a aberto com o tempo já vencido,
+	 * e a próxima chamada faz o teste; sem isso ele ficaria meio aberto para sempre.
+	 */
+	public void desistir() {
+		Estado atual = estado.get();
+		if (atual.situacao() == Situacao.MEIO_ABERTO) {
+			estado.compareAndSet(atual, new Estado(Situacao.ABERTO, atual.falhas(), atual.abertoDesde()));
+		}
+	}
+
+	public void registrarSucesso() {
+		Estado anterior = estado.getAndSet(new Estado(Situacao.FECHADO, 0, 0));
+		if (anterior.situacao() != Situacao.FECHADO) {
+			log.info("Circuito {} fechado.", nome);
+		}
+	}
+
+	public void registrarFalha() {
+		while (true) {
+			Estado atual = estado.get();
+			Estado novo;
+			if (atual.situacao() == Situacao.FECHADO && atual.falhas() + 1 < limiteFalhas) {
+				novo = new Estado(Situacao.FECHADO, atual.falhas() + 1, 0);
+			} else if (atual.situacao() == Situacao.ABERTO) {
+				// Chamadas que já estavam em andamento quando o circuito abriu
+				return;
+			} else {
+				novo = new Estado(Situacao.ABERTO, atual.falhas() + 1, relogio.getAsLong());
+			}
+			if (estado.compareAndSet(atual, novo)) {
+				if (novo.situacao() == Situacao.ABERTO) {
+					log.warn("Circuito {} aberto após {} falhas seguidas.", nome, novo.falhas());
+				}
+				return;
+			}
+		}
+	}
+
+	public Situacao situacao() {
+		return estado.get().situacao();
+	}
+
+	private record Estado(Situacao situacao, int falhas, long abertoDesde) {
+	}
+}
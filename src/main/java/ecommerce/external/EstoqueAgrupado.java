@@ -0,0 +1,255 @@
+package ecommerce.external;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+
+/*
+ * Decorador que agrupa chamadas concorrentes ao estoque em um único lote por janela de tempo
+ * ou tamanho máximo, somando as quantidades por produto. A primeira thread de cada lote espera
+ * a janela fechar e faz a chamada remota por todas; as demais só aguardam o próprio resultado,
+ * então nenhuma thread extra é criada. A baixa é tratada como tudo ou nada: se o lote for
+ * recusado, cada pedido é repetido individualmente para saber quem falhou. A repetição roda na
+ * thread de quem fez o pedido, então os pedidos do lote a fazem ao mesmo tempo, e não um depois do
+ * outro na primeira thread.
+ */
+public class EstoqueAgrupado implements IEstoqueExternal {
+
+	private static final DisponibilidadeDTO DISPONIVEL = new DisponibilidadeDTO(true, List.of());
+
+	private final IEstoqueExternal estoque;
+	private final Janela<EstoqueBaixaDTO> baixas;
+	private final Janela<DisponibilidadeDTO> consultas;
+
+	public EstoqueAgrupado(IEstoqueExternal estoque, Duration janela, int tamanhoMaximo) {
+		this.estoque = estoque;
+		this.baixas = new Janela<>(janela.toNanos(), tamanhoMaximo, this::executarBaixas);
+		this.consultas = new Janela<>(janela.toNanos(), tamanhoMaximo, this::executarConsultas);
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+		return baixas.submeter(produtosIds, produtosQuantidades);
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+		return consultas.submeter(produtosIds, produtosQuantidades);
+	}
+
+	private void executarBaixas(List<Pedido<EstoqueBaixaDTO>> pedidos) {
+		if (pedidos.size() == 1) {
+			pedidos.get(0).repetir(this::baixaIndividual);
+			return;
+		}
+
+		Map<Long, Long> totais = somarQuantidades(pedidos);
+		EstoqueBaixaDTO baixa = estoque.darBaixa(new ArrayList<>(totais.keySet()), new ArrayList<>(totais.values()));
+		if (baixa != null && Boolean.TRUE.equals(baixa.sucesso())) {
+			pedidos.forEach(pedido -> pedido.responder(baixa));
+			return;
+		}
+
+		pedidos.forEach(pedido -> pedido.repetir(this::baixaIndividual));
+	}
+
+	private void executarConsultas(List<Pedido<DisponibilidadeDTO>> pedidos) {
+		if (pedidos.size() == 1) {
+			pedidos.get(0).repetir(this::consultaIndividual);
+			return;
+		}
+
+		Map<Long, Long> totais = somarQuantidades(pedidos);
+		DisponibilidadeDTO disponibilidade = estoque.verificarDisponibilidade(
+				new ArrayList<>(totais.keySet()), new ArrayList<>(totais.values()));
+		if (disponibilidade != null && Boolean.TRUE.equals(disponibilidade.disponivel())) {
+			pedidos.forEach(pedido -> pedido.responder(DISPONIVEL));
+			return;
+		}
+
+		// Indisponível sem dizer quais produtos: não dá para atribuir a falta a nenhum pedido
+		List<Long> idsIndisponiveis = disponibilidade == null ? null : disponibilidade.idsProdutosIndisponiveis();
+		if (idsIndisponiveis == null || idsIndisponiveis.isEmpty()) {
+			pedidos.forEach(pedido -> pedido.repetir(this::consultaIndividual));
+			return;
+		}
+
+		Set<Long> indisponiveis = Set.copyOf(idsIndisponiveis);
+		Map<Long, Integer> pedidosPorProduto = contarPedidosPorProduto(pedidos);
+		for (Pedido<DisponibilidadeDTO> pedido : pedidos) {
+			List<Long> faltantes = new ArrayList<>();
+			boolean compartilhado = false;
+			for (Long produtoId : pedido.produtosIds()) {
+				if (indisponiveis.contains(produtoId) && !faltantes.contains(produtoId)) {
+					faltantes.add(produtoId);
+					compartilhado |= pedidosPorProduto.get(produtoId) > 1;
+				}
+			}
+
+			if (faltantes.isEmpty()) {
+				pedido.responder(DISPONIVEL);
+			} else if (compartilhado) {
+				// A soma do lote pode ter passado do estoque sem que este pedido sozinho passe
+				pedido.repetir(this::consultaIndividual);
+			} else {
+				pedido.responder(new DisponibilidadeDTO(false, faltantes));
+			}
+		}
+	}
+
+	private EstoqueBaixaDTO baixaIndividual(Pedido<EstoqueBaixaDTO> pedido) {
+		return estoque.darBaixa(pedido.produtosIds(), pedido.quantidades());
+	}
+
+	private DisponibilidadeDTO consultaIndividual(Pedido<DisponibilidadeDTO> pedido) {
+		return estoque.verificarDisponibilidade(pedido.produtosIds(), pedido.quantidades());
+	}
+
+	private static <T> Map<Long, Long> somarQuantidades(List<Pedido<T>> pedidos) {
+		Map<Long, Long> totais = new LinkedHashMap<>();
+		for (Pedido<T> pedido : pedidos) {
+			for (int i = 0; i < pedido.produtosIds().size(); i++) {
+				totais.merge(pedido.produtosIds().get(i), pedido.quantidades().get(i), Math::addExact);
+			}
+		}
+		return totais;
+	}
+
+	private static <T> Map<Long, Integer> contarPedidosPorProduto(List<Pedido<T>> pedidos) {
+		Map<Long, Integer> contagem = new HashMap<>();
+		for (Pedido<T> pedido : pedidos) {
+			for (Long produtoId : Set.copyOf(pedido.produtosIds())) {
+				contagem.merge(produtoId, 1, Integer::sum);
+			}
+		}
+		return contagem;
+	}
+
+	// O resultado é o que a thread do pedido executa ao acordar: a resposta do lote ou a chamada individual
+	private record Pedido<T>(List<Long> produtosIds, List<Long> quantidades, CompletableFuture<Supplier<T>> resultado) {
+
+		void responder(T resposta) {
+			resultado.complete(() -> resposta);
+		}
+
+		void repetir(Function<Pedido<T>, T> chamada) {
+			resultado.complete(() -> chamada.apply(this));
+		}
+	}
+
+	/*
+	 * Lote aberto de uma operação. Usa ReentrantLock em vez de synchronized para não prender
+	 * threads virtuais enquanto a primeira thread espera a janela.
+	 */
+	private static final class Janela<T> {
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final long janelaNanos;
+		private final int tamanhoMaximo;
+		private final Consumer<List<Pedido<T>>> executor;
+		private Lote<T> aberto;
+
+		Janela(long janelaNanos, int tamanhoMaximo, Consumer<List<Pedido<T>>> executor) {
+			this.janelaNanos = janelaNanos;
+			this.tamanhoMaximo = tamanhoMaximo;
+			this.executor = executor;
+		}
+
+		T submeter(List<Long> produtosIds, List<Long> quantidades) {
+			if (produtosIds.size() != quantidades.size()) {
+				throw new IllegalArgumentException("Listas de produtos e quantidades com tamanhos diferentes.");
+			}
+			Pedido<T> pedido = new Pedido<>(produtosIds, quantidades, new CompletableFuture<>());
+
+			Lote<T> lote;
+			boolean lider = false;
+			lock.lock();
+			try {
+				lote = aberto;
+				if (lote == null) {
+					lote = new Lote<>(lock.newCondition());
+					aberto = lote;
+					lider = true;
+				}
+				lote.pedidos.add(pedido);
+				if (lote.pedidos.size() >= tamanhoMaximo) {
+					aberto = null;
+					lote.cheio.signal();
+				}
+				if (lider) {
+					aguardarJanela(lote);
+				}
+			} finally {
+				lock.unlock();
+			}
+
+			if (lider) {
+				executar(lote.pedidos);
+			}
+			return aguardar(pedido.resultado());
+		}
+
+		private void aguardarJanela(Lote<T> lote) {
+			long restante = janelaNanos;
+			try {
+				while (aberto == lote && restante > 0) {
+					restante = lote.cheio.awaitNanos(restante);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (aberto == lote) {
+				aberto = null;
+			}
+		}
+
+		private void executar(List<Pedido<T>> pedidos) {
+			try {
+				executor.accept(Collections.unmodifiableList(pedidos));
+			} catch (RuntimeException e) {
+				pedidos.forEach(pedido -> pedido.resultado().completeExceptionally(e));
+			} finally {
+				pedidos.forEach(pedido -> pedido.resultado()
+						.completeExceptionally(new IllegalStateException("Lote de estoque não concluído.")));
+			}
+		}
+
+		private static <T> T aguardar(CompletableFuture<Supplier<T>> resultado) {
+			Supplier<T> resposta;
+			try {
+				resposta = resultado.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException causa) {
+					throw causa;
+				}
+				throw e;
+			}
+			return resposta.get();
+		}
+	}
+
+	private static final class Lote<T> {
+
+		private final List<Pedido<T>> pedidos = new ArrayList<>();
+		private final Condition cheio;
+
+		Lote(Condition cheio) {
+			this.cheio = cheio;
+		}
+	}
+}
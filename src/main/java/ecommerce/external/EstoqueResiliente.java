@@ -0,0 +1,28 @@
+package ecommerce.external;
+
+import java.util.List;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+
+// Chamadas ao estoque no compartimento próprio, com prazo e disjuntor
+public class EstoqueResiliente implements IEstoqueExternal {
+
+	private final IEstoqueExternal estoque;
+	private final Isolamento isolamento;
+
+	public EstoqueResiliente(IEstoqueExternal estoque, Isolamento isolamento) {
+		this.estoque = estoque;
+		this.isolamento = isolamento;
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+		return isolamento.executar(() -> estoque.darBaixa(produtosIds, produtosQuantidades));
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+		return isolamento.executar(() -> estoque.verificarDisponibilidade(produtosIds, produtosQuantidades));
+	}
+}
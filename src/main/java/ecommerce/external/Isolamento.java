@@ -0,0 +1,191 @@
+package ecommerce.external;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/*
+ * Compartimento (bulkhead) de um serviço externo: as chamadas rodam em um pool próprio de
+ * tamanho fixo, com uma vaga por thread, então um serviço lento ocupa só as threads dele. A vaga
+ * é devolvida quando a thread termina a chamada, não quando quem chamou desiste dela. Cada chamada tem
+ * prazo e passa pelo disjuntor; pool cheio ou circuito aberto recusam na hora com
+ * ServicoIndisponivelException. Exceções e prazos estourados contam como falha; respostas de
+ * negócio negativas (pagamento recusado, estoque insuficiente) não.
+ */
+public class Isolamento implements AutoCloseable {
+
+	private final String servico;
+	private final ThreadPoolExecutor executor;
+	private final Semaphore vagas;
+	private final Duration prazo;
+	private final Disjuntor disjuntor;
+
+	public Isolamento(String servico, int threads, Duration prazo, Disjuntor disjuntor, ThreadFactory threadFactory) {
+		this.servico = servico;
+		// A fila só guarda chamadas que já têm vaga, então nunca passa do número de threads
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				threadFactory);
+		this.vagas = new Semaphore(threads);
+		this.executor.allowCoreThreadTimeOut(true);
+		this.prazo = prazo;
+		this.disjuntor = disjuntor;
+	}
+
+	// No prazo estourado a chamada é interrompida
+	public <T> T executar(Callable<T> chamada) {
+		Future<T> futuro = submeterPeloDisjuntor(chamada);
+		return aguardar(futuro, () -> {
+			futuro.cancel(true);
+			return true;
+		});
+	}
+
+	/*
+	 * Para chamadas que não podem ser abandonadas no meio (autorização de pagamento): no prazo
+	 * estourado a chamada segue no compartimento e a resposta atrasada vai para aoChegarAtrasado.
+	 * A troca em resolvida decide quem fica com a resposta quando ela chega junto com o prazo.
+	 */
+	public <T> T executar(Callable<T> chamada, Consumer<T> aoChegarAtrasado) {
+		AtomicBoolean resolvida = new AtomicBoolean();
+		Future<T> futuro = submeterPeloDisjuntor(() -> {
+			T resultado = chamada.call();
+			if (!resolvida.compareAndSet(false, true)) {
+				aoChegarAtrasado.accept(resultado);
+			}
+			return resultado;
+		});
+		return aguardar(futuro, () -> resolvida.compareAndSet(false, true));
+	}
+
+	/*
+	 * Compensações ignoram o disjuntor: desfazer uma operação vale a tentativa mesmo com o circuito
+	 * aberto. Com o compartimento cheio a compensação roda na thread de quem chamou.
+	 */
+	public void compensar(Runnable compensacao) {
+		Future<Object> futuro;
+		try {
+			futuro = submeter(Executors.callable(compensacao));
+		} catch (ServicoIndisponivelException e) {
+			compensacao.run();
+			return;
+		}
+		aguardar(futuro, () -> {
+			futuro.cancel(true);
+			return true;
+		});
+	}
+
+	public Disjuntor disjuntor() {
+		return disjuntor;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/*
+	 * A vaga é reservada antes de pedir passagem ao disjuntor: a chamada de teste do circuito meio
+	 * aberto só é tomada por quem já tem onde rodar. Se mesmo assim ela não sair, o teste é devolvido.
+	 */
+	private <T> Future<T> submeterPeloDisjuntor(Callable<T> chamada) {
+		reservarVaga();
+		if (!disjuntor.permitir()) {
+			vagas.release();
+			throw new ServicoIndisponivelException("Serviço de " + servico + " indisponível.");
+		}
+		try {
+			return iniciar(chamada);
+		} catch (ServicoIndisponivelException e) {
+			disjuntor.desistir();
+			throw e;
+		}
+	}
+
+	private <T> Future<T> submeter(Callable<T> chamada) {
+		reservarVaga();
+		return iniciar(chamada);
+	}
+
+	private void reservarVaga() {
+		if (!vagas.tryAcquire()) {
+			throw new ServicoIndisponivelException("Serviço de " + servico + " sobrecarregado.");
+		}
+	}
+
+	/*
+	 * Recebe a vaga já reservada. Ela volta antes de o resultado ser publicado, então quem chama de
+	 * novo logo em seguida já a encontra livre. Uma tarefa cancelada antes de começar ainda passa
+	 * pelo executor e devolve a vaga ali.
+	 */
+	private <T> Future<T> iniciar(Callable<T> chamada) {
+		AtomicBoolean devolvida = new AtomicBoolean();
+		Runnable devolver = () -> {
+			if (devolvida.compareAndSet(false, true)) {
+				vagas.release();
+			}
+		};
+		FutureTask<T> tarefa = new FutureTask<>(() -> {
+			try {
+				return chamada.call();
+			} finally {
+				devolver.run();
+			}
+		});
+		try {
+			executor.execute(() -> {
+				try {
+					tarefa.run();
+				} finally {
+					devolver.run();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			devolver.run();
+			throw new ServicoIndisponivelException("Serviço de " + servico + " sobrecarregado.");
+		}
+		return tarefa;
+	}
+
+	private <T> T aguardar(Future<T> futuro, BooleanSupplier desistir) {
+		try {
+			T resultado;
+			try {
+				resultado = futuro.get(prazo.toNanos(), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				if (desistir.getAsBoolean()) {
+					disjuntor.registrarFalha();
+					throw new IllegalStateException("Tempo esgotado na chamada ao serviço de " + servico + ".");
+				}
+				// A resposta chegou junto com o prazo e ficou com quem chamou
+				resultado = futuro.get();
+			}
+			disjuntor.registrarSucesso();
+			return resultado;
+		} catch (ExecutionException e) {
+			disjuntor.registrarFalha();
+			if (e.getCause() instanceof RuntimeException causa) {
+				throw causa;
+			}
+			throw new IllegalStateException("Erro na chamada ao serviço de " + servico + ".", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			desistir.getAsBoolean();
+			disjuntor.desistir();
+			throw new IllegalStateException("Chamada ao serviço de " + servico + " interrompida.");
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package ecommerce.external;
+
+import ecommerce.dto.PagamentoDTO;
+
+/*
+ * Chamadas ao pagamento no compartimento próprio, com prazo e disjuntor. Uma autorização não é
+ * interrompida no prazo: se ela chegar depois, já sem ninguém esperando, e vier autorizada, o
+ * pagamento é cancelado. O cancelamento é uma compensação e passa mesmo com o circuito aberto.
+ */
+public class PagamentoResiliente implements IPagamentoExternal {
+
+	private final IPagamentoExternal pagamento;
+	private final Isolamento isolamento;
+
+	public PagamentoResiliente(IPagamentoExternal pagamento, Isolamento isolamento) {
+		this.pagamento = pagamento;
+		this.isolamento = isolamento;
+	}
+
+	@Override
+	public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+		return isolamento.executar(() -> pagamento.autorizarPagamento(clienteId, custoTotal),
+				atrasado -> {
+					if (atrasado != null && Boolean.TRUE.equals(atrasado.autorizado())) {
+						pagamento.cancelarPagamento(clienteId, atrasado.transacaoId());
+					}
+				});
+	}
+
+	@Override
+	public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+		isolamento.compensar(() -> pagamento.cancelarPagamento(clienteId, pagamentoTransacaoId));
+	}
+}
@@ -0,0 +1,9 @@
+package ecommerce.external;
+
+// Recusa imediata de uma chamada externa (circuito aberto ou compartimento cheio); o controller responde 503
+public class ServicoIndisponivelException extends RuntimeException {
+
+	public ServicoIndisponivelException(String message) {
+		super(message);
+	}
+}
@@ -1,22 +1,266 @@
 package ecommerce.external.fake;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
 import ecommerce.external.IEstoqueExternal;
 
+/*
+ * Estoque em memória para testes de carga locais. As quantidades ficam em uma tabela de
+ * endereçamento aberto indexada pelo id do produto (long), sem objetos por produto. A baixa de
+ * vários produtos é atômica: trava as listras dos produtos envolvidos sempre em ordem crescente,
+ * confere todas as quantidades e só então subtrai, então o estoque nunca fica negativo. A consulta
+ * de disponibilidade não trava nada. Produtos desconhecidos entram com a quantidade inicial
+ * configurada no primeiro uso.
+ */
 @Service
 public class EstoqueSimulado implements IEstoqueExternal {
+
+    private static final long VAZIO = Long.MIN_VALUE;
+    private static final int CAPACIDADE_INICIAL = 1024;
+
+    private final ReentrantLock[] listras;
+    private final ReentrantLock registro = new ReentrantLock();
+    private final long quantidadeInicial;
+    private volatile Tabela tabela = new Tabela(CAPACIDADE_INICIAL);
+
+    @Autowired
+    public EstoqueSimulado(@Value("${ecommerce.estoque.simulado.quantidade-inicial:0}") long quantidadeInicial,
+                           @Value("${ecommerce.estoque.simulado.listras:256}") int listras) {
+        this.quantidadeInicial = quantidadeInicial;
+        this.listras = new ReentrantLock[Integer.highestOneBit(Math.max(1, listras - 1)) << 1];
+        for (int i = 0; i < this.listras.length; i++) {
+            this.listras[i] = new ReentrantLock();
+        }
+    }
+
     @Override
     public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
-        return null;
+        Pedido pedido = agrupar(produtosIds, produtosQuantidades);
+        if (quantidadeInicial > 0) {
+            registrar(pedido.ids);
+        }
+
+        int[] listrasDoPedido = listrasOrdenadas(pedido.ids);
+        for (int listra : listrasDoPedido) {
+            listras[listra].lock();
+        }
+        try {
+            // O crescimento da tabela trava todas as listras, então aqui ela está estável
+            Tabela atual = tabela;
+            int[] posicoes = new int[pedido.ids.length];
+            for (int i = 0; i < pedido.ids.length; i++) {
+                posicoes[i] = atual.posicao(pedido.ids[i]);
+                if (posicoes[i] < 0 || atual.quantidades.get(posicoes[i]) < pedido.quantidades[i]) {
+                    return new EstoqueBaixaDTO(false);
+                }
+            }
+            for (int i = 0; i < posicoes.length; i++) {
+                atual.quantidades.addAndGet(posicoes[i], -pedido.quantidades[i]);
+            }
+            return new EstoqueBaixaDTO(true);
+        } finally {
+            for (int i = listrasDoPedido.length - 1; i >= 0; i--) {
+                listras[listrasDoPedido[i]].unlock();
+            }
+        }
     }
 
     @Override
     public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
-        return null;
+        Pedido pedido = agrupar(produtosIds, produtosQuantidades);
+        Tabela atual = tabela;
+
+        List<Long> indisponiveis = new ArrayList<>();
+        for (int i = 0; i < pedido.ids.length; i++) {
+            int posicao = atual.posicao(pedido.ids[i]);
+            long disponivel = posicao < 0 ? quantidadeInicial : atual.quantidades.get(posicao);
+            if (disponivel < pedido.quantidades[i]) {
+                indisponiveis.add(pedido.ids[i]);
+            }
+        }
+        return new DisponibilidadeDTO(indisponiveis.isEmpty(), indisponiveis);
+    }
+
+    public void definirEstoque(Long produtoId, long quantidade) {
+        if (quantidade < 0) {
+            throw new IllegalArgumentException("Quantidade em estoque não pode ser negativa.");
+        }
+        long[] ids = { produtoId };
+        registrar(ids);
+
+        ReentrantLock lock = listras[listra(produtoId)];
+        lock.lock();
+        try {
+            Tabela atual = tabela;
+            atual.quantidades.set(atual.posicao(produtoId), quantidade);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long consultarEstoque(Long produtoId) {
+        Tabela atual = tabela;
+        int posicao = atual.posicao(produtoId);
+        return posicao < 0 ? quantidadeInicial : atual.quantidades.get(posicao);
+    }
+
+    // Sempre chamado antes de travar as listras, para manter a ordem registro -> listras
+    private void registrar(long[] ids) {
+        Tabela atual = tabela;
+        boolean todosRegistrados = true;
+        for (long id : ids) {
+            todosRegistrados &= atual.posicao(id) >= 0;
+        }
+        if (todosRegistrados) {
+            return;
+        }
+
+        registro.lock();
+        try {
+            for (long id : ids) {
+                if (tabela.posicao(id) >= 0) {
+                    continue;
+                }
+                if (tabela.cheia()) {
+                    crescer();
+                }
+                tabela.inserir(id, quantidadeInicial);
+            }
+        } finally {
+            registro.unlock();
+        }
+    }
+
+    private void crescer() {
+        for (ReentrantLock lock : listras) {
+            lock.lock();
+        }
+        try {
+            Tabela antiga = tabela;
+            Tabela nova = new Tabela(antiga.chaves.length() * 2);
+            for (int i = 0; i < antiga.chaves.length(); i++) {
+                long chave = antiga.chaves.get(i);
+                if (chave != VAZIO) {
+                    nova.inserir(chave, antiga.quantidades.get(i));
+                }
+            }
+            tabela = nova;
+        } finally {
+            for (int i = listras.length - 1; i >= 0; i--) {
+                listras[i].unlock();
+            }
+        }
+    }
+
+    private int[] listrasOrdenadas(long[] ids) {
+        int[] resultado = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            resultado[i] = listra(ids[i]);
+        }
+        Arrays.sort(resultado);
+        int distintas = 0;
+        for (int i = 0; i < resultado.length; i++) {
+            if (i == 0 || resultado[i] != resultado[i - 1]) {
+                resultado[distintas++] = resultado[i];
+            }
+        }
+        return Arrays.copyOf(resultado, distintas);
+    }
+
+    private int listra(long id) {
+        return espalhar(id) & (listras.length - 1);
+    }
+
+    private static int espalhar(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // Soma quantidades de ids repetidos; pedidos costumam ter poucos itens, então a busca é linear
+    private static Pedido agrupar(List<Long> produtosIds, List<Long> produtosQuantidades) {
+        if (produtosIds.size() != produtosQuantidades.size()) {
+            throw new IllegalArgumentException("Listas de produtos e quantidades com tamanhos diferentes.");
+        }
+        long[] ids = new long[produtosIds.size()];
+        long[] quantidades = new long[produtosIds.size()];
+        int tamanho = 0;
+        for (int i = 0; i < produtosIds.size(); i++) {
+            long id = produtosIds.get(i);
+            long quantidade = produtosQuantidades.get(i);
+            if (id == VAZIO || quantidade < 0) {
+                throw new IllegalArgumentException("Produto ou quantidade inválidos.");
+            }
+            int j = 0;
+            while (j < tamanho && ids[j] != id) {
+                j++;
+            }
+            if (j == tamanho) {
+                ids[tamanho++] = id;
+            }
+            quantidades[j] = Math.addExact(quantidades[j], quantidade);
+        }
+        return new Pedido(Arrays.copyOf(ids, tamanho), Arrays.copyOf(quantidades, tamanho));
+    }
+
+    private record Pedido(long[] ids, long[] quantidades) {
+    }
+
+    /*
+     * As chaves são lidas sem trava; a quantidade de um produto novo é escrita antes da chave,
+     * então quem encontra a chave já enxerga a quantidade.
+     */
+    private static final class Tabela {
+
+        private final AtomicLongArray chaves;
+        private final AtomicLongArray quantidades;
+        private final int mascara;
+        private int ocupadas;
+
+        Tabela(int capacidade) {
+            this.chaves = new AtomicLongArray(capacidade);
+            this.quantidades = new AtomicLongArray(capacidade);
+            this.mascara = capacidade - 1;
+            for (int i = 0; i < capacidade; i++) {
+                chaves.set(i, VAZIO);
+            }
+        }
+
+        int posicao(long chave) {
+            int i = espalhar(chave) & mascara;
+            while (true) {
+                long atual = chaves.get(i);
+                if (atual == chave) {
+                    return i;
+                }
+                if (atual == VAZIO) {
+                    return -1;
+                }
+                i = (i + 1) & mascara;
+            }
+        }
+
+        boolean cheia() {
+            return (ocupadas + 1) * 2 > chaves.length();
+        }
+
+        void inserir(long chave, long quantidade) {
+            int i = espalhar(chave) & mascara;
+            while (chaves.get(i) != VAZIO) {
+                i = (i + 1) & mascara;
+            }
+            quantidades.set(i, quantidade);
+            chaves.set(i, chave);
+            ocupadas++;
+        }
     }
 }
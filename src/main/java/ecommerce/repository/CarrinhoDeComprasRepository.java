@@ -1,15 +1,75 @@
 package ecommerce.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import ecommerce.dto.LinhaExportacaoDTO;
+import ecommerce.dto.TotaisCarrinhoDTO;
 import ecommerce.entity.CarrinhoDeCompras;
 import ecommerce.entity.Cliente;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface CarrinhoDeComprasRepository extends JpaRepository<CarrinhoDeCompras, Long> {
 
+    // Carrinho e itens (id do produto e quantidade) em uma única consulta; os produtos vêm do CatalogoProdutos
+    @EntityGraph(attributePaths = { "itens" })
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
     Optional<CarrinhoDeCompras> findByIdAndCliente(Long id, Cliente cliente);
+
+    // Mesma consulta filtrando pela chave estrangeira, sem precisar da entidade Cliente
+    @EntityGraph(attributePaths = { "itens" })
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    Optional<CarrinhoDeCompras> findByIdAndClienteId(Long id, Long clienteId);
+
+    // Carrinho e itens pelo id, para ativar o carrinho no armazenamento fora do heap
+    @EntityGraph(attributePaths = { "itens" })
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    Optional<CarrinhoDeCompras> findComItensById(Long id);
+
+    // Carrega os carrinhos já com itens para permitir a precificação fora da sessão
+    @EntityGraph(attributePaths = { "itens" })
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<CarrinhoDeCompras> findByIdIn(Collection<Long> ids);
+
+    /*
+     * Subtotal e peso de cada carrinho somados no banco: trafega uma linha por carrinho e não
+     * carrega produtos. Carrinhos vazios não aparecem. O peso vem em long; o (int) de quem lê dá o
+     * mesmo resultado da soma int item a item, inclusive em caso de estouro.
+     */
+    @Query("select new ecommerce.dto.TotaisCarrinhoDTO(c.id, sum(p.preco * i.quantidade), sum(cast(p.peso as long) * i.quantidade)) "
+            + "from CarrinhoDeCompras c join c.itens i join i.produto p where c.id in :ids group by c.id")
+    List<TotaisCarrinhoDTO> totalizarPorIds(Collection<Long> ids);
+
+    // Incremento forçado da versão: alterar só a quantidade de um item também muda a versão do carrinho
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    Optional<CarrinhoDeCompras> findParaAlteracaoById(Long id);
+
+    // O mesmo, só se o carrinho for do cliente
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    Optional<CarrinhoDeCompras> findParaAlteracaoByIdAndClienteId(Long id, Long clienteId);
+
+    // Só a versão, sem carregar carrinho nem itens
+    @Query("select c.versao from CarrinhoDeCompras c where c.id = :id and c.cliente.id = :clienteId")
+    Optional<Long> findVersaoByIdAndClienteId(Long id, Long clienteId);
+
+    /*
+     * Uma linha por item (ou uma por carrinho vazio), em ordem de carrinho, lida com cursor somente
+     * para frente. São valores, não entidades, então nada se acumula no contexto de persistência.
+     */
+    @Query("select new ecommerce.dto.LinhaExportacaoDTO(c.id, cl.id, cl.tipo, c.data, i.id, i.produto.id, i.quantidade) "
+            + "from CarrinhoDeCompras c left join c.cliente cl left join c.itens i order by c.id, i.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<LinhaExportacaoDTO> streamExportacao();
 }
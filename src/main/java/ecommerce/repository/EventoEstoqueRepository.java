@@ -0,0 +1,37 @@
+package ecommerce.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import ecommerce.entity.EventoEstoque;
+import ecommerce.entity.SituacaoEvento;
+
+@Repository
+public interface EventoEstoqueRepository extends JpaRepository<EventoEstoque, Long> {
+
+    /*
+     * Pendentes já liberados para envio, na ordem em que foram gravados. Ficam de fora os eventos
+     * de produtos com um pendente anterior ainda esperando a próxima tentativa: o filtro vem antes
+     * da paginação, então um produto parado não ocupa o lote dos demais.
+     */
+    @Query("select e from EventoEstoque e where e.situacao = ecommerce.entity.SituacaoEvento.PENDENTE "
+            + "and e.proximaTentativa <= :agora and not exists (select a.id from EventoEstoque a "
+            + "where a.produtoId = e.produtoId and a.situacao = ecommerce.entity.SituacaoEvento.PENDENTE "
+            + "and a.proximaTentativa > :agora and a.id < e.id) order by e.id")
+    List<EventoEstoque> findProntos(Instant agora, Pageable lote);
+
+    // Um único UPDATE para o lote inteiro, sem carregar os eventos de novo
+    @Modifying
+    @Query("update EventoEstoque e set e.situacao = ecommerce.entity.SituacaoEvento.ENVIADO, e.processadoEm = :agora "
+            + "where e.id in :ids")
+    int marcarEnviados(Collection<Long> ids, Instant agora);
+
+    long countBySituacao(SituacaoEvento situacao);
+}
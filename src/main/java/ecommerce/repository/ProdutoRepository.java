@@ -1,10 +1,19 @@
 package ecommerce.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import ecommerce.entity.Produto;
 
 @Repository
 public interface ProdutoRepository extends JpaRepository<Produto, Long> {
+
+    // Instâncias criadas pelo construtor, fora da sessão: não se acumulam no contexto de persistência de quem chamou
+    @Query("select new ecommerce.entity.Produto(p.id, p.nome, p.descricao, p.preco, p.peso, p.tipo) "
+            + "from Produto p where p.id in :ids")
+    List<Produto> findDesanexadosByIdIn(Collection<Long> ids);
 }
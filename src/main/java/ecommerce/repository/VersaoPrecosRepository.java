@@ -0,0 +1,22 @@
+package ecommerce.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import ecommerce.entity.VersaoPrecos;
+
+@Repository
+public interface VersaoPrecosRepository extends JpaRepository<VersaoPrecos, Long> {
+
+    @Query("select v.valor from VersaoPrecos v where v.id = " + VersaoPrecos.ID)
+    Optional<Long> findValor();
+
+    // Incremento no próprio banco: mudanças simultâneas em instâncias diferentes não se perdem
+    @Modifying
+    @Query("update VersaoPrecos v set v.valor = v.valor + 1 where v.id = " + VersaoPrecos.ID)
+    int avancar();
+}
@@ -0,0 +1,214 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+
+/*
+ * Cálculo do custo total em uma única passada sobre os itens, com aritmética inteira (long) em
+ * centésimos de centavo. Preços com mais de duas casas decimais ou valores que estourariam um
+ * long caem no cálculo exato com BigDecimal, que dá o mesmo resultado arredondado em HALF_UP.
+ * Faixas de frete, fatores por tipo de cliente e descontos vêm das TabelasPreco, lidas uma única
+ * vez por cálculo. Carrinhos com totais conferidos contra a versão atual do catálogo são
+ * precificados direto pelo subtotal e peso guardados, sem percorrer os itens.
+ *
+ * Promoções por tipo de produto entram na mesma passada: cada item soma também nos acumuladores
+ * do seu tipo, e o desconto das promoções sai do subtotal antes das faixas de desconto. Os totais
+ * guardados não separam os tipos: a escolha entre totais e itens é feita aqui, com a mesma tabela
+ * do cálculo, e com promoções na tabela o carrinho é sempre percorrido item a item. Quem prepara o
+ * carrinho deixando os produtos sem resolver passa ao cálculo a tabela com que o preparou.
+ */
+@Component
+public class CalculadoraCusto {
+
+	private static final BigDecimal ZERO = BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
+
+	private static final long CEM_POR_CENTO = 100L;
+
+	private static final long FORA_DA_FAIXA = Long.MIN_VALUE;
+	private static final int PRECISAO_MAXIMA = 16;
+	private static final long[] POTENCIAS_DE_DEZ = { 1L, 10L, 100L };
+
+	private final TabelasPreco tabelas;
+
+	public CalculadoraCusto() {
+		this(new TabelasPreco(RegrasPreco.PADRAO));
+	}
+
+	@Autowired
+	public CalculadoraCusto(TabelasPreco tabelas) {
+		this.tabelas = tabelas;
+	}
+
+	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho) {
+		return calcularCustoTotal(carrinho, carrinho.getCliente().getTipo());
+	}
+
+	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho, TipoCliente tipoCliente) {
+		return calcularCustoTotal(carrinho, tipoCliente, tabelas.atuais());
+	}
+
+	// Tabela de uma precificação inteira, para preparar o carrinho e calcular o custo com as mesmas regras
+	public RegrasPreco regras() {
+		return tabelas.atuais();
+	}
+
+	// Subtotal, promoções, desconto e frete para exibição, com a mesma tabela do total, que sai igual ao calcularCustoTotal
+	public Detalhamento detalhar(CarrinhoDeCompras carrinho, TipoCliente tipoCliente) {
+		RegrasPreco regras = tabelas.atuais();
+		if (carrinho.getItens().isEmpty()) {
+			return new Detalhamento(ZERO, ZERO, ZERO, ZERO, ZERO);
+		}
+		boolean pelosTotais = usarTotais(carrinho, regras);
+		BigDecimal subtotal = pelosTotais ? carrinho.getSubtotal() : calcularCustoProdutos(carrinho);
+		int pesoTotal = pelosTotais ? carrinho.getPesoTotal() : calcularPesoTotal(carrinho);
+		BigDecimal promocoes = pelosTotais ? ZERO : regras.promocoes().descontoExato(carrinho.getItens());
+		BigDecimal comPromocoes = subtotal.subtract(promocoes);
+		BigDecimal desconto = comPromocoes.multiply(regras.fracaoDesconto(comPromocoes));
+		BigDecimal frete = BigDecimal.valueOf(pesoTotal)
+				.multiply(regras.reaisPorKg(pesoTotal))
+				.multiply(regras.fatorFrete(tipoCliente));
+		return new Detalhamento(subtotal.setScale(2, RoundingMode.HALF_UP), promocoes.setScale(2, RoundingMode.HALF_UP),
+				desconto.setScale(2, RoundingMode.HALF_UP), frete.setScale(2, RoundingMode.HALF_UP),
+				calcularCustoTotal(carrinho, tipoCliente, regras));
+	}
+
+	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho, TipoCliente tipoCliente, RegrasPreco regras) {
+		List<ItemCompra> itens = carrinho.getItens();
+		if (itens.isEmpty()) {
+			return ZERO;
+		}
+		if (usarTotais(carrinho, regras)) {
+			return calcularPelosTotais(carrinho.getSubtotal(), carrinho.getPesoTotal(), tipoCliente, regras);
+		}
+
+		Promocoes promocoes = regras.promocoes();
+		Promocoes.Acumuladores porTipo = promocoes.vazia() ? null : promocoes.acumuladores();
+		long custoProdutos = 0;
+		int pesoTotal = 0;
+		try {
+			for (ItemCompra item : itens) {
+				Produto produto = item.getProduto();
+				long quantidade = item.getQuantidade();
+				long preco = paraCentavos(produto.getPreco());
+				if (preco == FORA_DA_FAIXA) {
+					return calcularCustoTotalExato(carrinho, tipoCliente, regras);
+				}
+				long valor = Math.multiplyExact(preco, quantidade);
+				custoProdutos = Math.addExact(custoProdutos, valor);
+				// Mesma aritmética int do cálculo original, inclusive em caso de estouro
+				pesoTotal += produto.getPeso() * (int) quantidade;
+				if (porTipo != null) {
+					porTipo.somar(produto.getTipo(), preco, quantidade, valor);
+				}
+			}
+			if (porTipo != null) {
+				custoProdutos = Math.subtractExact(custoProdutos, promocoes.descontoCentavos(porTipo));
+			}
+			return precificar(custoProdutos, pesoTotal, tipoCliente, regras);
+		} catch (ArithmeticException e) {
+			return calcularCustoTotalExato(carrinho, tipoCliente, regras);
+		}
+	}
+
+	private static boolean usarTotais(CarrinhoDeCompras carrinho, RegrasPreco regras) {
+		return carrinho.isTotaisConferidos() && regras.promocoes().vazia();
+	}
+
+	private BigDecimal calcularPelosTotais(BigDecimal subtotal, int pesoTotal, TipoCliente tipoCliente,
+			RegrasPreco regras) {
+		long custoProdutos = paraCentavos(subtotal);
+		if (custoProdutos != FORA_DA_FAIXA) {
+			try {
+				return precificar(custoProdutos, pesoTotal, tipoCliente, regras);
+			} catch (ArithmeticException e) {
+				// Segue para o cálculo exato
+			}
+		}
+		return precificarExato(subtotal, pesoTotal, tipoCliente, regras);
+	}
+
+	private static BigDecimal precificar(long custoProdutos, int pesoTotal, TipoCliente tipoCliente,
+			RegrasPreco regras) {
+		// Centavos vezes percentual dá o total em centésimos de centavo, sem perder precisão
+		long produtosPagos = Math.multiplyExact(custoProdutos,
+				CEM_POR_CENTO - regras.percentualDesconto(custoProdutos));
+		long frete = Math.multiplyExact(Math.multiplyExact((long) pesoTotal, regras.centavosPorKg(pesoTotal)),
+				regras.percentualFrete(tipoCliente));
+		return BigDecimal.valueOf(arredondarCentesimos(Math.addExact(produtosPagos, frete)), 2);
+	}
+
+	public BigDecimal calcularCustoTotalExato(CarrinhoDeCompras carrinho) {
+		return calcularCustoTotalExato(carrinho, carrinho.getCliente().getTipo());
+	}
+
+	public BigDecimal calcularCustoTotalExato(CarrinhoDeCompras carrinho, TipoCliente tipoCliente) {
+		return calcularCustoTotalExato(carrinho, tipoCliente, tabelas.atuais());
+	}
+
+	private BigDecimal calcularCustoTotalExato(CarrinhoDeCompras carrinho, TipoCliente tipoCliente,
+			RegrasPreco regras) {
+		if (carrinho.getItens() == null || carrinho.getItens().isEmpty()) {
+			return ZERO;
+		}
+		BigDecimal custoProdutos = calcularCustoProdutos(carrinho);
+		if (!regras.promocoes().vazia()) {
+			custoProdutos = custoProdutos.subtract(regras.promocoes().descontoExato(carrinho.getItens()));
+		}
+		return precificarExato(custoProdutos, calcularPesoTotal(carrinho), tipoCliente, regras);
+	}
+
+	private static BigDecimal precificarExato(BigDecimal custoProdutos, int pesoTotal, TipoCliente tipoCliente,
+			RegrasPreco regras) {
+		BigDecimal desconto = custoProdutos.multiply(regras.fracaoDesconto(custoProdutos));
+		BigDecimal custoFrete = BigDecimal.valueOf(pesoTotal)
+				.multiply(regras.reaisPorKg(pesoTotal))
+				.multiply(regras.fatorFrete(tipoCliente));
+		return custoProdutos.subtract(desconto).add(custoFrete).setScale(2, RoundingMode.HALF_UP);
+	}
+
+	private static long paraCentavos(BigDecimal valor) {
+		int escala = valor.scale();
+		if (escala < 0 || escala > 2 || valor.precision() > PRECISAO_MAXIMA) {
+			return FORA_DA_FAIXA;
+		}
+		// Com escala zero o BigDecimal compacto devolve o valor sem alocar um BigInteger
+		long semEscala = escala == 0 ? valor.longValue() : valor.scaleByPowerOfTen(escala).longValue();
+		return semEscala * POTENCIAS_DE_DEZ[2 - escala];
+	}
+
+	static long arredondarCentesimos(long centesimos) {
+		long centavos = centesimos / CEM_POR_CENTO;
+		long resto = centesimos % CEM_POR_CENTO;
+		if (resto >= 50) {
+			centavos++;
+		} else if (resto <= -50) {
+			centavos--;
+		}
+		return centavos;
+	}
+
+	private BigDecimal calcularCustoProdutos(CarrinhoDeCompras carrinho) {
+		return carrinho.getItens().stream()
+				.map(item -> item.getProduto().getPreco().multiply(BigDecimal.valueOf(item.getQuantidade())))
+				.reduce(BigDecimal.ZERO, BigDecimal::add);
+	}
+
+	private int calcularPesoTotal(CarrinhoDeCompras carrinho) {
+		return carrinho.getItens().stream()
+				.mapToInt(item -> item.getProduto().getPeso() * item.getQuantidade().intValue())
+				.sum();
+	}
+
+	public record Detalhamento(BigDecimal subtotal, BigDecimal promocoes, BigDecimal desconto, BigDecimal frete,
+			BigDecimal total) {
+	}
+}
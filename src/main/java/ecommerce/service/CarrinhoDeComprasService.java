@@ -1,22 +1,548 @@
 package ecommerce.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import ecommerce.dto.FinalizacaoCompraDTO;
+import ecommerce.dto.ItemCarrinhoDTO;
+import ecommerce.dto.LinhaExportacaoDTO;
+import ecommerce.dto.TotaisCarrinhoDTO;
 import ecommerce.entity.CarrinhoDeCompras;
 import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
 import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.service.CarrinhosAtivos.Instantaneo;
+import ecommerce.service.CarrinhosAtivos.Itens;
+import jakarta.transaction.Transactional;
 
+/*
+ * Com os carrinhos ativos habilitados, as alterações de itens vão só para o armazenamento fora do
+ * heap, sem transação nem escrita no banco, e orçamentos e finalizações leem os itens de lá. O
+ * carrinho é gravado nas tabelas ao ser finalizado, ao expirar, no encerramento da aplicação ou
+ * quando deixa de caber; os que não cabem seguem pelas tabelas, como com o armazenamento desabilitado.
+ */
 @Service
 public class CarrinhoDeComprasService {
+
+	private static final Logger log = LoggerFactory.getLogger(CarrinhoDeComprasService.class);
+
 	private final CarrinhoDeComprasRepository repository;
-	
+	private final CatalogoProdutos catalogoProdutos;
+	private final TabelasPreco tabelasPreco;
+	private final CarrinhosAtivos carrinhosAtivos;
+	private final TransactionTemplate transacao;
+
+	public CarrinhoDeComprasService(CarrinhoDeComprasRepository repository, CatalogoProdutos catalogoProdutos) {
+		this(repository, catalogoProdutos, new TabelasPreco(RegrasPreco.PADRAO));
+	}
+
+	public CarrinhoDeComprasService(CarrinhoDeComprasRepository repository, CatalogoProdutos catalogoProdutos,
+			TabelasPreco tabelasPreco) {
+		this(repository, catalogoProdutos, tabelasPreco, CarrinhosAtivos.DESABILITADO, null);
+	}
+
 	@Autowired
-	public CarrinhoDeComprasService(CarrinhoDeComprasRepository repository) {
+	public CarrinhoDeComprasService(CarrinhoDeComprasRepository repository, CatalogoProdutos catalogoProdutos,
+			TabelasPreco tabelasPreco, CarrinhosAtivos carrinhosAtivos, TransactionTemplate transacao) {
 		this.repository = repository;
+		this.catalogoProdutos = catalogoProdutos;
+		this.tabelasPreco = tabelasPreco;
+		this.carrinhosAtivos = carrinhosAtivos;
+		this.transacao = transacao;
 	}
 
 	public CarrinhoDeCompras buscarPorCarrinhoIdEClienteId(Long carrinhoId, Cliente cliente) {
-		return repository.findByIdAndCliente(carrinhoId, cliente).orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+		CarrinhoDeCompras ativo = finalizarAtivo(carrinhoId, cliente == null ? null : cliente.getId());
+		if (ativo != null) {
+			return ativo;
+		}
+		CarrinhoDeCompras carrinho = repository.findByIdAndCliente(carrinhoId, cliente).orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+		prepararPrecificacao(List.of(carrinho), tabelasPreco.atuais());
+		return carrinho;
+	}
+
+	public CarrinhoDeCompras buscarPorCarrinhoIdEClienteId(Long carrinhoId, Long clienteId) {
+		return buscarPorCarrinhoIdEClienteId(carrinhoId, clienteId, tabelasPreco.atuais());
+	}
+
+	// Preparado para as regras informadas, que devem ser as mesmas passadas à CalculadoraCusto
+	public CarrinhoDeCompras buscarPorCarrinhoIdEClienteId(Long carrinhoId, Long clienteId, RegrasPreco regras) {
+		CarrinhoDeCompras ativo = finalizarAtivo(carrinhoId, clienteId);
+		if (ativo != null) {
+			return ativo;
+		}
+		CarrinhoDeCompras carrinho = repository.findByIdAndClienteId(carrinhoId, clienteId).orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+		prepararPrecificacao(List.of(carrinho), regras);
+		return carrinho;
+	}
+
+	public long buscarVersao(Long carrinhoId, Long clienteId) {
+		Long ativa = carrinhosAtivos.habilitado() ? carrinhosAtivos.versao(carrinhoId, clienteId) : null;
+		if (ativa != null) {
+			return ativa;
+		}
+		return repository.findVersaoByIdAndClienteId(carrinhoId, clienteId)
+				.orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+	}
+
+	// Para o orçamento, que mostra o preço de cada item: todos os produtos vêm do catálogo
+	public CarrinhoDeCompras buscarComProdutos(Long carrinhoId, Long clienteId) {
+		Instantaneo ativo = carrinhosAtivos.habilitado() ? carrinhosAtivos.ler(carrinhoId) : null;
+		if (ativo != null) {
+			if (clienteId == null || !clienteId.equals(ativo.clienteId())) {
+				throw new IllegalArgumentException("Carrinho não encontrado.");
+			}
+			return montar(ativo);
+		}
+		long versao = catalogoProdutos.versaoPrecos();
+		CarrinhoDeCompras carrinho = repository.findByIdAndClienteId(carrinhoId, clienteId).orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+		carrinho.setTotaisConferidos(carrinho.totaisValidos(versao));
+		resolverProdutos(carrinho.getItens());
+		return carrinho;
+	}
+
+	/*
+	 * Carrinhos dos pares carrinho e cliente do lote. Carrinhos ativos são gravados antes, como na
+	 * finalização de um só, e só quando algum par traz o dono: o de outro cliente continua ativo e
+	 * fica de fora do mapa, como um carrinho inexistente.
+	 */
+	public Map<Long, CarrinhoDeCompras> buscarPorIds(Collection<FinalizacaoCompraDTO> finalizacoes) {
+		return buscarPorIds(finalizacoes, tabelasPreco.atuais());
+	}
+
+	public Map<Long, CarrinhoDeCompras> buscarPorIds(Collection<FinalizacaoCompraDTO> finalizacoes, RegrasPreco regras) {
+		Map<Long, Set<Long>> clientesPorCarrinho = new HashMap<>();
+		for (FinalizacaoCompraDTO finalizacao : finalizacoes) {
+			if (finalizacao.carrinhoId() != null) {
+				clientesPorCarrinho.computeIfAbsent(finalizacao.carrinhoId(), id -> new HashSet<>())
+						.add(finalizacao.clienteId());
+			}
+		}
+		Map<Long, CarrinhoDeCompras> gravados = new HashMap<>();
+		Collection<Long> doBanco = clientesPorCarrinho.keySet();
+		if (carrinhosAtivos.habilitado()) {
+			doBanco = new ArrayList<>(clientesPorCarrinho.size());
+			for (Map.Entry<Long, Set<Long>> carrinho : clientesPorCarrinho.entrySet()) {
+				CarrinhoDeCompras gravado;
+				try {
+					gravado = finalizarAtivo(carrinho.getKey(), carrinho.getValue());
+				} catch (IllegalArgumentException e) {
+					continue;
+				}
+				if (gravado != null) {
+					gravados.put(carrinho.getKey(), gravado);
+				} else {
+					doBanco.add(carrinho.getKey());
+				}
+			}
+		}
+		List<CarrinhoDeCompras> carrinhos = repository.findByIdIn(doBanco);
+		prepararPrecificacao(carrinhos, regras);
+		Map<Long, CarrinhoDeCompras> porId = carrinhos.stream()
+				.collect(Collectors.toMap(CarrinhoDeCompras::getId, Function.identity()));
+		porId.putAll(gravados);
+		return porId;
+	}
+
+	public CarrinhoDeCompras adicionarItem(Long carrinhoId, Long clienteId, Long produtoId, Long quantidade) {
+		validarQuantidade(quantidade);
+		Produto produto = catalogoProdutos.buscarPorId(produtoId);
+		return alterar(carrinhoId, clienteId,
+				itens -> itens.adicionar(produtoId, quantidade),
+				carrinho -> carrinho.adicionarItem(new ItemCompra(null, produto, quantidade)));
+	}
+
+	// Todos os produtos em uma consulta ao catálogo; os INSERTs dos itens saem em lote no commit
+	public CarrinhoDeCompras adicionarItens(Long carrinhoId, Long clienteId, List<ItemCarrinhoDTO> itens) {
+		itens.forEach(item -> validarQuantidade(item.quantidade()));
+		Map<Long, Produto> produtos = catalogoProdutos.buscarPorIds(
+				itens.stream().map(ItemCarrinhoDTO::produtoId).collect(Collectors.toSet()));
+		for (ItemCarrinhoDTO item : itens) {
+			if (!produtos.containsKey(item.produtoId())) {
+				throw new IllegalArgumentException("Produto não encontrado.");
+			}
+		}
+		return alterar(carrinhoId, clienteId,
+				ativos -> itens.forEach(item -> ativos.adicionar(item.produtoId(), item.quantidade())),
+				carrinho -> itens.forEach(item -> carrinho.adicionarItem(
+						new ItemCompra(null, produtos.get(item.produtoId()), item.quantidade()))));
+	}
+
+	public CarrinhoDeCompras alterarQuantidade(Long carrinhoId, Long clienteId, Long itemId, Long quantidade) {
+		validarQuantidade(quantidade);
+		return alterar(carrinhoId, clienteId,
+				itens -> itens.alterarQuantidade(buscarIndice(itens, itemId), quantidade),
+				carrinho -> {
+					ItemCompra item = buscarItem(carrinho, itemId);
+					resolverProdutos(List.of(item));
+					carrinho.alterarQuantidade(item, quantidade);
+				});
+	}
+
+	public CarrinhoDeCompras alterarQuantidades(Long carrinhoId, Long clienteId, List<ItemCarrinhoDTO> itens) {
+		itens.forEach(item -> validarQuantidade(item.quantidade()));
+		return alterar(carrinhoId, clienteId, ativos -> {
+			int[] indices = new int[itens.size()];
+			for (int i = 0; i < indices.length; i++) {
+				indices[i] = buscarIndice(ativos, itens.get(i).id());
+			}
+			for (int i = 0; i < indices.length; i++) {
+				ativos.alterarQuantidade(indices[i], itens.get(i).quantidade());
+			}
+		}, carrinho -> {
+			Map<Long, ItemCompra> porId = carrinho.getItens().stream()
+					.collect(Collectors.toMap(ItemCompra::getId, Function.identity()));
+			List<ItemCompra> alterados = new ArrayList<>(itens.size());
+			for (ItemCarrinhoDTO item : itens) {
+				ItemCompra existente = porId.get(item.id());
+				if (existente == null) {
+					throw new IllegalArgumentException("Item não encontrado.");
+				}
+				alterados.add(existente);
+			}
+			resolverProdutos(alterados);
+			for (int i = 0; i < alterados.size(); i++) {
+				carrinho.alterarQuantidade(alterados.get(i), itens.get(i).quantidade());
+			}
+		});
+	}
+
+	public CarrinhoDeCompras removerItem(Long carrinhoId, Long clienteId, Long itemId) {
+		return alterar(carrinhoId, clienteId,
+				itens -> itens.remover(buscarIndice(itens, itemId)),
+				carrinho -> {
+					ItemCompra item = buscarItem(carrinho, itemId);
+					resolverProdutos(List.of(item));
+					carrinho.removerItem(item);
+				});
+	}
+
+	// Agendado pelo CarrinhosAtivosConfig: grava e tira do armazenamento os carrinhos sem uso além da expiração
+	public int gravarExpirados() {
+		return gravarAtivos(carrinhosAtivos.expirados());
+	}
+
+	// No encerramento da aplicação, para nenhuma alteração ficar só na memória
+	public int gravarAtivos() {
+		return gravarAtivos(carrinhosAtivos.todos());
+	}
+
+	/*
+	 * Monta um carrinho por vez a partir das linhas do cursor e o entrega já com os produtos do
+	 * catálogo. Os carrinhos não pertencem à sessão e ficam para o coletor assim que o destino
+	 * termina com eles, então a memória não cresce com o tamanho da tabela.
+	 */
+	@Transactional
+	public void percorrerTodos(Consumer<CarrinhoDeCompras> destino) {
+		try (Stream<LinhaExportacaoDTO> linhas = repository.streamExportacao()) {
+			CarrinhoDeCompras atual = null;
+			for (Iterator<LinhaExportacaoDTO> it = linhas.iterator(); it.hasNext();) {
+				LinhaExportacaoDTO linha = it.next();
+				if (atual == null || !atual.getId().equals(linha.carrinhoId())) {
+					entregar(atual, destino);
+					atual = new CarrinhoDeCompras(linha.carrinhoId(), cliente(linha), new ArrayList<>(), linha.data());
+				}
+				if (linha.itemId() != null) {
+					Produto produto = new Produto();
+					produto.setId(linha.produtoId());
+					atual.getItens().add(new ItemCompra(linha.itemId(), produto, linha.quantidade()));
+				}
+			}
+			entregar(atual, destino);
+		}
+	}
+
+	private void entregar(CarrinhoDeCompras carrinho, Consumer<CarrinhoDeCompras> destino) {
+		if (carrinho != null) {
+			resolverProdutos(carrinho.getItens());
+			destino.accept(carrinho);
+		}
+	}
+
+	private static Cliente cliente(LinhaExportacaoDTO linha) {
+		if (linha.clienteId() == null) {
+			return null;
+		}
+		Cliente cliente = new Cliente();
+		cliente.setId(linha.clienteId());
+		cliente.setTipo(linha.tipoCliente());
+		return cliente;
+	}
+
+	/*
+	 * Totais conferidos com a versão atual do catálogo dispensam resolver os produtos. Carrinhos
+	 * desatualizados com todos os produtos no cache do catálogo são precificados item a item, sem
+	 * ir ao banco; os demais recebem subtotal e peso somados pelo banco em uma única consulta, sem
+	 * carregar os produtos. Com promoções nas regras o desconto depende do tipo de cada produto, que
+	 * nenhum dos totais separa: todos os carrinhos recebem os produtos do catálogo (uma consulta
+	 * para os que faltarem no cache) e a CalculadoraCusto os percorre item a item.
+	 */
+	private void prepararPrecificacao(List<CarrinhoDeCompras> carrinhos, RegrasPreco regras) {
+		long versao = catalogoProdutos.versaoPrecos();
+		if (!regras.promocoes().vazia()) {
+			carrinhos.forEach(carrinho -> carrinho.setTotaisConferidos(carrinho.totaisValidos(versao)));
+			resolverProdutos(carrinhos.stream().flatMap(carrinho -> carrinho.getItens().stream()).toList());
+			return;
+		}
+		List<CarrinhoDeCompras> desatualizados = new ArrayList<>();
+		for (CarrinhoDeCompras carrinho : carrinhos) {
+			carrinho.setTotaisConferidos(carrinho.totaisValidos(versao));
+			if (!carrinho.isTotaisConferidos() && !carrinho.getItens().isEmpty()) {
+				desatualizados.add(carrinho);
+			}
+		}
+		if (desatualizados.isEmpty()) {
+			return;
+		}
+
+		Map<Long, Produto> emCache = catalogoProdutos.buscarEmCache(desatualizados.stream()
+				.flatMap(carrinho -> carrinho.getItens().stream())
+				.map(item -> item.getProduto().getId())
+				.collect(Collectors.toSet()));
+		List<CarrinhoDeCompras> semCache = new ArrayList<>();
+		for (CarrinhoDeCompras carrinho : desatualizados) {
+			if (carrinho.getItens().stream().allMatch(item -> emCache.containsKey(item.getProduto().getId()))) {
+				carrinho.getItens().forEach(item -> item.setProduto(emCache.get(item.getProduto().getId())));
+			} else {
+				semCache.add(carrinho);
+			}
+		}
+		if (!semCache.isEmpty()) {
+			totalizar(semCache);
+		}
+	}
+
+	private void totalizar(List<CarrinhoDeCompras> carrinhos) {
+		Map<Long, TotaisCarrinhoDTO> totais = repository.totalizarPorIds(
+				carrinhos.stream().map(CarrinhoDeCompras::getId).toList()).stream()
+				.collect(Collectors.toMap(TotaisCarrinhoDTO::carrinhoId, Function.identity()));
+		for (CarrinhoDeCompras carrinho : carrinhos) {
+			TotaisCarrinhoDTO total = totais.get(carrinho.getId());
+			if (total == null) {
+				// Carrinho removido entre as duas consultas
+				throw new IllegalArgumentException("Carrinho não encontrado.");
+			}
+			carrinho.usarTotais(total.subtotal(), total.pesoTotal().intValue());
+		}
+	}
+
+	/*
+	 * A alteração vai para o carrinho ativo quando o armazenamento está habilitado; sem ele, ou se
+	 * o carrinho não couber, vai para as tabelas em uma transação. O carrinho que transborda já
+	 * sai gravado com a alteração e é lido de volta com os ids definitivos dos itens. Carrinho de
+	 * outro cliente é tratado como inexistente nos dois caminhos.
+	 */
+	private CarrinhoDeCompras alterar(Long carrinhoId, Long clienteId, Consumer<Itens> noArmazenamento,
+			Consumer<CarrinhoDeCompras> noBanco) {
+		if (carrinhosAtivos.habilitado()) {
+			Instantaneo alterado = carrinhosAtivos.alterar(carrinhoId, clienteId, this::carregarParaAtivar,
+					noArmazenamento, this::gravar);
+			if (alterado != null && alterado.ativo()) {
+				return montar(alterado);
+			}
+			if (alterado != null) {
+				CarrinhoDeCompras gravado = repository.findComItensById(carrinhoId)
+						.orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+				resolverProdutos(gravado.getItens());
+				return gravado;
+			}
+		}
+		return emTransacao(() -> {
+			CarrinhoDeCompras carrinho = buscarParaAlteracao(carrinhoId, clienteId);
+			noBanco.accept(carrinho);
+			return carrinho;
+		});
+	}
+
+	// Sem TransactionTemplate (testes de unidade) a ação roda direto, como um método @Transactional chamado sem proxy
+	private <T> T emTransacao(Supplier<T> acao) {
+		return transacao == null ? acao.get() : transacao.execute(status -> acao.get());
+	}
+
+	// Só ids e quantidades, como estão nas tabelas; os produtos vêm do catálogo ao montar o carrinho
+	private Instantaneo carregarParaAtivar(long carrinhoId) {
+		CarrinhoDeCompras carrinho = repository.findComItensById(carrinhoId)
+				.orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+		Itens itens = carrinhosAtivos.novosItens(carrinho.getItens().size());
+		for (ItemCompra item : carrinho.getItens()) {
+			// getId no proxy do produto não dispara consulta
+			itens.incluir(item.getId(), item.getProduto().getId(), item.getQuantidade());
+		}
+		Long clienteId = carrinho.getCliente() == null ? null : carrinho.getCliente().getId();
+		return new Instantaneo(carrinhoId, clienteId, carrinho.getVersao() == null ? 0 : carrinho.getVersao(), itens,
+				false);
+	}
+
+	// Carrinho fora da sessão com os itens do armazenamento, os produtos do catálogo e a versão de lá
+	private CarrinhoDeCompras montar(Instantaneo ativo) {
+		long versaoPrecos = catalogoProdutos.versaoPrecos();
+		Itens itens = ativo.itens();
+		Set<Long> produtoIds = new HashSet<>();
+		for (int i = 0; i < itens.tamanho(); i++) {
+			produtoIds.add(itens.produtoId(i));
+		}
+		Map<Long, Produto> produtos = produtoIds.isEmpty() ? Map.of() : catalogoProdutos.buscarPorIds(produtoIds);
+		List<ItemCompra> lista = new ArrayList<>(itens.tamanho());
+		for (int i = 0; i < itens.tamanho(); i++) {
+			Produto produto = produtos.get(itens.produtoId(i));
+			if (produto == null) {
+				throw new IllegalArgumentException("Produto não encontrado.");
+			}
+			lista.add(new ItemCompra(itens.itemId(i), produto, itens.quantidade(i)));
+		}
+		Cliente cliente = null;
+		if (ativo.clienteId() != null) {
+			cliente = new Cliente();
+			cliente.setId(ativo.clienteId());
+		}
+		CarrinhoDeCompras carrinho = new CarrinhoDeCompras(ativo.carrinhoId(), cliente, lista, null);
+		carrinho.setVersao(ativo.versao());
+		carrinho.recalcularTotais(versaoPrecos);
+		return carrinho;
+	}
+
+	// Na finalização o carrinho ativo é gravado e precificado com os itens que estavam no armazenamento
+	private CarrinhoDeCompras finalizarAtivo(Long carrinhoId, Long clienteId) {
+		return finalizarAtivo(carrinhoId, clienteId == null ? Set.of() : Set.of(clienteId));
+	}
+
+	// O dono é conferido sob a trava do carrinho, antes de gravá-lo e tirá-lo do armazenamento
+	private CarrinhoDeCompras finalizarAtivo(Long carrinhoId, Set<Long> clientes) {
+		if (!carrinhosAtivos.habilitado()) {
+			return null;
+		}
+		return carrinhosAtivos.retirar(carrinhoId, ativo -> {
+			if (ativo.clienteId() == null || !clientes.contains(ativo.clienteId())) {
+				throw new IllegalArgumentException("Carrinho não encontrado.");
+			}
+			return gravar(ativo);
+		});
+	}
+
+	/*
+	 * Leva os itens do carrinho ativo para as tabelas: quantidades alteradas viram UPDATEs, itens
+	 * que saíram são apagados pelo orphanRemoval e os que ainda não estão nas tabelas entram com o id
+	 * que receberam ao ser adicionados.
+	 * Devolve o carrinho gravado, com os produtos do catálogo e os totais da versão de preços atual.
+	 */
+	private CarrinhoDeCompras gravar(Instantaneo ativo) {
+		return emTransacao(() -> {
+			long versao = catalogoProdutos.versaoPrecos();
+			CarrinhoDeCompras carrinho = repository.findParaAlteracaoById(ativo.carrinhoId())
+					.orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+			Itens itens = ativo.itens();
+			Map<Long, Integer> indices = new HashMap<>();
+			for (int i = 0; i < itens.tamanho(); i++) {
+				indices.put(itens.itemId(i), i);
+			}
+			for (Iterator<ItemCompra> it = carrinho.getItens().iterator(); it.hasNext();) {
+				ItemCompra item = it.next();
+				Integer indice = indices.remove(item.getId());
+				if (indice == null) {
+					it.remove();
+				} else if (item.getQuantidade() != itens.quantidade(indice)) {
+					item.setQuantidade(itens.quantidade(indice));
+				}
+			}
+			// Sobram os itens adicionados enquanto o carrinho estava ativo
+			for (int i = 0; i < itens.tamanho(); i++) {
+				if (indices.containsKey(itens.itemId(i))) {
+					Produto produto = new Produto();
+					produto.setId(itens.produtoId(i));
+					carrinho.getItens().add(new ItemCompra(itens.itemId(i), produto, itens.quantidade(i)));
+				}
+			}
+			resolverProdutos(carrinho.getItens());
+			carrinho.recalcularTotais(versao);
+			carrinho.setTotaisConferidos(true);
+			return carrinho;
+		});
+	}
+
+	private int gravarAtivos(List<Long> carrinhoIds) {
+		int gravados = 0;
+		for (Long carrinhoId : carrinhoIds) {
+			try {
+				if (carrinhosAtivos.retirar(carrinhoId, this::gravar) != null) {
+					gravados++;
+				}
+			} catch (RuntimeException e) {
+				log.error("Falha ao gravar o carrinho ativo {}; ele continua no armazenamento.", carrinhoId, e);
+			}
+		}
+		return gravados;
+	}
+
+	/*
+	 * Totais desatualizados são somados de novo uma vez; a partir daí cada alteração custa O(1) e só
+	 * os itens alterados precisam do produto, que vem do catálogo em vez de um proxy por item.
+	 */
+	private CarrinhoDeCompras buscarParaAlteracao(Long carrinhoId, Long clienteId) {
+		long versao = catalogoProdutos.versaoPrecos();
+		CarrinhoDeCompras carrinho = repository.findParaAlteracaoByIdAndClienteId(carrinhoId, clienteId)
+				.orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+		if (!carrinho.totaisValidos(versao)) {
+			resolverProdutos(carrinho.getItens());
+			carrinho.recalcularTotais(versao);
+		}
+		return carrinho;
+	}
+
+	private static ItemCompra buscarItem(CarrinhoDeCompras carrinho, Long itemId) {
+		return carrinho.getItens().stream()
+				.filter(item -> itemId.equals(item.getId()))
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("Item não encontrado."));
+	}
+
+	private static int buscarIndice(Itens itens, Long itemId) {
+		int indice = itemId == null ? -1 : itens.indice(itemId);
+		if (indice < 0) {
+			throw new IllegalArgumentException("Item não encontrado.");
+		}
+		return indice;
+	}
+
+	private static void validarQuantidade(Long quantidade) {
+		if (quantidade == null || quantidade <= 0) {
+			throw new IllegalArgumentException("Quantidade deve ser maior que zero.");
+		}
+	}
+
+	// Trocar a referência por uma cópia do mesmo produto não muda a chave estrangeira, então não gera UPDATE
+	private void resolverProdutos(List<ItemCompra> itens) {
+		Set<Long> produtoIds = itens.stream()
+				.map(item -> item.getProduto().getId())
+				.collect(Collectors.toSet());
+		if (produtoIds.isEmpty()) {
+			return;
+		}
+
+		Map<Long, Produto> produtos = catalogoProdutos.buscarPorIds(produtoIds);
+		for (ItemCompra item : itens) {
+			Produto produto = produtos.get(item.getProduto().getId());
+			if (produto == null) {
+				throw new IllegalArgumentException("Produto não encontrado.");
+			}
+			item.setProduto(produto);
+		}
 	}
 }
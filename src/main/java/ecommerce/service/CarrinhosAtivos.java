@@ -0,0 +1,511 @@
+package ecommerce.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+
+/*
+ * Carrinhos em uso guardados fora do heap, para sessões que alteram o carrinho muitas vezes antes
+ * de finalizar. Os itens de cada carrinho são registros de largura fixa (id do item, id do produto
+ * e quantidade) em um segmento de um slab de ByteBuffer direto. Cada slab é dividido em segmentos
+ * de uma única classe de capacidade (4, 8, 16... registros), os segmentos livres formam uma lista
+ * encadeada dentro dos próprios slabs e um carrinho que cresce passa para a classe seguinte. No
+ * heap fica só uma entrada pequena por carrinho, com trava, versão e endereço do segmento.
+ *
+ * Os slabs são reservados sob demanda até a memória máxima e não são devolvidos. Um carrinho que
+ * não cabe não entra, ou sai gravado, e segue pelas tabelas. Itens novos recebem na hora um id da
+ * sequência dos itens, o mesmo com que são gravados depois, então o id devolvido ao cliente continua
+ * valendo quando o carrinho vai para as tabelas.
+ */
+@Component
+public class CarrinhosAtivos implements MeterBinder {
+
+	public static final CarrinhosAtivos DESABILITADO = new CarrinhosAtivos(false, 0, 1 << 20, Duration.ZERO,
+			Clock.systemUTC(), () -> {
+				throw new IllegalStateException("Carrinhos ativos desabilitados.");
+			});
+
+	// Id do item, id do produto e quantidade
+	static final int TAMANHO_REGISTRO = 3 * Long.BYTES;
+
+	private static final int MENOR_CAPACIDADE = 4;
+	private static final long NENHUM = -1L;
+
+	private final boolean habilitado;
+	private final int tamanhoSlab;
+	private final Duration expiracao;
+	private final Clock relogio;
+	private final LongSupplier idsItens;
+
+	// Slabs, listas livres por classe e contagem de slabs só mudam com a trava de alocação
+	private final ReentrantLock alocacao = new ReentrantLock();
+	private final ByteBuffer[] slabs;
+	private final int[] capacidades;
+	private final long[] livres;
+	private volatile int slabsReservados;
+
+	private final Map<Long, Ativo> ativos = new ConcurrentHashMap<>();
+
+	@Autowired
+	public CarrinhosAtivos(@Value("${ecommerce.carrinhos-ativos.habilitado:false}") boolean habilitado,
+						   @Value("${ecommerce.carrinhos-ativos.memoria-maxima:256MB}") DataSize memoriaMaxima,
+						   @Value("${ecommerce.carrinhos-ativos.tamanho-slab:1MB}") DataSize tamanhoSlab,
+						   @Value("${ecommerce.carrinhos-ativos.expiracao:30m}") Duration expiracao,
+						   EntityManagerFactory entityManagerFactory) {
+		this(habilitado, memoriaMaxima.toBytes(), Math.toIntExact(tamanhoSlab.toBytes()), expiracao, Clock.systemUTC(),
+				new SequenciaItemCompra(entityManagerFactory));
+	}
+
+	public CarrinhosAtivos(boolean habilitado, long memoriaMaxima, int tamanhoSlab, Duration expiracao, Clock relogio,
+			LongSupplier idsItens) {
+		if (tamanhoSlab < MENOR_CAPACIDADE * TAMANHO_REGISTRO) {
+			throw new IllegalArgumentException("O slab precisa comportar ao menos " + MENOR_CAPACIDADE + " itens.");
+		}
+		this.habilitado = habilitado;
+		this.tamanhoSlab = tamanhoSlab;
+		this.expiracao = expiracao;
+		this.relogio = relogio;
+		this.idsItens = idsItens;
+		this.slabs = new ByteBuffer[Math.toIntExact(memoriaMaxima / tamanhoSlab)];
+		int classes = 0;
+		while ((long) MENOR_CAPACIDADE << (classes + 1) <= tamanhoSlab / TAMANHO_REGISTRO) {
+			classes++;
+		}
+		this.capacidades = new int[classes + 1];
+		for (int classe = 0; classe < capacidades.length; classe++) {
+			capacidades[classe] = MENOR_CAPACIDADE << classe;
+		}
+		this.livres = new long[capacidades.length];
+		Arrays.fill(livres, NENHUM);
+	}
+
+	public boolean habilitado() {
+		return habilitado;
+	}
+
+	public int quantidade() {
+		return ativos.size();
+	}
+
+	public long memoriaReservada() {
+		return (long) slabsReservados * tamanhoSlab;
+	}
+
+	// Para montar os itens de um carrinho carregado do banco
+	public Itens novosItens(int capacidade) {
+		return new Itens(idsItens, Math.max(capacidade, MENOR_CAPACIDADE));
+	}
+
+	/*
+	 * Aplica a alteração aos itens do carrinho. Um carrinho que ainda não está aqui é ativado com o
+	 * que carregar devolver do banco; enquanto isso, as outras alterações dele esperam na trava.
+	 * Devolve null se o carrinho não couber. Se ele deixar de caber depois da alteração, já alterado
+	 * é entregue ao transbordo para ser gravado e sai daqui. Uma exceção da alteração não muda nada.
+	 * Carrinho de outro cliente é recusado como inexistente.
+	 */
+	public Instantaneo alterar(long carrinhoId, Long clienteId, LongFunction<Instantaneo> carregar,
+			Consumer<Itens> alteracao, Consumer<Instantaneo> transbordo) {
+		Ativo ativo = travar(carrinhoId, carregar);
+		if (ativo == null) {
+			return null;
+		}
+		try {
+			if (!ativo.pertence(clienteId)) {
+				throw new IllegalArgumentException("Carrinho não encontrado.");
+			}
+			Itens itens = lerItens(ativo);
+			alteracao.accept(itens);
+			if (!guardar(ativo, itens)) {
+				Instantaneo alterado = new Instantaneo(carrinhoId, ativo.clienteId, ativo.versao + 1, itens, false);
+				transbordo.accept(alterado);
+				descartar(ativo);
+				return alterado;
+			}
+			ativo.versao++;
+			ativo.ultimoUso = relogio.millis();
+			return new Instantaneo(carrinhoId, ativo.clienteId, ativo.versao, itens, true);
+		} finally {
+			ativo.trava.unlock();
+		}
+	}
+
+	// Cópia dos itens para leitura, ou null se o carrinho não estiver aqui
+	public Instantaneo ler(long carrinhoId) {
+		Ativo ativo = ativos.get(carrinhoId);
+		if (ativo == null) {
+			return null;
+		}
+		ativo.trava.lock();
+		try {
+			if (ativo.descartado) {
+				return null;
+			}
+			ativo.ultimoUso = relogio.millis();
+			return new Instantaneo(carrinhoId, ativo.clienteId, ativo.versao, lerItens(ativo), true);
+		} finally {
+			ativo.trava.unlock();
+		}
+	}
+
+	// Só a versão, sem copiar os itens; null se o carrinho não estiver aqui
+	public Long versao(long carrinhoId, Long clienteId) {
+		Ativo ativo = ativos.get(carrinhoId);
+		if (ativo == null) {
+			return null;
+		}
+		ativo.trava.lock();
+		try {
+			if (ativo.descartado) {
+				return null;
+			}
+			if (!ativo.pertence(clienteId)) {
+				throw new IllegalArgumentException("Carrinho não encontrado.");
+			}
+			return ativo.versao;
+		} finally {
+			ativo.trava.unlock();
+		}
+	}
+
+	/*
+	 * Entrega o carrinho à gravação e só depois o tira daqui, com a trava dele o tempo todo: se a
+	 * gravação falhar o carrinho continua ativo, e ninguém o ativa de novo a partir do banco antes
+	 * do commit. Devolve null se o carrinho não estiver aqui.
+	 */
+	public <T> T retirar(long carrinhoId, Function<Instantaneo, T> gravacao) {
+		Ativo ativo = ativos.get(carrinhoId);
+		if (ativo == null) {
+			return null;
+		}
+		ativo.trava.lock();
+		try {
+			if (ativo.descartado) {
+				return null;
+			}
+			T gravado = gravacao.apply(new Instantaneo(carrinhoId, ativo.clienteId, ativo.versao, lerItens(ativo), true));
+			descartar(ativo);
+			return gravado;
+		} finally {
+			ativo.trava.unlock();
+		}
+	}
+
+	// Carrinhos sem uso há pelo menos a expiração
+	public List<Long> expirados() {
+		long limite = relogio.millis() - expiracao.toMillis();
+		List<Long> expirados = new ArrayList<>();
+		ativos.forEach((carrinhoId, ativo) -> {
+			if (ativo.ultimoUso <= limite) {
+				expirados.add(carrinhoId);
+			}
+		});
+		return expirados;
+	}
+
+	public List<Long> todos() {
+		return List.copyOf(ativos.keySet());
+	}
+
+	// Travada, já ativada e não descartada; null se o carrinho não couber
+	private Ativo travar(long carrinhoId, LongFunction<Instantaneo> carregar) {
+		while (true) {
+			Ativo ativo = ativos.get(carrinhoId);
+			if (ativo == null) {
+				Ativo novo = new Ativo(carrinhoId);
+				novo.ultimoUso = relogio.millis();
+				novo.trava.lock();
+				ativo = ativos.putIfAbsent(carrinhoId, novo);
+				if (ativo == null) {
+					return ativar(novo, carregar) ? novo : null;
+				}
+				novo.trava.unlock();
+			}
+			ativo.trava.lock();
+			if (!ativo.descartado) {
+				return ativo;
+			}
+			ativo.trava.unlock();
+		}
+	}
+
+	// A versão começa acima de qualquer versão do banco e sobe a cada ativação, então nunca repete um orçamento
+	private boolean ativar(Ativo novo, LongFunction<Instantaneo> carregar) {
+		try {
+			Instantaneo banco = carregar.apply(novo.carrinhoId);
+			novo.clienteId = banco.clienteId();
+			novo.versao = (banco.versao() + 1) << 32;
+			if (guardar(novo, banco.itens())) {
+				novo.ultimoUso = relogio.millis();
+				return true;
+			}
+		} catch (RuntimeException e) {
+			descartar(novo);
+			novo.trava.unlock();
+			throw e;
+		}
+		descartar(novo);
+		novo.trava.unlock();
+		return false;
+	}
+
+	private void descartar(Ativo ativo) {
+		ativo.descartado = true;
+		ativos.remove(ativo.carrinhoId, ativo);
+		if (ativo.segmento != NENHUM) {
+			liberar(ativo.classe, ativo.segmento);
+			ativo.segmento = NENHUM;
+		}
+	}
+
+	private Itens lerItens(Ativo ativo) {
+		Itens itens = novosItens(ativo.tamanho);
+		if (ativo.segmento != NENHUM) {
+			ByteBuffer slab = slabs[slab(ativo.segmento)];
+			for (int i = 0, posicao = posicao(ativo.segmento); i < ativo.tamanho; i++, posicao += TAMANHO_REGISTRO) {
+				itens.incluir(slab.getLong(posicao), slab.getLong(posicao + Long.BYTES),
+						slab.getLong(posicao + 2 * Long.BYTES));
+			}
+		}
+		return itens;
+	}
+
+	/*
+	 * Escreve os itens no segmento do carrinho. Um carrinho que passa da capacidade vai para a
+	 * classe que comporta os itens; um que encolhe só volta de classe abaixo de um quarto da
+	 * capacidade, para não trocar de segmento a cada item incluído e removido no limite. Sem
+	 * segmento livre nem slab a reservar, devolve false e o segmento atual fica como estava.
+	 */
+	private boolean guardar(Ativo ativo, Itens itens) {
+		int tamanho = itens.tamanho();
+		long segmento = ativo.segmento;
+		int classe = ativo.classe;
+		if (tamanho == 0) {
+			segmento = NENHUM;
+			classe = -1;
+		} else if (segmento == NENHUM || tamanho > capacidades[classe]
+				|| classe > 0 && tamanho <= capacidades[classe] / 4) {
+			classe = classe(tamanho);
+			if (classe < 0) {
+				return false;
+			}
+			segmento = alocar(classe);
+			if (segmento == NENHUM) {
+				return false;
+			}
+		}
+
+		if (segmento != NENHUM) {
+			ByteBuffer slab = slabs[slab(segmento)];
+			for (int i = 0, posicao = posicao(segmento); i < tamanho; i++, posicao += TAMANHO_REGISTRO) {
+				slab.putLong(posicao, itens.itemIds[i]);
+				slab.putLong(posicao + Long.BYTES, itens.produtoIds[i]);
+				slab.putLong(posicao + 2 * Long.BYTES, itens.quantidades[i]);
+			}
+		}
+		if (ativo.segmento != NENHUM && ativo.segmento != segmento) {
+			liberar(ativo.classe, ativo.segmento);
+		}
+		ativo.segmento = segmento;
+		ativo.classe = classe;
+		ativo.tamanho = tamanho;
+		return true;
+	}
+
+	// Menor classe que comporta os itens, ou -1 se nem um slab inteiro comporta
+	private int classe(int tamanho) {
+		for (int classe = 0; classe < capacidades.length; classe++) {
+			if (tamanho <= capacidades[classe]) {
+				return classe;
+			}
+		}
+		return -1;
+	}
+
+	private long alocar(int classe) {
+		alocacao.lock();
+		try {
+			if (livres[classe] == NENHUM && !reservarSlab(classe)) {
+				return NENHUM;
+			}
+			long segmento = livres[classe];
+			livres[classe] = slabs[slab(segmento)].getLong(posicao(segmento));
+			return segmento;
+		} finally {
+			alocacao.unlock();
+		}
+	}
+
+	private void liberar(int classe, long segmento) {
+		alocacao.lock();
+		try {
+			slabs[slab(segmento)].putLong(posicao(segmento), livres[classe]);
+			livres[classe] = segmento;
+		} finally {
+			alocacao.unlock();
+		}
+	}
+
+	// O slab novo é todo da classe: os segmentos entram na lista livre, cada um apontando para o seguinte
+	private boolean reservarSlab(int classe) {
+		if (slabsReservados == slabs.length) {
+			return false;
+		}
+		int indice = slabsReservados;
+		ByteBuffer slab = ByteBuffer.allocateDirect(tamanhoSlab).order(ByteOrder.nativeOrder());
+		slabs[indice] = slab;
+		int tamanhoSegmento = capacidades[classe] * TAMANHO_REGISTRO;
+		for (int posicao = (tamanhoSlab / tamanhoSegmento - 1) * tamanhoSegmento; posicao >= 0;
+				posicao -= tamanhoSegmento) {
+			slab.putLong(posicao, livres[classe]);
+			livres[classe] = endereco(indice, posicao);
+		}
+		slabsReservados = indice + 1;
+		return true;
+	}
+
+	// Endereço de um segmento: índice do slab nos 32 bits altos e posição dentro dele nos baixos
+	private static long endereco(int slab, int posicao) {
+		return (long) slab << 32 | posicao;
+	}
+
+	private static int slab(long endereco) {
+		return (int) (endereco >>> 32);
+	}
+
+	private static int posicao(long endereco) {
+		return (int) endereco;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("ecommerce.carrinhos.ativos", this, CarrinhosAtivos::quantidade)
+				.description("Carrinhos guardados fora do heap")
+				.register(registry);
+		Gauge.builder("ecommerce.carrinhos.ativos.memoria", this, CarrinhosAtivos::memoriaReservada)
+				.description("Memória fora do heap reservada em slabs")
+				.baseUnit("bytes")
+				.register(registry);
+	}
+
+	// Itens do carrinho e a versão que ele tem aqui; ativo indica se o carrinho continua guardado
+	public record Instantaneo(long carrinhoId, Long clienteId, long versao, Itens itens, boolean ativo) {
+	}
+
+	// Cópia dos registros de um carrinho no heap, lida ou alterada fora dos slabs
+	public static final class Itens {
+
+		private final LongSupplier idsItens;
+		private long[] itemIds;
+		private long[] produtoIds;
+		private long[] quantidades;
+		private int tamanho;
+
+		private Itens(LongSupplier idsItens, int capacidade) {
+			this.idsItens = idsItens;
+			this.itemIds = new long[capacidade];
+			this.produtoIds = new long[capacidade];
+			this.quantidades = new long[capacidade];
+		}
+
+		public int tamanho() {
+			return tamanho;
+		}
+
+		public long itemId(int indice) {
+			return itemIds[indice];
+		}
+
+		public long produtoId(int indice) {
+			return produtoIds[indice];
+		}
+
+		public long quantidade(int indice) {
+			return quantidades[indice];
+		}
+
+		public int indice(long itemId) {
+			for (int i = 0; i < tamanho; i++) {
+				if (itemIds[i] == itemId) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		// Item novo, já com o id definitivo da sequência dos itens
+		public long adicionar(long produtoId, long quantidade) {
+			long itemId = idsItens.getAsLong();
+			incluir(itemId, produtoId, quantidade);
+			return itemId;
+		}
+
+		// Item já gravado, com o id do banco
+		public void incluir(long itemId, long produtoId, long quantidade) {
+			if (tamanho == itemIds.length) {
+				itemIds = Arrays.copyOf(itemIds, tamanho * 2);
+				produtoIds = Arrays.copyOf(produtoIds, tamanho * 2);
+				quantidades = Arrays.copyOf(quantidades, tamanho * 2);
+			}
+			itemIds[tamanho] = itemId;
+			produtoIds[tamanho] = produtoId;
+			quantidades[tamanho] = quantidade;
+			tamanho++;
+		}
+
+		public void alterarQuantidade(int indice, long quantidade) {
+			quantidades[indice] = quantidade;
+		}
+
+		// Mantém a ordem dos demais itens
+		public void remover(int indice) {
+			int seguintes = tamanho - indice - 1;
+			System.arraycopy(itemIds, indice + 1, itemIds, indice, seguintes);
+			System.arraycopy(produtoIds, indice + 1, produtoIds, indice, seguintes);
+			System.arraycopy(quantidades, indice + 1, quantidades, indice, seguintes);
+			tamanho--;
+		}
+	}
+
+	// Entrada no heap de um carrinho ativo; os campos mudam só com a trava do carrinho
+	private static final class Ativo {
+
+		private final long carrinhoId;
+		private final ReentrantLock trava = new ReentrantLock();
+		private Long clienteId;
+		private long versao;
+		private long segmento = NENHUM;
+		private int classe = -1;
+		private int tamanho;
+		private boolean descartado;
+		private volatile long ultimoUso;
+
+		private Ativo(long carrinhoId) {
+			this.carrinhoId = carrinhoId;
+		}
+
+		private boolean pertence(Long clienteId) {
+			return this.clienteId != null && this.clienteId.equals(clienteId);
+		}
+	}
+}
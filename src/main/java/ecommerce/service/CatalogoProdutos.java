@@ -0,0 +1,180 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import ecommerce.entity.Produto;
+import ecommerce.entity.VersaoPrecos;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.repository.VersaoPrecosRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.transaction.Transactional;
+
+/*
+ * Cache limitado por tamanho e por tempo dos produtos lidos na precificação. Guarda cópias
+ * desanexadas da sessão JPA, que podem ser compartilhadas entre threads, e é invalidado
+ * explicitamente quando o preço ou o peso de um produto muda. Cada mudança também avança a
+ * versão de preços gravada no banco (VersaoPrecos), que invalida os totais guardados nos
+ * carrinhos. A versão é relida a cada intervalo-versao; se mudou por outra instância ou direto no
+ * banco, o cache inteiro é descartado antes de a nova versão valer.
+ */
+@Service
+public class CatalogoProdutos implements MeterBinder {
+
+	private final ProdutoRepository repository;
+	private final VersaoPrecosRepository versaoRepository;
+	private final AsyncCache<Long, Produto> cache;
+	private final long intervaloVersao;
+	private volatile VersaoLida versaoLida;
+
+	@Autowired
+	public CatalogoProdutos(ProdutoRepository repository, VersaoPrecosRepository versaoRepository,
+							@Value("${ecommerce.cache.produtos.tamanho-maximo:10000}") long tamanhoMaximo,
+							@Value("${ecommerce.cache.produtos.expiracao:10m}") Duration expiracao,
+							@Value("${ecommerce.cache.produtos.intervalo-versao:1s}") Duration intervaloVersao) {
+		this.repository = repository;
+		this.versaoRepository = versaoRepository;
+		this.intervaloVersao = intervaloVersao.toNanos();
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.expireAfterWrite(expiracao)
+				.recordStats()
+				// A carga roda na própria thread chamadora e fora do lock do mapa, sem prender threads virtuais
+				.executor(Runnable::run)
+				.buildAsync();
+	}
+
+	public Produto buscarPorId(Long produtoId) {
+		Produto produto = buscarPorIds(List.of(produtoId)).get(produtoId);
+		if (produto == null) {
+			throw new IllegalArgumentException("Produto não encontrado.");
+		}
+		return produto;
+	}
+
+	// Os ids ausentes do cache são carregados em uma única consulta; ids inexistentes ficam de fora do mapa
+	public Map<Long, Produto> buscarPorIds(Collection<Long> produtoIds) {
+		try {
+			return cache.getAll(produtoIds, this::carregar).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException causa) {
+				throw causa;
+			}
+			throw e;
+		}
+	}
+
+	// Só o que já está no cache, sem ir ao banco
+	public Map<Long, Produto> buscarEmCache(Collection<Long> produtoIds) {
+		return cache.synchronous().getAllPresent(produtoIds);
+	}
+
+	@Transactional
+	public Produto atualizarPreco(Long produtoId, BigDecimal preco) {
+		Produto produto = repository.findById(produtoId)
+				.orElseThrow(() -> new IllegalArgumentException("Produto não encontrado."));
+		produto.setPreco(preco);
+		invalidar(produtoId);
+		return repository.save(produto);
+	}
+
+	@Transactional
+	public Produto atualizarPeso(Long produtoId, Integer peso) {
+		Produto produto = repository.findById(produtoId)
+				.orElseThrow(() -> new IllegalArgumentException("Produto não encontrado."));
+		produto.setPeso(peso);
+		invalidar(produtoId);
+		return repository.save(produto);
+	}
+
+	// Chamado na transação que muda o produto: a versão avança no banco junto com a mudança
+	public void invalidar(Long produtoId) {
+		if (versaoRepository.avancar() == 0) {
+			versaoRepository.save(new VersaoPrecos(VersaoPrecos.ID, 1L));
+		}
+		long nova = versaoRepository.findValor().orElse(1L);
+		cache.synchronous().invalidate(produtoId);
+		// Invalida de novo após o commit para descartar leituras concorrentes do valor antigo
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					cache.synchronous().invalidate(produtoId);
+					publicarPropria(nova);
+				}
+			});
+		} else {
+			publicarPropria(nova);
+		}
+	}
+
+	// Descarta o cache e relê a versão do banco na próxima precificação
+	public void invalidarTodos() {
+		cache.synchronous().invalidateAll();
+		versaoLida = null;
+	}
+
+	// Lida antes dos produtos: totais somados com produtos mais novos que a versão só ficam desatualizados antes da hora
+	public long versaoPrecos() {
+		VersaoLida lida = versaoLida;
+		long agora = System.nanoTime();
+		if (lida != null && agora - lida.lidaEm() < intervaloVersao) {
+			return lida.valor();
+		}
+		long valor = versaoRepository.findValor().orElse(0L);
+		publicar(valor, lida != null && lida.valor() == valor, agora);
+		return valor;
+	}
+
+	public CacheStats estatisticas() {
+		return cache.synchronous().stats();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, cache, "produtos");
+	}
+
+	// A versão seguinte à conhecida é só a mudança desta instância, cujo produto já saiu do cache
+	private void publicarPropria(long nova) {
+		VersaoLida lida = versaoLida;
+		if (lida == null || lida.valor() < nova) {
+			publicar(nova, lida != null && lida.valor() + 1 == nova, System.nanoTime());
+		}
+	}
+
+	// Uma versão inesperada vem de mudanças feitas fora desta instância: qualquer produto em cache pode estar velho
+	private void publicar(long valor, boolean esperada, long agora) {
+		if (!esperada) {
+			cache.synchronous().invalidateAll();
+		}
+		versaoLida = new VersaoLida(valor, agora);
+	}
+
+	private Map<Long, Produto> carregar(Set<? extends Long> produtoIds) {
+		return repository.findDesanexadosByIdIn(List.copyOf(produtoIds)).stream()
+				.collect(Collectors.toMap(Produto::getId, Function.identity()));
+	}
+
+	private record VersaoLida(long valor, long lidaEm) {
+	}
+}
@@ -0,0 +1,14 @@
+package ecommerce.service;
+
+import ecommerce.entity.TipoCliente;
+
+// Tudo de que o orçamento depende; o mesmo carrinho com a mesma chave tem sempre o mesmo orçamento
+public record ChaveOrcamento(Long carrinhoId, Long clienteId, long versaoCarrinho, TipoCliente tipoCliente,
+		long versaoPrecos, long impressaoRegras) {
+
+	// ETag forte: muda junto com qualquer parte da chave
+	public String etag() {
+		return "\"" + carrinhoId + "-" + versaoCarrinho + "-" + tipoCliente.ordinal() + "-"
+				+ Long.toHexString(versaoPrecos) + "-" + Long.toHexString(impressaoRegras) + "\"";
+	}
+}
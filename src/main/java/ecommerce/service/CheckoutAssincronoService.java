@@ -0,0 +1,87 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import ecommerce.config.ExecutoresConfig;
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.SituacaoCompraDTO;
+import ecommerce.dto.SituacaoCompraDTO.Situacao;
+import ecommerce.external.ServicoIndisponivelException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/*
+ * Finalizações enfileiradas em um pool limitado. Cada compra recebe um ticket cuja situação fica
+ * guardada até expirar ou ser despejada pelo limite de tamanho; um ticket despejado deixa de ser
+ * encontrado, mas a compra em si continua valendo. Fila cheia lança RejectedExecutionException.
+ */
+@Service
+public class CheckoutAssincronoService implements MeterBinder {
+
+	private final CompraService compraService;
+	private final Executor executor;
+	private final Cache<String, SituacaoCompraDTO> situacoes;
+
+	@Autowired
+	public CheckoutAssincronoService(CompraService compraService,
+									 @Qualifier(ExecutoresConfig.CHECKOUT_ASSINCRONO) Executor executor,
+									 @Value("${ecommerce.checkout.assincrono.resultados.tamanho-maximo:100000}") long tamanhoMaximo,
+									 @Value("${ecommerce.checkout.assincrono.resultados.expiracao:15m}") Duration expiracao) {
+		this.compraService = compraService;
+		this.executor = executor;
+		this.situacoes = Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.expireAfterWrite(expiracao)
+				.recordStats()
+				.build();
+	}
+
+	public SituacaoCompraDTO enfileirar(Long carrinhoId, Long clienteId) {
+		String ticket = UUID.randomUUID().toString();
+		SituacaoCompraDTO pendente = new SituacaoCompraDTO(ticket, Situacao.PENDENTE, null);
+		situacoes.put(ticket, pendente);
+		try {
+			executor.execute(() -> finalizar(ticket, carrinhoId, clienteId));
+		} catch (RejectedExecutionException e) {
+			situacoes.invalidate(ticket);
+			throw e;
+		}
+		return pendente;
+	}
+
+	public Optional<SituacaoCompraDTO> consultar(String ticket) {
+		return Optional.ofNullable(situacoes.getIfPresent(ticket));
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, situacoes, "checkout_assincrono");
+	}
+
+	// Mesmas mensagens da finalização síncrona; o resultado sempre substitui a situação anterior
+	private void finalizar(String ticket, Long carrinhoId, Long clienteId) {
+		situacoes.put(ticket, new SituacaoCompraDTO(ticket, Situacao.PROCESSANDO, null));
+		CompraDTO compra;
+		try {
+			compra = compraService.finalizarCompra(carrinhoId, clienteId);
+		} catch (IllegalArgumentException | IllegalStateException | ServicoIndisponivelException e) {
+			compra = new CompraDTO(false, null, e.getMessage());
+		} catch (Exception e) {
+			compra = new CompraDTO(false, null, "Erro ao processar compra.");
+		}
+		situacoes.put(ticket, new SituacaoCompraDTO(ticket, Situacao.CONCLUIDA, compra));
+	}
+}
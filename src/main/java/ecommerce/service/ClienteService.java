@@ -1,23 +1,106 @@
 package ecommerce.service;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import ecommerce.entity.Cliente;
+import ecommerce.entity.TipoCliente;
 import ecommerce.repository.ClienteRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.transaction.Transactional;
 
 @Service
-public class ClienteService {
-	
+public class ClienteService implements MeterBinder {
+
 	private final ClienteRepository repository;
-	
+
+	// Visão compacta id -> tipo, que é tudo o que a precificação precisa do cliente
+	private final AsyncCache<Long, TipoCliente> tipos;
+
 	@Autowired
-	public ClienteService(ClienteRepository repository) {
+	public ClienteService(ClienteRepository repository,
+						  @Value("${ecommerce.cache.clientes.tamanho-maximo:100000}") long tamanhoMaximo,
+						  @Value("${ecommerce.cache.clientes.expiracao:30m}") Duration expiracao) {
 		this.repository = repository;
+		this.tipos = Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.expireAfterWrite(expiracao)
+				.recordStats()
+				// A carga roda na própria thread chamadora e fora do lock do mapa, sem prender threads virtuais
+				.executor(Runnable::run)
+				.buildAsync();
 	}
 
 	public Cliente buscarPorId(Long clienteId) {
 		return repository.findById(clienteId).orElseThrow(() -> new IllegalArgumentException("Cliente não encontrado"));
 	}
 
+	// Buscas concorrentes pelo mesmo cliente ausente esperam uma única consulta ao banco
+	public TipoCliente buscarTipoPorId(Long clienteId) {
+		TipoCliente tipo = buscarTiposPorIds(List.of(clienteId)).get(clienteId);
+		if (tipo == null) {
+			throw new IllegalArgumentException("Cliente não encontrado");
+		}
+		return tipo;
+	}
+
+	// Ids inexistentes ficam de fora do mapa
+	public Map<Long, TipoCliente> buscarTiposPorIds(Collection<Long> clienteIds) {
+		try {
+			return tipos.getAll(clienteIds, this::carregarTipos).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException causa) {
+				throw causa;
+			}
+			throw e;
+		}
+	}
+
+	@Transactional
+	public Cliente alterarTipo(Long clienteId, TipoCliente tipo) {
+		Cliente cliente = buscarPorId(clienteId);
+		cliente.setTipo(tipo);
+		invalidar(clienteId);
+		return repository.save(cliente);
+	}
+
+	public void invalidar(Long clienteId) {
+		tipos.synchronous().invalidate(clienteId);
+		// Invalida de novo após o commit para descartar leituras concorrentes do tipo antigo
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					tipos.synchronous().invalidate(clienteId);
+				}
+			});
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, tipos, "clientes");
+	}
+
+	private Map<Long, TipoCliente> carregarTipos(Set<? extends Long> clienteIds) {
+		return repository.findAllById(List.copyOf(clienteIds)).stream()
+				.collect(Collectors.toMap(Cliente::getId, Cliente::getTipo));
+	}
+
 }
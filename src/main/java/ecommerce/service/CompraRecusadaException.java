@@ -0,0 +1,9 @@
+package ecommerce.service;
+
+// Recusa definitiva da compra (itens fora de estoque, pagamento negado): repetir a requisição dá a mesma resposta
+public class CompraRecusadaException extends IllegalStateException {
+
+	public CompraRecusadaException(String message) {
+		super(message);
+	}
+}
@@ -1,108 +1,366 @@
 package ecommerce.service;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.math.RoundingMode;
+import java.util.stream.IntStream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import ecommerce.config.ExecutoresConfig;
+import ecommerce.dto.CarrinhoExportadoDTO;
 import ecommerce.dto.CompraDTO;
 import ecommerce.dto.DisponibilidadeDTO;
-import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.FinalizacaoCompraDTO;
 import ecommerce.dto.PagamentoDTO;
 import ecommerce.entity.CarrinhoDeCompras;
-import ecommerce.entity.Cliente;
 import ecommerce.entity.ItemCompra;
+import ecommerce.entity.TipoCliente;
 import ecommerce.external.IEstoqueExternal;
 import ecommerce.external.IPagamentoExternal;
-import jakarta.transaction.Transactional;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.service.MetricasCompra.Etapa;
+import ecommerce.service.MetricasCompra.Resultado;
 
 @Service
 public class CompraService {
 
+	private static final Logger log = LoggerFactory.getLogger(CompraService.class);
+
 	private final CarrinhoDeComprasService carrinhoService;
 	private final ClienteService clienteService;
 	private final IEstoqueExternal estoqueExternal;
 	private final IPagamentoExternal pagamentoExternal;
+	private final Executor chamadasExternas;
+	private final Duration prazoEstoque;
+	private final Duration prazoPagamento;
+	private final MetricasCompra metricas;
+	private final CalculadoraCusto calculadoraCusto;
+	private final PedidoService pedidoService;
+	private final int tamanhoBloco;
+
+	public CompraService(CarrinhoDeComprasService carrinhoService, ClienteService clienteService,
+						 IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal, Executor chamadasExternas,
+						 Duration prazoEstoque, Duration prazoPagamento, MetricasCompra metricas,
+						 CalculadoraCusto calculadoraCusto, PedidoService pedidoService) {
+		this(carrinhoService, clienteService, estoqueExternal, pagamentoExternal, chamadasExternas, prazoEstoque,
+				prazoPagamento, metricas, calculadoraCusto, pedidoService, 64);
+	}
 
+	// O bloco do lote tem o tamanho do pool de chamadas externas
 	@Autowired
 	public CompraService(CarrinhoDeComprasService carrinhoService, ClienteService clienteService,
-						 IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal) {
+						 IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal,
+						 @Qualifier(ExecutoresConfig.CHAMADAS_EXTERNAS) Executor chamadasExternas,
+						 @Value("${ecommerce.checkout.prazo-estoque:2s}") Duration prazoEstoque,
+						 @Value("${ecommerce.checkout.prazo-pagamento:5s}") Duration prazoPagamento,
+						 MetricasCompra metricas, CalculadoraCusto calculadoraCusto, PedidoService pedidoService,
+						 @Value("${ecommerce.chamadas-externas.threads:64}") int tamanhoBloco) {
 		this.carrinhoService = carrinhoService;
 		this.clienteService = clienteService;
 		this.estoqueExternal = estoqueExternal;
 		this.pagamentoExternal = pagamentoExternal;
+		this.chamadasExternas = chamadasExternas;
+		this.prazoEstoque = prazoEstoque;
+		this.prazoPagamento = prazoPagamento;
+		this.metricas = metricas;
+		this.calculadoraCusto = calculadoraCusto;
+		this.pedidoService = pedidoService;
+		this.tamanhoBloco = tamanhoBloco;
 	}
 
-	@Transactional
+	// Sem transação própria: cliente e carrinho são lidos em transações curtas e a conexão não fica presa
+	// durante as chamadas externas; a única escrita é a do pedido, na transação do PedidoService
 	public CompraDTO finalizarCompra(Long carrinhoId, Long clienteId) {
-		Cliente cliente = clienteService.buscarPorId(clienteId);
-		CarrinhoDeCompras carrinho = carrinhoService.buscarPorCarrinhoIdEClienteId(carrinhoId, cliente);
+		long inicio = metricas.iniciar();
+		try {
+			TipoCliente tipoCliente = clienteService.buscarTipoPorId(clienteId);
+			long etapa = metricas.registrar(Etapa.CLIENTE, inicio);
+			// Uma só tabela para preparar o carrinho e calcular o custo, mesmo com recarga no meio
+			RegrasPreco regras = calculadoraCusto.regras();
+			CarrinhoDeCompras carrinho = carrinhoService.buscarPorCarrinhoIdEClienteId(carrinhoId, clienteId, regras);
+			etapa = metricas.registrar(Etapa.CARRINHO, etapa);
 
-		BigDecimal custoTotal = calcularCustoTotal(carrinho);
+			// A consulta ao estoque corre enquanto o custo é calculado nesta thread
+			CompletableFuture<DisponibilidadeDTO> disponibilidade = verificarDisponibilidade(carrinho);
+			BigDecimal custoTotal;
+			try {
+				custoTotal = calculadoraCusto.calcularCustoTotal(carrinho, tipoCliente, regras);
+			} catch (RuntimeException e) {
+				disponibilidade.cancel(true);
+				throw e;
+			}
+			metricas.registrar(Etapa.PRECIFICACAO, etapa);
+			// Também roda enquanto o estoque ainda responde, fora do tempo de espera do cliente
+			metricas.registrarCarrinho(carrinho);
+
+			CompraDTO compra = concluirCompra(clienteId, carrinho, custoTotal, disponibilidade);
+			metricas.concluir(inicio, Resultado.SUCESSO);
+			return compra;
+		} catch (IllegalArgumentException e) {
+			metricas.concluir(inicio, Resultado.INVALIDA);
+			throw e;
+		} catch (IllegalStateException e) {
+			metricas.concluir(inicio, Resultado.CONFLITO);
+			throw e;
+		} catch (ServicoIndisponivelException e) {
+			metricas.concluir(inicio, Resultado.INDISPONIVEL);
+			throw e;
+		} catch (RuntimeException e) {
+			metricas.concluir(inicio, Resultado.ERRO);
+			throw e;
+		}
+	}
+
+	/*
+	 * Cada compra do lote grava o próprio pedido: uma falha de gravação não desfaz os pedidos já pagos.
+	 * Os carrinhos são precificados e concluídos em blocos do tamanho do pool de chamadas externas,
+	 * então as consultas ao estoque de um bloco cabem nas threads e o lote não esgota a fila do pool.
+	 * Pares incompletos e repetidos são recusados antes de qualquer consulta, só na sua posição.
+	 */
+	public List<CompraDTO> finalizarCompras(List<FinalizacaoCompraDTO> finalizacoes) {
+		List<String> recusas = new ArrayList<>(finalizacoes.size());
+		List<FinalizacaoCompraDTO> validas = new ArrayList<>(finalizacoes.size());
+		Set<FinalizacaoCompraDTO> vistas = new HashSet<>();
+		for (FinalizacaoCompraDTO finalizacao : finalizacoes) {
+			String recusa = recusar(finalizacao, vistas);
+			recusas.add(recusa);
+			if (recusa == null) {
+				validas.add(finalizacao);
+			}
+		}
+		Set<Long> clienteIds = validas.stream().map(FinalizacaoCompraDTO::clienteId).collect(Collectors.toSet());
+
+		Map<Long, TipoCliente> tiposCliente = clienteService.buscarTiposPorIds(clienteIds);
+		RegrasPreco regras = calculadoraCusto.regras();
+		Map<Long, CarrinhoDeCompras> carrinhos = carrinhoService.buscarPorIds(validas, regras);
+
+		List<CompraDTO> compras = new ArrayList<>(finalizacoes.size());
+		for (int inicio = 0; inicio < finalizacoes.size(); inicio += tamanhoBloco) {
+			// Itens e produtos já vieram carregados, então a precificação pode rodar em paralelo
+			List<Precificacao> precificacoes = IntStream.range(inicio, Math.min(inicio + tamanhoBloco, finalizacoes.size()))
+					.parallel()
+					.mapToObj(i -> recusas.get(i) != null
+							? new Precificacao(null, null, null, null, new IllegalArgumentException(recusas.get(i)))
+							: precificar(finalizacoes.get(i), tiposCliente, carrinhos, regras))
+					.toList();
+			for (Precificacao precificacao : precificacoes) {
+				compras.add(concluir(precificacao));
+			}
+		}
+		return compras;
+	}
+
+	// O mesmo par repetido seria autorizado e cobrado duas vezes: vale só a primeira ocorrência
+	private static String recusar(FinalizacaoCompraDTO finalizacao, Set<FinalizacaoCompraDTO> vistas) {
+		if (finalizacao == null || finalizacao.carrinhoId() == null) {
+			return "Carrinho não encontrado.";
+		}
+		if (finalizacao.clienteId() == null) {
+			return "Cliente não encontrado";
+		}
+		if (!vistas.add(finalizacao)) {
+			return "Carrinho repetido no lote.";
+		}
+		return null;
+	}
+
+	private Precificacao precificar(FinalizacaoCompraDTO finalizacao, Map<Long, TipoCliente> tiposCliente,
+			Map<Long, CarrinhoDeCompras> carrinhos, RegrasPreco regras) {
+		CompletableFuture<DisponibilidadeDTO> disponibilidade = null;
+		try {
+			TipoCliente tipoCliente = tiposCliente.get(finalizacao.clienteId());
+			if (tipoCliente == null) {
+				throw new IllegalArgumentException("Cliente não encontrado");
+			}
+
+			// getId no proxy do cliente não dispara consulta
+			CarrinhoDeCompras carrinho = carrinhos.get(finalizacao.carrinhoId());
+			if (carrinho == null || carrinho.getCliente() == null
+					|| !finalizacao.clienteId().equals(carrinho.getCliente().getId())) {
+				throw new IllegalArgumentException("Carrinho não encontrado.");
+			}
+
+			disponibilidade = verificarDisponibilidade(carrinho);
+			return new Precificacao(finalizacao.clienteId(), carrinho,
+					calculadoraCusto.calcularCustoTotal(carrinho, tipoCliente, regras), disponibilidade, null);
+		} catch (RuntimeException e) {
+			if (disponibilidade != null) {
+				disponibilidade.cancel(true);
+			}
+			return new Precificacao(null, null, null, null, e);
+		}
+	}
+
+	private CompraDTO concluir(Precificacao precificacao) {
+		try {
+			if (precificacao.erro() != null) {
+				throw precificacao.erro();
+			}
+			return concluirCompra(precificacao.clienteId(), precificacao.carrinho(), precificacao.custoTotal(),
+					precificacao.disponibilidade());
+		} catch (IllegalArgumentException | IllegalStateException | ServicoIndisponivelException e) {
+			return new CompraDTO(false, null, e.getMessage());
+		} catch (RuntimeException e) {
+			return new CompraDTO(false, null, "Erro ao processar compra.");
+		}
+	}
 
-		PagamentoDTO pagamento = pagamentoExternal.autorizarPagamento(cliente.getId(), custoTotal.doubleValue());
-		if (!pagamento.autorizado()) {
-			throw new IllegalStateException("Pagamento não autorizado.");
+	private CompraDTO concluirCompra(Long clienteId, CarrinhoDeCompras carrinho, BigDecimal custoTotal,
+			CompletableFuture<DisponibilidadeDTO> disponibilidade) {
+		DisponibilidadeDTO estoque = aguardar(disponibilidade, prazoEstoque, "Tempo esgotado na consulta ao estoque.");
+		if (estoque == null || !Boolean.TRUE.equals(estoque.disponivel())) {
+			throw new CompraRecusadaException("Itens fora de estoque.");
 		}
 
+		PagamentoDTO pagamento = autorizarPagamento(clienteId, custoTotal);
+		registrarPedido(clienteId, carrinho, custoTotal, pagamento);
+
 		return new CompraDTO(true, pagamento.transacaoId(), "Compra finalizada com sucesso.");
 	}
 
-	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho) {
-		BigDecimal custoProdutos = calcularCustoProdutos(carrinho);
-		BigDecimal desconto = calcularDesconto(custoProdutos);
-		BigDecimal custoFrete = calcularCustoFrete(carrinho);
+	private CompletableFuture<DisponibilidadeDTO> verificarDisponibilidade(CarrinhoDeCompras carrinho) {
+		List<Long> produtosIds = produtosIds(carrinho);
+		List<Long> quantidades = quantidades(carrinho);
+		return submeter(
+				medido(Etapa.ESTOQUE, () -> estoqueExternal.verificarDisponibilidade(produtosIds, quantidades)),
+				"estoque");
+	}
 
+	private PagamentoDTO autorizarPagamento(Long clienteId, BigDecimal custoTotal) {
+		CompletableFuture<PagamentoDTO> autorizacao = submeter(
+				medido(Etapa.PAGAMENTO, () -> pagamentoExternal.autorizarPagamento(clienteId, custoTotal.doubleValue())),
+				"pagamento");
 
-		if (carrinho.getItens() == null || carrinho.getItens().isEmpty()) {
-			return BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
+		PagamentoDTO pagamento;
+		try {
+			pagamento = aguardar(autorizacao.copy(), prazoPagamento, "Tempo esgotado na autorização do pagamento.");
+		} catch (IllegalStateException e) {
+			// Uma autorização que chegue depois do prazo é cancelada, já que a compra não foi concluída
+			autorizacao.thenAccept(atrasado -> cancelarSeAutorizado(clienteId, atrasado));
+			throw e;
 		}
 
-		return custoProdutos.subtract(desconto).add(custoFrete).setScale(2, RoundingMode.HALF_UP);
+		if (pagamento == null || !Boolean.TRUE.equals(pagamento.autorizado())) {
+			throw new CompraRecusadaException("Pagamento não autorizado.");
+		}
+		return pagamento;
 	}
 
-	private BigDecimal calcularCustoProdutos(CarrinhoDeCompras carrinho) {
-		return carrinho.getItens().stream()
-				.map(item -> item.getProduto().getPreco().multiply(BigDecimal.valueOf(item.getQuantidade())))
-				.reduce(BigDecimal.ZERO, BigDecimal::add);
+	// A baixa no estoque fica gravada junto com o pedido e sai depois, pelo DespachanteEstoque
+	private void registrarPedido(Long clienteId, CarrinhoDeCompras carrinho, BigDecimal custoTotal,
+			PagamentoDTO pagamento) {
+		long inicio = System.nanoTime();
+		try {
+			pedidoService.registrar(clienteId, carrinho, custoTotal, pagamento.transacaoId());
+		} catch (RuntimeException e) {
+			cancelarPagamento(clienteId, pagamento.transacaoId());
+			throw e;
+		} finally {
+			metricas.registrar(Etapa.PEDIDO, inicio);
+		}
 	}
 
-	private BigDecimal calcularCustoFrete(CarrinhoDeCompras carrinho) {
-		int pesoTotal = carrinho.getItens().stream()
-				.mapToInt(item -> item.getProduto().getPeso() * item.getQuantidade().intValue())
-				.sum();
+	private void cancelarSeAutorizado(Long clienteId, PagamentoDTO pagamento) {
+		if (pagamento != null && Boolean.TRUE.equals(pagamento.autorizado())) {
+			cancelarPagamento(clienteId, pagamento.transacaoId());
+		}
+	}
 
-		BigDecimal custoFrete = BigDecimal.ZERO;
-		if (pesoTotal > 5 && pesoTotal <= 10) {
-			custoFrete = BigDecimal.valueOf(pesoTotal).multiply(BigDecimal.valueOf(2));
-		} else if (pesoTotal > 10 && pesoTotal <= 50) {
-			custoFrete = BigDecimal.valueOf(pesoTotal).multiply(BigDecimal.valueOf(4));
-		} else if (pesoTotal > 50) {
-			custoFrete = BigDecimal.valueOf(pesoTotal).multiply(BigDecimal.valueOf(7));
+	// Uma falha na compensação não pode esconder o motivo da compra recusada
+	private void cancelarPagamento(Long clienteId, Long transacaoId) {
+		try {
+			pagamentoExternal.cancelarPagamento(clienteId, transacaoId);
+		} catch (RuntimeException e) {
+			log.error("Falha ao cancelar o pagamento {} do cliente {}.", transacaoId, clienteId, e);
 		}
+	}
 
-		Cliente cliente = carrinho.getCliente();
-		switch (cliente.getTipo()) {
-			case OURO:
-				return BigDecimal.ZERO; // Frete grátis
-			case PRATA:
-				return custoFrete.multiply(BigDecimal.valueOf(0.5)); // 50% de desconto
-			default:
-				return custoFrete; // Sem desconto
+	// Pool de chamadas externas cheio recusa na hora, como o compartimento do serviço: o controller responde 503
+	private <T> CompletableFuture<T> submeter(Supplier<T> chamada, String servico) {
+		try {
+			return CompletableFuture.supplyAsync(chamada, chamadasExternas);
+		} catch (RejectedExecutionException e) {
+			throw new ServicoIndisponivelException("Serviço de " + servico + " sobrecarregado.");
 		}
 	}
 
-	private BigDecimal calcularDesconto(BigDecimal custoProdutos) {
-		if (custoProdutos.compareTo(BigDecimal.valueOf(1000)) > -1) {
-			return custoProdutos.multiply(BigDecimal.valueOf(0.2)); // 20% desconto
-		} else if (custoProdutos.compareTo(BigDecimal.valueOf(500)) > -1) {
-			return custoProdutos.multiply(BigDecimal.valueOf(0.1)); // 10% desconto
-		} else {
-			return BigDecimal.ZERO; // Sem desconto
+	// As chamadas externas são medidas onde executam, inclusive as que terminam depois do prazo
+	private <T> Supplier<T> medido(Etapa etapa, Supplier<T> chamada) {
+		return () -> {
+			long inicio = System.nanoTime();
+			try {
+				return chamada.get();
+			} finally {
+				metricas.registrar(etapa, inicio);
+			}
+		};
+	}
+
+	private static <T> T aguardar(CompletableFuture<T> futuro, Duration prazo, String mensagemPrazo) {
+		try {
+			return futuro.get(prazo.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			futuro.cancel(true);
+			throw new IllegalStateException(mensagemPrazo);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException causa) {
+				throw causa;
+			}
+			throw new IllegalStateException("Erro ao processar compra.", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			futuro.cancel(true);
+			throw new IllegalStateException("Finalização da compra interrompida.");
 		}
 	}
-}
 
+	private static List<Long> produtosIds(CarrinhoDeCompras carrinho) {
+		List<Long> ids = new ArrayList<>(carrinho.getItens().size());
+		for (ItemCompra item : carrinho.getItens()) {
+			ids.add(item.getProduto().getId());
+		}
+		return ids;
+	}
+
+	private static List<Long> quantidades(CarrinhoDeCompras carrinho) {
+		List<Long> quantidades = new ArrayList<>(carrinho.getItens().size());
+		for (ItemCompra item : carrinho.getItens()) {
+			quantidades.add(item.getQuantidade());
+		}
+		return quantidades;
+	}
+
+	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho) {
+		return calculadoraCusto.calcularCustoTotal(carrinho);
+	}
+
+	// Carrinhos sem cliente não têm tipo para o frete e saem sem custo total
+	public void exportarCarrinhos(Consumer<CarrinhoExportadoDTO> destino) {
+		carrinhoService.percorrerTodos(carrinho -> destino.accept(new CarrinhoExportadoDTO(carrinho.getId(),
+				carrinho.getCliente() == null ? null : carrinho.getCliente().getId(), carrinho.getData(),
+				carrinho.getItens().size(), carrinho.getCliente() == null ? null : calcularCustoTotal(carrinho))));
+	}
+
+	private record Precificacao(Long clienteId, CarrinhoDeCompras carrinho, BigDecimal custoTotal,
+			CompletableFuture<DisponibilidadeDTO> disponibilidade, RuntimeException erro) {
+	}
+}
@@ -0,0 +1,209 @@
+package ecommerce.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.entity.EventoEstoque;
+import ecommerce.entity.SituacaoEvento;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.repository.EventoEstoqueRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/*
+ * Envia ao estoque as baixas gravadas pelo PedidoService (outbox). Cada rodada lê um lote de
+ * eventos prontos em ordem de id e manda todos em uma única chamada ao darBaixa, fora de qualquer
+ * transação. Se o estoque recusar o lote, os eventos seguem um a um na mesma ordem; depois da
+ * primeira falha de um produto, os eventos seguintes dele ficam para depois, e enquanto um evento
+ * espera a nova tentativa nenhum evento posterior do mesmo produto é enviado. Cada falha dobra a
+ * espera até o limite; esgotadas as tentativas, o evento fica como FALHOU e deixa de segurar o produto.
+ *
+ * Um lote que termina em exceção (prazo estourado, erro de rede) pode ter sido aplicado: não é
+ * reenviado um a um na hora, e todos os eventos dele contam uma falha e esperam a próxima
+ * tentativa. A entrega é pelo menos uma vez, só nas novas tentativas. Um único despachante por
+ * banco, já que os eventos não são travados.
+ */
+@Service
+public class DespachanteEstoque implements MeterBinder {
+
+	private static final Logger log = LoggerFactory.getLogger(DespachanteEstoque.class);
+
+	private final EventoEstoqueRepository repository;
+	private final IEstoqueExternal estoqueExternal;
+	private final TransactionTemplate transacao;
+	private final int tamanhoLote;
+	private final int tentativasMaximas;
+	private final Duration esperaInicial;
+	private final Duration esperaMaxima;
+	private final Clock relogio;
+
+	private final LongAdder enviados = new LongAdder();
+	private final LongAdder retentativas = new LongAdder();
+	private final LongAdder desistidos = new LongAdder();
+
+	@Autowired
+	public DespachanteEstoque(EventoEstoqueRepository repository, IEstoqueExternal estoqueExternal,
+							  TransactionTemplate transacao,
+							  @Value("${ecommerce.outbox.tamanho-lote:200}") int tamanhoLote,
+							  @Value("${ecommerce.outbox.tentativas-maximas:10}") int tentativasMaximas,
+							  @Value("${ecommerce.outbox.espera-inicial:1s}") Duration esperaInicial,
+							  @Value("${ecommerce.outbox.espera-maxima:5m}") Duration esperaMaxima) {
+		this(repository, estoqueExternal, transacao, tamanhoLote, tentativasMaximas, esperaInicial, esperaMaxima,
+				Clock.systemUTC());
+	}
+
+	public DespachanteEstoque(EventoEstoqueRepository repository, IEstoqueExternal estoqueExternal,
+							  TransactionTemplate transacao, int tamanhoLote, int tentativasMaximas,
+							  Duration esperaInicial, Duration esperaMaxima, Clock relogio) {
+		this.repository = repository;
+		this.estoqueExternal = estoqueExternal;
+		this.transacao = transacao;
+		this.tamanhoLote = tamanhoLote;
+		this.tentativasMaximas = tentativasMaximas;
+		this.esperaInicial = esperaInicial;
+		this.esperaMaxima = esperaMaxima;
+		this.relogio = relogio;
+	}
+
+	// Rodada agendada pelo OutboxConfig: segue enquanto os lotes vêm cheios e são enviados inteiros
+	public void despachar() {
+		while (despacharLote() == tamanhoLote) {
+			// Ainda pode haver eventos prontos
+		}
+	}
+
+	// Devolve quantos eventos foram enviados com sucesso
+	public int despacharLote() {
+		Instant agora = relogio.instant();
+		List<EventoEstoque> lote = transacao.execute(status ->
+				repository.findProntos(agora, PageRequest.of(0, tamanhoLote)));
+		if (lote.isEmpty()) {
+			return 0;
+		}
+
+		List<Long> sucessos = new ArrayList<>(lote.size());
+		Map<Long, String> falhas = new LinkedHashMap<>();
+		try {
+			if (sucesso(enviar(lote))) {
+				lote.forEach(evento -> sucessos.add(evento.getId()));
+			} else {
+				enviarUmAUm(lote, sucessos, falhas);
+			}
+		} catch (ServicoIndisponivelException e) {
+			// Circuito aberto ou compartimento cheio: a chamada nem saiu, o lote fica para a próxima rodada
+			log.warn("Estoque indisponível; {} baixas aguardam a próxima rodada.", lote.size());
+			return 0;
+		} catch (RuntimeException e) {
+			// Resultado incerto: o lote inteiro espera a próxima tentativa
+			log.warn("Lote de {} baixas sem resposta do estoque; todas aguardam nova tentativa.", lote.size(), e);
+			lote.forEach(evento -> falhas.put(evento.getId(), e.toString()));
+		}
+
+		transacao.executeWithoutResult(status -> registrar(sucessos, falhas, agora));
+		return sucessos.size();
+	}
+
+	// Quantidades do mesmo produto somadas, na ordem do primeiro evento de cada um
+	private EstoqueBaixaDTO enviar(List<EventoEstoque> eventos) {
+		Map<Long, Long> totais = new LinkedHashMap<>();
+		for (EventoEstoque evento : eventos) {
+			totais.merge(evento.getProdutoId(), evento.getQuantidade(), Long::sum);
+		}
+		return estoqueExternal.darBaixa(new ArrayList<>(totais.keySet()), new ArrayList<>(totais.values()));
+	}
+
+	private void enviarUmAUm(List<EventoEstoque> lote, List<Long> sucessos, Map<Long, String> falhas) {
+		Set<Long> produtosComFalha = new HashSet<>();
+		for (EventoEstoque evento : lote) {
+			if (produtosComFalha.contains(evento.getProdutoId())) {
+				continue;
+			}
+			String erro;
+			try {
+				EstoqueBaixaDTO baixa = enviar(List.of(evento));
+				if (sucesso(baixa)) {
+					sucessos.add(evento.getId());
+					continue;
+				}
+				erro = "Baixa recusada pelo estoque.";
+			} catch (ServicoIndisponivelException e) {
+				// O restante do lote não chega ao estoque; o que já foi enviado é registrado
+				return;
+			} catch (RuntimeException e) {
+				erro = e.toString();
+			}
+			falhas.put(evento.getId(), erro);
+			produtosComFalha.add(evento.getProdutoId());
+		}
+	}
+
+	private void registrar(List<Long> sucessos, Map<Long, String> falhas, Instant agora) {
+		if (!sucessos.isEmpty()) {
+			repository.marcarEnviados(sucessos, agora);
+			enviados.add(sucessos.size());
+		}
+		for (EventoEstoque evento : repository.findAllById(falhas.keySet())) {
+			int tentativas = evento.getTentativas() + 1;
+			String erro = falhas.get(evento.getId());
+			evento.setTentativas(tentativas);
+			evento.setUltimoErro(erro.length() > EventoEstoque.TAMANHO_ERRO
+					? erro.substring(0, EventoEstoque.TAMANHO_ERRO) : erro);
+			if (tentativas >= tentativasMaximas) {
+				evento.setSituacao(SituacaoEvento.FALHOU);
+				evento.setProcessadoEm(agora);
+				desistidos.increment();
+				log.error("Baixa do evento {} (pedido {}, produto {}, quantidade {}) abandonada após {} tentativas: {}",
+						evento.getId(), evento.getPedidoId(), evento.getProdutoId(), evento.getQuantidade(),
+						tentativas, erro);
+			} else {
+				evento.setProximaTentativa(agora.plus(espera(tentativas)));
+				retentativas.increment();
+			}
+		}
+	}
+
+	// Espera inicial dobrada a cada falha, até a espera máxima
+	private Duration espera(int tentativas) {
+		Duration espera = esperaInicial.multipliedBy(1L << Math.min(tentativas - 1, 30));
+		return espera.compareTo(esperaMaxima) > 0 ? esperaMaxima : espera;
+	}
+
+	private static boolean sucesso(EstoqueBaixaDTO baixa) {
+		return baixa != null && Boolean.TRUE.equals(baixa.sucesso());
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (Map.Entry<String, LongAdder> contador : Map.of("enviado", enviados, "retentativa", retentativas,
+				"falhou", desistidos).entrySet()) {
+			FunctionCounter.builder("ecommerce.estoque.eventos", contador.getValue(), LongAdder::sum)
+					.description("Baixas de estoque do outbox por resultado")
+					.tag("resultado", contador.getKey())
+					.register(registry);
+		}
+		Gauge.builder("ecommerce.estoque.eventos.pendentes", repository,
+						eventos -> eventos.countBySituacao(SituacaoEvento.PENDENTE))
+				.description("Baixas de estoque aguardando envio")
+				.register(registry);
+	}
+}
@@ -0,0 +1,135 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/*
+ * Respostas por chave de idempotência. A primeira requisição de uma chave executa a ação na
+ * própria thread; as repetições concorrentes esperam por ela e as posteriores recebem a resposta
+ * guardada até expirar. Falhas e respostas marcadas como não reaproveitáveis liberam a chave para
+ * uma nova tentativa.
+ *
+ * Execuções em andamento ficam em um mapa sem limite nem expiração: tirar uma delas por tamanho ou
+ * tempo deixaria a repetição executar a ação de novo (um segundo pagamento). Só a resposta pronta vai
+ * para o cache limitado.
+ */
+@Service
+public class IdempotenciaService implements MeterBinder {
+
+	private final Map<String, Execucao> emAndamento = new ConcurrentHashMap<>();
+	private final Cache<String, Execucao> concluidas;
+	private final Duration espera;
+
+	@Autowired
+	public IdempotenciaService(@Value("${ecommerce.idempotencia.tamanho-maximo:100000}") long tamanhoMaximo,
+							   @Value("${ecommerce.idempotencia.expiracao:1h}") Duration expiracao,
+							   @Value("${ecommerce.idempotencia.espera:30s}") Duration espera) {
+		this.concluidas = Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.expireAfterWrite(expiracao)
+				.recordStats()
+				.build();
+		this.espera = espera;
+	}
+
+	/*
+	 * A impressão identifica a requisição original; a mesma chave com outra impressão é recusada.
+	 * putIfAbsent no mapa não segura trava durante a ação, então threads virtuais não ficam presas.
+	 * A resposta entra no cache antes de a execução sair do mapa, então quem ganha a chave depois
+	 * disso ainda a encontra ali.
+	 */
+	public <T> T executar(String chave, Object impressao, Supplier<T> acao, Predicate<T> reaproveitavel) {
+		Execucao concluida = concluidas.getIfPresent(chave);
+		if (concluida != null) {
+			return repetir(concluida, impressao);
+		}
+		Execucao nova = new Execucao(impressao, new CompletableFuture<>());
+		Execucao existente = emAndamento.putIfAbsent(chave, nova);
+		if (existente != null) {
+			return repetir(existente, impressao);
+		}
+		concluida = concluidas.getIfPresent(chave);
+		if (concluida != null) {
+			// Outra execução terminou entre a consulta ao cache e a entrada no mapa
+			emAndamento.remove(chave, nova);
+			try {
+				T resultado = repetir(concluida, impressao);
+				nova.resultado().complete(resultado);
+				return resultado;
+			} catch (RuntimeException e) {
+				nova.resultado().completeExceptionally(e);
+				throw e;
+			}
+		}
+
+		T resultado;
+		try {
+			resultado = acao.get();
+		} catch (RuntimeException | Error e) {
+			emAndamento.remove(chave, nova);
+			nova.resultado().completeExceptionally(e);
+			throw e;
+		}
+		nova.resultado().complete(resultado);
+		if (reaproveitavel.test(resultado)) {
+			concluidas.put(chave, nova);
+		}
+		emAndamento.remove(chave, nova);
+		return resultado;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, concluidas, "idempotencia");
+		Gauge.builder("ecommerce.idempotencia.em.andamento", emAndamento, Map::size)
+				.description("Execuções por chave de idempotência ainda sem resposta")
+				.register(registry);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T repetir(Execucao execucao, Object impressao) {
+		if (!Objects.equals(execucao.impressao(), impressao)) {
+			throw new IllegalStateException("Chave de idempotência já usada em outra requisição.");
+		}
+		return (T) aguardar(execucao.resultado());
+	}
+
+	private Object aguardar(CompletableFuture<Object> resultado) {
+		try {
+			return resultado.get(espera.toMillis(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException("Requisição com a mesma chave ainda em processamento.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException causa) {
+				throw causa;
+			}
+			throw new IllegalStateException("Erro ao processar compra.", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Requisição com a mesma chave ainda em processamento.");
+		}
+	}
+
+	private record Execucao(Object impressao, CompletableFuture<Object> resultado) {
+	}
+}
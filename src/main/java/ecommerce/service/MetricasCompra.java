@@ -0,0 +1,150 @@
+package ecommerce.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Medidores da finalização de compra, criados uma única vez para que o caminho quente só faça
+ * System.nanoTime e um record. As etapas e resultados usam tags fixas, sem cardinalidade por
+ * cliente ou carrinho. As faixas de peso são as do frete em vigor no TabelasPreco; quando outra
+ * tabela é publicada, os contadores das faixas dela são registrados no primeiro carrinho seguinte.
+ */
+@Component
+public class MetricasCompra {
+
+	public enum Etapa {
+		CLIENTE, CARRINHO, PRECIFICACAO, ESTOQUE, PAGAMENTO, PEDIDO
+	}
+
+	// Resultado como o CompraController devolve: 200, 400, 409, 500 ou 503
+	public enum Resultado {
+		SUCESSO, INVALIDA, CONFLITO, ERRO, INDISPONIVEL
+	}
+
+	private final Timer total;
+	private final Timer[] etapas;
+	private final Counter[] resultados;
+	private final DistributionSummary itensPorCarrinho;
+	private final DistributionSummary pesoPorCarrinho;
+	private final MeterRegistry registry;
+	private final TabelasPreco tabelasPreco;
+	private volatile FaixasPeso faixasPeso;
+	private final AtomicInteger emAndamento = new AtomicInteger();
+
+	public MetricasCompra(MeterRegistry registry) {
+		this(registry, new TabelasPreco(RegrasPreco.PADRAO));
+	}
+
+	@Autowired
+	public MetricasCompra(MeterRegistry registry, TabelasPreco tabelasPreco) {
+		this.registry = registry;
+		this.tabelasPreco = tabelasPreco;
+		this.total = Timer.builder("ecommerce.checkout")
+				.description("Duração total da finalização de compra")
+				.publishPercentileHistogram()
+				.register(registry);
+
+		this.etapas = new Timer[Etapa.values().length];
+		for (Etapa etapa : Etapa.values()) {
+			etapas[etapa.ordinal()] = Timer.builder("ecommerce.checkout.etapa")
+					.description("Duração de cada etapa da finalização de compra")
+					.tag("etapa", etapa.name().toLowerCase())
+					.publishPercentileHistogram()
+					.register(registry);
+		}
+
+		this.resultados = new Counter[Resultado.values().length];
+		for (Resultado resultado : Resultado.values()) {
+			resultados[resultado.ordinal()] = Counter.builder("ecommerce.checkout.resultado")
+					.description("Finalizações de compra por resultado")
+					.tag("resultado", resultado.name().toLowerCase())
+					.register(registry);
+		}
+
+		this.itensPorCarrinho = DistributionSummary.builder("ecommerce.checkout.carrinho.itens")
+				.description("Itens por carrinho finalizado")
+				.publishPercentileHistogram()
+				.register(registry);
+		this.pesoPorCarrinho = DistributionSummary.builder("ecommerce.checkout.carrinho.peso")
+				.description("Peso total por carrinho finalizado")
+				.baseUnit("kg")
+				.register(registry);
+
+		this.faixasPeso = registrarFaixas(tabelasPreco.atuais());
+
+		Gauge.builder("ecommerce.checkout.em.andamento", emAndamento, AtomicInteger::get)
+				.description("Finalizações de compra em andamento")
+				.register(registry);
+	}
+
+	public long iniciar() {
+		emAndamento.incrementAndGet();
+		return System.nanoTime();
+	}
+
+	public void concluir(long inicio, Resultado resultado) {
+		total.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+		resultados[resultado.ordinal()].increment();
+		emAndamento.decrementAndGet();
+	}
+
+	// Devolve o instante atual para encadear a próxima etapa sem outra chamada a nanoTime
+	public long registrar(Etapa etapa, long inicio) {
+		long agora = System.nanoTime();
+		etapas[etapa.ordinal()].record(agora - inicio, TimeUnit.NANOSECONDS);
+		return agora;
+	}
+
+	public void registrarCarrinho(CarrinhoDeCompras carrinho) {
+		List<ItemCompra> itens = carrinho.getItens();
+		int pesoTotal = 0;
+		if (carrinho.isTotaisConferidos()) {
+			// Os produtos não foram resolvidos; somar aqui dispararia uma consulta por produto
+			pesoTotal = carrinho.getPesoTotal();
+		} else {
+			for (ItemCompra item : itens) {
+				pesoTotal += item.getProduto().getPeso() * item.getQuantidade().intValue();
+			}
+		}
+		itensPorCarrinho.record(itens.size());
+		pesoPorCarrinho.record(pesoTotal);
+		contarFaixaPeso(pesoTotal);
+	}
+
+	// Duas threads podem registrar a mesma tabela ao mesmo tempo; o registro devolve os mesmos contadores
+	private void contarFaixaPeso(int pesoTotal) {
+		RegrasPreco regras = tabelasPreco.atuais();
+		FaixasPeso faixas = faixasPeso;
+		if (faixas.regras() != regras) {
+			faixas = registrarFaixas(regras);
+			faixasPeso = faixas;
+		}
+		faixas.contadores()[regras.faixaPeso(pesoTotal)].increment();
+	}
+
+	private FaixasPeso registrarFaixas(RegrasPreco regras) {
+		Counter[] contadores = new Counter[regras.quantidadeFaixasPeso()];
+		for (int i = 0; i < contadores.length; i++) {
+			contadores[i] = Counter.builder("ecommerce.checkout.carrinho.faixa.peso")
+					.description("Carrinhos finalizados por faixa de peso do frete")
+					.tag("faixa", regras.rotuloFaixaPeso(i))
+					.register(registry);
+		}
+		return new FaixasPeso(regras, contadores);
+	}
+
+	private record FaixasPeso(RegrasPreco regras, Counter[] contadores) {
+	}
+}
@@ -0,0 +1,96 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import ecommerce.dto.ItemOrcamentoDTO;
+import ecommerce.dto.OrcamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.TipoCliente;
+import ecommerce.service.CalculadoraCusto.Detalhamento;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/*
+ * Orçamento do carrinho sem finalizar a compra. A chave junta a versão do carrinho (@Version), o
+ * tipo do cliente, a versão dos preços do catálogo e a impressão das regras de frete e desconto
+ * (um resumo do conteúdo, igual em todas as instâncias com a mesma configuração), e sai de uma
+ * consulta só à versão do carrinho. Com ela o controller responde 304 a quem já tem o
+ * orçamento, e orçamentos repetidos saem da memória sem carregar os itens nem precificar de novo.
+ */
+@Service
+public class OrcamentoService implements MeterBinder {
+
+	private final CarrinhoDeComprasService carrinhoService;
+	private final ClienteService clienteService;
+	private final CatalogoProdutos catalogoProdutos;
+	private final TabelasPreco tabelasPreco;
+	private final CalculadoraCusto calculadoraCusto;
+	private final Cache<ChaveOrcamento, OrcamentoDTO> orcamentos;
+
+	@Autowired
+	public OrcamentoService(CarrinhoDeComprasService carrinhoService, ClienteService clienteService,
+							CatalogoProdutos catalogoProdutos, TabelasPreco tabelasPreco,
+							CalculadoraCusto calculadoraCusto,
+							@Value("${ecommerce.cache.orcamentos.tamanho-maximo:100000}") long tamanhoMaximo,
+							@Value("${ecommerce.cache.orcamentos.expiracao:10m}") Duration expiracao) {
+		this.carrinhoService = carrinhoService;
+		this.clienteService = clienteService;
+		this.catalogoProdutos = catalogoProdutos;
+		this.tabelasPreco = tabelasPreco;
+		this.calculadoraCusto = calculadoraCusto;
+		this.orcamentos = Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.expireAfterWrite(expiracao)
+				.recordStats()
+				.build();
+	}
+
+	// Preços e regras são lidos antes do carrinho, então o orçamento nunca é mais velho que a chave
+	public ChaveOrcamento identificar(Long carrinhoId, Long clienteId) {
+		TipoCliente tipoCliente = clienteService.buscarTipoPorId(clienteId);
+		long versaoPrecos = catalogoProdutos.versaoPrecos();
+		long impressaoRegras = tabelasPreco.atuais().impressao();
+		long versaoCarrinho = carrinhoService.buscarVersao(carrinhoId, clienteId);
+		return new ChaveOrcamento(carrinhoId, clienteId, versaoCarrinho, tipoCliente, versaoPrecos, impressaoRegras);
+	}
+
+	public OrcamentoDTO orcar(ChaveOrcamento chave) {
+		OrcamentoDTO memorizado = orcamentos.getIfPresent(chave);
+		if (memorizado != null) {
+			return memorizado;
+		}
+		CarrinhoDeCompras carrinho = carrinhoService.buscarComProdutos(chave.carrinhoId(), chave.clienteId());
+		OrcamentoDTO orcamento = montar(carrinho, chave.tipoCliente());
+		// Carrinho alterado depois da leitura da versão: o orçamento é atual, mas não é o desta chave
+		if (carrinho.getVersao() != null && carrinho.getVersao() == chave.versaoCarrinho()) {
+			orcamentos.put(chave, orcamento);
+		}
+		return orcamento;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, orcamentos, "orcamentos");
+	}
+
+	private OrcamentoDTO montar(CarrinhoDeCompras carrinho, TipoCliente tipoCliente) {
+		List<ItemOrcamentoDTO> itens = carrinho.getItens().stream()
+				.map(item -> new ItemOrcamentoDTO(item.getId(), item.getProduto().getId(), item.getProduto().getNome(),
+						item.getQuantidade(), item.getProduto().getPreco(),
+						item.getProduto().getPreco().multiply(BigDecimal.valueOf(item.getQuantidade()))))
+				.toList();
+		Detalhamento detalhamento = calculadoraCusto.detalhar(carrinho, tipoCliente);
+		return new OrcamentoDTO(carrinho.getId(), tipoCliente, itens, detalhamento.subtotal(),
+				detalhamento.promocoes(), detalhamento.desconto(), detalhamento.frete(), detalhamento.total());
+	}
+}
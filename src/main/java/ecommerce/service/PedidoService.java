@@ -0,0 +1,56 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.EventoEstoque;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Pedido;
+import ecommerce.repository.EventoEstoqueRepository;
+import ecommerce.repository.PedidoRepository;
+import jakarta.transaction.Transactional;
+
+/*
+ * Grava o pedido e uma baixa pendente por item na mesma transação: ou os dois ficam no banco ou
+ * nenhum. A baixa no estoque sai depois, pelo DespachanteEstoque, fora do tempo da compra.
+ */
+@Service
+public class PedidoService {
+
+	private final PedidoRepository pedidos;
+	private final EventoEstoqueRepository eventos;
+	private final Clock relogio;
+
+	@Autowired
+	public PedidoService(PedidoRepository pedidos, EventoEstoqueRepository eventos) {
+		this(pedidos, eventos, Clock.systemUTC());
+	}
+
+	// O mesmo relógio do DespachanteEstoque, que libera as baixas pelo horário em que foram gravadas
+	public PedidoService(PedidoRepository pedidos, EventoEstoqueRepository eventos, Clock relogio) {
+		this.pedidos = pedidos;
+		this.eventos = eventos;
+		this.relogio = relogio;
+	}
+
+	// Chamado fora de transação, o commit acontece na saída e uma falha dele chega a quem chamou
+	@Transactional
+	public Pedido registrar(Long clienteId, CarrinhoDeCompras carrinho, BigDecimal custoTotal, Long transacaoId) {
+		Instant agora = relogio.instant();
+		Pedido pedido = pedidos.save(new Pedido(clienteId, carrinho.getId(), transacaoId, custoTotal, agora));
+		List<EventoEstoque> baixas = new ArrayList<>(carrinho.getItens().size());
+		for (ItemCompra item : carrinho.getItens()) {
+			// getId no proxy do produto não dispara consulta
+			baixas.add(new EventoEstoque(pedido.getId(), item.getProduto().getId(), item.getQuantidade(), agora));
+		}
+		eventos.saveAll(baixas);
+		return pedido;
+	}
+}
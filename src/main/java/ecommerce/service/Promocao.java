@@ -0,0 +1,63 @@
+package ecommerce.service;
+
+import ecommerce.entity.TipoProduto;
+
+/*
+ * Uma promoção de tipo de produto, como configurada em ecommerce.precos.promocoes:
+ * "eletronico:percentual:10" dá 10% sobre os eletrônicos do carrinho e "alimento:leve-pague:3:2"
+ * dá uma unidade de alimento grátis a cada três, pelo menor preço entre os alimentos do carrinho.
+ */
+public record Promocao(TipoProduto tipo, int percentual, int leve, int pague) {
+
+	public static Promocao percentual(TipoProduto tipo, int percentual) {
+		if (percentual < 0 || percentual > 100) {
+			throw new IllegalArgumentException("Percentuais precisam estar entre 0 e 100.");
+		}
+		return new Promocao(tipo, percentual, 0, 0);
+	}
+
+	public static Promocao levePague(TipoProduto tipo, int leve, int pague) {
+		if (pague < 1 || leve <= pague) {
+			throw new IllegalArgumentException("No leve-pague é preciso pagar ao menos uma unidade e levar mais do que paga.");
+		}
+		return new Promocao(tipo, 0, leve, pague);
+	}
+
+	public static Promocao ler(String definicao) {
+		String[] partes = definicao.trim().split("\\s*:\\s*");
+		TipoProduto tipo = tipo(partes[0], definicao);
+		if (partes.length == 3 && partes[1].equals("percentual")) {
+			return percentual(tipo, inteiro(partes[2], definicao));
+		}
+		if (partes.length == 4 && partes[1].equals("leve-pague")) {
+			return levePague(tipo, inteiro(partes[2], definicao), inteiro(partes[3], definicao));
+		}
+		throw invalida(definicao);
+	}
+
+	boolean levePague() {
+		return leve > 0;
+	}
+
+	private static TipoProduto tipo(String valor, String definicao) {
+		for (TipoProduto tipo : TipoProduto.values()) {
+			if (tipo.name().equalsIgnoreCase(valor)) {
+				return tipo;
+			}
+		}
+		throw invalida(definicao);
+	}
+
+	private static int inteiro(String valor, String definicao) {
+		try {
+			return Integer.parseInt(valor);
+		} catch (NumberFormatException e) {
+			throw invalida(definicao);
+		}
+	}
+
+	private static IllegalArgumentException invalida(String definicao) {
+		return new IllegalArgumentException("Promoção inválida: " + definicao
+				+ ". Use tipo:percentual:P ou tipo:leve-pague:N:M.");
+	}
+}
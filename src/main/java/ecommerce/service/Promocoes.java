@@ -0,0 +1,201 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+
+/*
+ * Promoções por tipo de produto já compiladas, indexadas pelo ordinal do TipoProduto. A passada
+ * da precificação soma cada item só nos acumuladores do seu tipo (valor, quantidade e menor
+ * preço); no fim cada tipo recebe o maior desconto entre as suas promoções, que não se acumulam.
+ * O percentual de cada tipo já é o maior configurado e as unidades grátis do leve-pague vêm de
+ * uma tabela por quantidade montada aqui, então o custo por carrinho não cresce com as regras.
+ */
+public final class Promocoes {
+
+	public static final Promocoes NENHUMA = compilar(List.of());
+
+	private static final int TIPOS = TipoProduto.values().length;
+
+	// Unidades grátis tabeladas até esta quantidade; acima dela, calculadas regra a regra
+	private static final int QUANTIDADES_TABELADAS = 256;
+
+	private final long[] percentuais;
+	private final int[][] leves;
+	private final int[][] gratisPorLeve;
+	private final long[][] gratisPorQuantidade;
+	private final boolean vazia;
+
+	private Promocoes(long[] percentuais, int[][] leves, int[][] gratisPorLeve) {
+		this.percentuais = percentuais;
+		this.leves = leves;
+		this.gratisPorLeve = gratisPorLeve;
+		this.gratisPorQuantidade = new long[TIPOS][];
+		boolean semRegras = true;
+		for (int tipo = 0; tipo < TIPOS; tipo++) {
+			semRegras &= percentuais[tipo] == 0 && leves[tipo].length == 0;
+			if (leves[tipo].length > 0) {
+				long[] tabela = new long[QUANTIDADES_TABELADAS];
+				for (int quantidade = 0; quantidade < tabela.length; quantidade++) {
+					tabela[quantidade] = calcularGratis(tipo, quantidade);
+				}
+				gratisPorQuantidade[tipo] = tabela;
+			}
+		}
+		this.vazia = semRegras;
+	}
+
+	public static Promocoes compilar(List<Promocao> promocoes) {
+		long[] percentuais = new long[TIPOS];
+		int[][] leves = new int[TIPOS][0];
+		int[][] gratis = new int[TIPOS][0];
+		for (Promocao promocao : promocoes) {
+			int tipo = promocao.tipo().ordinal();
+			if (promocao.levePague()) {
+				leves[tipo] = Arrays.copyOf(leves[tipo], leves[tipo].length + 1);
+				gratis[tipo] = Arrays.copyOf(gratis[tipo], gratis[tipo].length + 1);
+				leves[tipo][leves[tipo].length - 1] = promocao.leve();
+				gratis[tipo][gratis[tipo].length - 1] = promocao.leve() - promocao.pague();
+			} else {
+				percentuais[tipo] = Math.max(percentuais[tipo], promocao.percentual());
+			}
+		}
+		return new Promocoes(percentuais, leves, gratis);
+	}
+
+	public boolean vazia() {
+		return vazia;
+	}
+
+	// Continua o resumo das RegrasPreco com as regras de cada tipo
+	long resumir(long resumo) {
+		resumo = RegrasPreco.resumir(resumo, percentuais);
+		for (int tipo = 0; tipo < TIPOS; tipo++) {
+			resumo = RegrasPreco.resumir(resumo, leves[tipo]);
+			resumo = RegrasPreco.resumir(resumo, gratisPorLeve[tipo]);
+		}
+		return resumo;
+	}
+
+	Acumuladores acumuladores() {
+		return new Acumuladores();
+	}
+
+	// Soma dos descontos de cada tipo em centavos, cada um arredondado em HALF_UP
+	long descontoCentavos(Acumuladores acumuladores) {
+		long desconto = 0;
+		for (int tipo = 0; tipo < TIPOS; tipo++) {
+			long quantidade = acumuladores.quantidades[tipo];
+			if (quantidade == 0) {
+				continue;
+			}
+			long doTipo = 0;
+			if (percentuais[tipo] > 0) {
+				doTipo = CalculadoraCusto.arredondarCentesimos(
+						Math.multiplyExact(acumuladores.valores[tipo], percentuais[tipo]));
+			}
+			if (leves[tipo].length > 0) {
+				long gratis = gratis(tipo, quantidade);
+				if (gratis > 0) {
+					doTipo = Math.max(doTipo, Math.multiplyExact(gratis, acumuladores.menoresPrecos[tipo]));
+				}
+			}
+			desconto = Math.addExact(desconto, doTipo);
+		}
+		return desconto;
+	}
+
+	// Mesmo desconto com BigDecimal, em uma passada sobre os itens, para o cálculo exato
+	BigDecimal descontoExato(List<ItemCompra> itens) {
+		BigDecimal[] valores = new BigDecimal[TIPOS];
+		long[] quantidades = new long[TIPOS];
+		boolean[] estourou = new boolean[TIPOS];
+		BigDecimal[] menoresPrecos = new BigDecimal[TIPOS];
+		for (ItemCompra item : itens) {
+			Produto produto = item.getProduto();
+			if (produto.getTipo() == null) {
+				continue;
+			}
+			int tipo = produto.getTipo().ordinal();
+			long quantidade = item.getQuantidade();
+			BigDecimal valor = produto.getPreco().multiply(BigDecimal.valueOf(quantidade));
+			valores[tipo] = valores[tipo] == null ? valor : valores[tipo].add(valor);
+			try {
+				quantidades[tipo] = Math.addExact(quantidades[tipo], quantidade);
+			} catch (ArithmeticException e) {
+				estourou[tipo] = true;
+			}
+			if (quantidade > 0 && (menoresPrecos[tipo] == null || produto.getPreco().compareTo(menoresPrecos[tipo]) < 0)) {
+				menoresPrecos[tipo] = produto.getPreco();
+			}
+		}
+
+		BigDecimal desconto = BigDecimal.ZERO;
+		for (int tipo = 0; tipo < TIPOS; tipo++) {
+			if (valores[tipo] == null || quantidades[tipo] == 0 && !estourou[tipo]) {
+				continue;
+			}
+			BigDecimal doTipo = BigDecimal.ZERO;
+			if (percentuais[tipo] > 0) {
+				doTipo = valores[tipo].multiply(BigDecimal.valueOf(percentuais[tipo], 2)).setScale(2, RoundingMode.HALF_UP);
+			}
+			if (leves[tipo].length > 0 && menoresPrecos[tipo] != null) {
+				// Quantidade acima de um long não acontece com carrinhos reais; o leve-pague fica de fora
+				long gratis = estourou[tipo] ? 0 : gratis(tipo, quantidades[tipo]);
+				if (gratis > 0) {
+					doTipo = doTipo.max(menoresPrecos[tipo].multiply(BigDecimal.valueOf(gratis))
+							.setScale(2, RoundingMode.HALF_UP));
+				}
+			}
+			desconto = desconto.add(doTipo);
+		}
+		return desconto;
+	}
+
+	private long gratis(int tipo, long quantidade) {
+		if (quantidade <= 0) {
+			return 0;
+		}
+		if (quantidade < QUANTIDADES_TABELADAS) {
+			return gratisPorQuantidade[tipo][(int) quantidade];
+		}
+		return calcularGratis(tipo, quantidade);
+	}
+
+	private long calcularGratis(int tipo, long quantidade) {
+		long melhor = 0;
+		for (int regra = 0; regra < leves[tipo].length; regra++) {
+			melhor = Math.max(melhor, quantidade / leves[tipo][regra] * gratisPorLeve[tipo][regra]);
+		}
+		return melhor;
+	}
+
+	// Estado da passada sobre os itens: valor em centavos, unidades e menor preço unitário por tipo
+	static final class Acumuladores {
+
+		private final long[] valores = new long[TIPOS];
+		private final long[] quantidades = new long[TIPOS];
+		private final long[] menoresPrecos = new long[TIPOS];
+
+		private Acumuladores() {
+			Arrays.fill(menoresPrecos, Long.MAX_VALUE);
+		}
+
+		void somar(TipoProduto tipoProduto, long precoCentavos, long quantidade, long valorCentavos) {
+			if (tipoProduto == null) {
+				return;
+			}
+			int tipo = tipoProduto.ordinal();
+			valores[tipo] = Math.addExact(valores[tipo], valorCentavos);
+			quantidades[tipo] = Math.addExact(quantidades[tipo], quantidade);
+			if (quantidade > 0 && precoCentavos < menoresPrecos[tipo]) {
+				menoresPrecos[tipo] = precoCentavos;
+			}
+		}
+	}
+}
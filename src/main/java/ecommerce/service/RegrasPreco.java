@@ -0,0 +1,244 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import ecommerce.entity.TipoCliente;
+
+/*
+ * Tabelas de frete, desconto e promoções já compiladas para a precificação: limites ordenados em
+ * arrays primitivos, valores em centavos e percentuais inteiros. Instâncias são imutáveis, então uma
+ * precificação que leu a tabela uma vez a usa inteira mesmo que outra seja publicada no meio.
+ */
+public final class RegrasPreco {
+
+	public static final RegrasPreco PADRAO = compilar(
+			List.of(5, 10, 50),
+			List.of(BigDecimal.ZERO, BigDecimal.valueOf(2), BigDecimal.valueOf(4), BigDecimal.valueOf(7)),
+			List.of(BigDecimal.ONE, new BigDecimal("0.5"), BigDecimal.ZERO),
+			List.of(BigDecimal.valueOf(500), BigDecimal.valueOf(1000)),
+			List.of(10, 20));
+
+	private static final long IMPRESSAO_INICIAL = 0xcbf29ce484222325L;
+
+	// Faixa i vale para pesos acima de limitesPeso[i - 1] até limitesPeso[i]
+	private final int[] limitesPeso;
+	private final long[] centavosPorKg;
+	private final BigDecimal[] reaisPorKg;
+
+	// Percentual do frete pago por tipo de cliente, indexado pelo ordinal
+	private final long[] percentuaisFrete;
+	private final BigDecimal[] fatoresFrete;
+
+	// Desconto de percentuaisDesconto[i] a partir de limitesDesconto[i], inclusive
+	private final long[] limitesDescontoCentavos;
+	private final BigDecimal[] limitesDesconto;
+	private final long[] percentuaisDesconto;
+
+	private final Promocoes promocoes;
+	private final long impressao;
+
+	private RegrasPreco(int[] limitesPeso, long[] centavosPorKg, long[] percentuaisFrete,
+			long[] limitesDescontoCentavos, long[] percentuaisDesconto, Promocoes promocoes) {
+		this.limitesPeso = limitesPeso;
+		this.centavosPorKg = centavosPorKg;
+		this.percentuaisFrete = percentuaisFrete;
+		this.limitesDescontoCentavos = limitesDescontoCentavos;
+		this.percentuaisDesconto = percentuaisDesconto;
+		this.promocoes = promocoes;
+
+		this.reaisPorKg = new BigDecimal[centavosPorKg.length];
+		for (int i = 0; i < centavosPorKg.length; i++) {
+			reaisPorKg[i] = BigDecimal.valueOf(centavosPorKg[i], 2);
+		}
+		this.fatoresFrete = new BigDecimal[percentuaisFrete.length];
+		for (int i = 0; i < percentuaisFrete.length; i++) {
+			fatoresFrete[i] = BigDecimal.valueOf(percentuaisFrete[i], 2);
+		}
+		this.limitesDesconto = new BigDecimal[limitesDescontoCentavos.length];
+		for (int i = 0; i < limitesDescontoCentavos.length; i++) {
+			limitesDesconto[i] = BigDecimal.valueOf(limitesDescontoCentavos[i], 2);
+		}
+		long resumo = resumir(IMPRESSAO_INICIAL, limitesPeso);
+		resumo = resumir(resumo, centavosPorKg);
+		resumo = resumir(resumo, percentuaisFrete);
+		resumo = resumir(resumo, limitesDescontoCentavos);
+		resumo = resumir(resumo, percentuaisDesconto);
+		this.impressao = promocoes.resumir(resumo);
+	}
+
+	/*
+	 * Valida e converte a configuração. Valores monetários aceitam até duas casas decimais e os
+	 * fatores por tipo de cliente são frações de 0 a 1 com até duas casas (percentual inteiro).
+	 */
+	public static RegrasPreco compilar(List<Integer> limitesPeso, List<BigDecimal> reaisPorKg,
+			List<BigDecimal> fatoresFrete, List<BigDecimal> limitesDesconto, List<Integer> percentuaisDesconto) {
+		return compilar(limitesPeso, reaisPorKg, fatoresFrete, limitesDesconto, percentuaisDesconto, List.of());
+	}
+
+	public static RegrasPreco compilar(List<Integer> limitesPeso, List<BigDecimal> reaisPorKg,
+			List<BigDecimal> fatoresFrete, List<BigDecimal> limitesDesconto, List<Integer> percentuaisDesconto,
+			List<Promocao> promocoes) {
+		if (reaisPorKg.size() != limitesPeso.size() + 1) {
+			throw new IllegalArgumentException("O frete precisa de um preço por kg para cada faixa de peso.");
+		}
+		if (fatoresFrete.size() != TipoCliente.values().length) {
+			throw new IllegalArgumentException("O frete precisa de um fator para cada tipo de cliente.");
+		}
+		if (percentuaisDesconto.size() != limitesDesconto.size()) {
+			throw new IllegalArgumentException("O desconto precisa de um percentual para cada limite.");
+		}
+
+		int[] pesos = new int[limitesPeso.size()];
+		for (int i = 0; i < pesos.length; i++) {
+			pesos[i] = limitesPeso.get(i);
+			if (i > 0 && pesos[i] <= pesos[i - 1]) {
+				throw new IllegalArgumentException("Limites de peso precisam ser crescentes.");
+			}
+		}
+
+		long[] centavos = new long[reaisPorKg.size()];
+		for (int i = 0; i < centavos.length; i++) {
+			centavos[i] = centesimos(reaisPorKg.get(i), "Preço por kg");
+		}
+
+		long[] percentuaisFrete = new long[fatoresFrete.size()];
+		for (int i = 0; i < percentuaisFrete.length; i++) {
+			percentuaisFrete[i] = percentual(centesimos(fatoresFrete.get(i), "Fator de frete"));
+		}
+
+		long[] limites = new long[limitesDesconto.size()];
+		long[] percentuais = new long[percentuaisDesconto.size()];
+		for (int i = 0; i < limites.length; i++) {
+			limites[i] = centesimos(limitesDesconto.get(i), "Limite de desconto");
+			percentuais[i] = percentual(percentuaisDesconto.get(i));
+			if (i > 0 && limites[i] <= limites[i - 1]) {
+				throw new IllegalArgumentException("Limites de desconto precisam ser crescentes.");
+			}
+		}
+
+		return new RegrasPreco(pesos, centavos, percentuaisFrete, limites, percentuais, Promocoes.compilar(promocoes));
+	}
+
+	public Promocoes promocoes() {
+		return promocoes;
+	}
+
+	/*
+	 * Resumo do conteúdo das tabelas compiladas, sem nada da instância que as compilou: a mesma
+	 * configuração dá a mesma impressão em qualquer processo, e tabelas diferentes dão outra.
+	 */
+	public long impressao() {
+		return impressao;
+	}
+
+	long centavosPorKg(int pesoTotal) {
+		return centavosPorKg[faixaPeso(pesoTotal)];
+	}
+
+	BigDecimal reaisPorKg(int pesoTotal) {
+		return reaisPorKg[faixaPeso(pesoTotal)];
+	}
+
+	long percentualFrete(TipoCliente tipoCliente) {
+		return percentuaisFrete[tipoCliente.ordinal()];
+	}
+
+	BigDecimal fatorFrete(TipoCliente tipoCliente) {
+		return fatoresFrete[tipoCliente.ordinal()];
+	}
+
+	long percentualDesconto(long custoProdutosCentavos) {
+		// Quantidade de limites <= custo, por busca binária
+		int inicio = 0;
+		int fim = limitesDescontoCentavos.length;
+		while (inicio < fim) {
+			int meio = (inicio + fim) >>> 1;
+			if (limitesDescontoCentavos[meio] <= custoProdutosCentavos) {
+				inicio = meio + 1;
+			} else {
+				fim = meio;
+			}
+		}
+		return inicio == 0 ? 0 : percentuaisDesconto[inicio - 1];
+	}
+
+	BigDecimal fracaoDesconto(BigDecimal custoProdutos) {
+		int inicio = 0;
+		int fim = limitesDesconto.length;
+		while (inicio < fim) {
+			int meio = (inicio + fim) >>> 1;
+			if (limitesDesconto[meio].compareTo(custoProdutos) <= 0) {
+				inicio = meio + 1;
+			} else {
+				fim = meio;
+			}
+		}
+		return inicio == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(percentuaisDesconto[inicio - 1], 2);
+	}
+
+	int quantidadeFaixasPeso() {
+		return centavosPorKg.length;
+	}
+
+	// Rótulo da faixa nas métricas: isento, ate_<limite> ou acima_<último limite>
+	String rotuloFaixaPeso(int faixa) {
+		if (centavosPorKg[faixa] == 0) {
+			return "isento";
+		}
+		if (limitesPeso.length == 0) {
+			return "unica";
+		}
+		return faixa < limitesPeso.length ? "ate_" + limitesPeso[faixa] : "acima_" + limitesPeso[faixa - 1];
+	}
+
+	// Quantidade de limites < peso, por busca binária; é o índice da faixa
+	int faixaPeso(int pesoTotal) {
+		int inicio = 0;
+		int fim = limitesPeso.length;
+		while (inicio < fim) {
+			int meio = (inicio + fim) >>> 1;
+			if (limitesPeso[meio] < pesoTotal) {
+				inicio = meio + 1;
+			} else {
+				fim = meio;
+			}
+		}
+		return inicio;
+	}
+
+	// FNV-1a de 64 bits sobre os valores, com o tamanho antes de cada array para separar as tabelas
+	static long resumir(long resumo, long valor) {
+		return (resumo ^ valor) * 0x100000001b3L;
+	}
+
+	static long resumir(long resumo, long[] valores) {
+		resumo = resumir(resumo, valores.length);
+		for (long valor : valores) {
+			resumo = resumir(resumo, valor);
+		}
+		return resumo;
+	}
+
+	static long resumir(long resumo, int[] valores) {
+		resumo = resumir(resumo, valores.length);
+		for (int valor : valores) {
+			resumo = resumir(resumo, valor);
+		}
+		return resumo;
+	}
+
+	private static long centesimos(BigDecimal valor, String nome) {
+		if (valor.signum() < 0 || valor.stripTrailingZeros().scale() > 2) {
+			throw new IllegalArgumentException(nome + " precisa ser positivo e ter no máximo duas casas decimais.");
+		}
+		return valor.movePointRight(2).longValueExact();
+	}
+
+	private static long percentual(long valor) {
+		if (valor < 0 || valor > 100) {
+			throw new IllegalArgumentException("Percentuais precisam estar entre 0 e 100.");
+		}
+		return valor;
+	}
+}
@@ -0,0 +1,35 @@
+package ecommerce.service;
+
+import java.util.function.LongSupplier;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+import ecommerce.entity.ItemCompra;
+import jakarta.persistence.EntityManagerFactory;
+
+/*
+ * Ids definitivos de itens, tirados do próprio gerador do ItemCompra fora de qualquer transação.
+ * O gerador entrega os ids do bloco já reservado; a sessão sem estado só abre conexão quando o
+ * bloco acaba, uma vez a cada 500 itens.
+ */
+final class SequenciaItemCompra implements LongSupplier {
+
+	private final SessionFactoryImplementor sessionFactory;
+	private final IdentifierGenerator gerador;
+
+	SequenciaItemCompra(EntityManagerFactory entityManagerFactory) {
+		this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+		this.gerador = sessionFactory.getMappingMetamodel().getEntityDescriptor(ItemCompra.class)
+				.getIdentifierGenerator();
+	}
+
+	@Override
+	public long getAsLong() {
+		try (StatelessSession sessao = sessionFactory.openStatelessSession()) {
+			return ((Number) gerador.generate((SharedSessionContractImplementor) sessao, null)).longValue();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.TipoCliente;
+
+/*
+ * Regras de frete, desconto e promoções vindas das propriedades ecommerce.precos.*. Uma mudança nessas
+ * propriedades em tempo de execução (POST /actuator/refresh ou /actuator/env) compila uma
+ * tabela nova e a publica com uma única escrita volátil; quem está precificando continua com a
+ * tabela que já leu. Configuração inválida é recusada e a tabela anterior continua valendo.
+ */
+@Component
+public class TabelasPreco {
+
+	private static final Logger log = LoggerFactory.getLogger(TabelasPreco.class);
+
+	private static final String PREFIXO = "ecommerce.precos.";
+
+	private final Environment environment;
+	private volatile RegrasPreco atuais;
+
+	public TabelasPreco(RegrasPreco regras) {
+		this.environment = null;
+		this.atuais = regras;
+	}
+
+	@Autowired
+	public TabelasPreco(Environment environment) {
+		this.environment = environment;
+		this.atuais = ler(environment);
+	}
+
+	public RegrasPreco atuais() {
+		return atuais;
+	}
+
+	public void publicar(RegrasPreco regras) {
+		this.atuais = regras;
+	}
+
+	@EventListener
+	public void aoMudarAmbiente(EnvironmentChangeEvent evento) {
+		if (environment == null || evento.getKeys().stream().noneMatch(chave -> chave.startsWith(PREFIXO))) {
+			return;
+		}
+		try {
+			publicar(ler(environment));
+			log.info("Tabelas de frete e desconto recarregadas.");
+		} catch (RuntimeException e) {
+			log.warn("Configuração de preços recusada, mantendo as tabelas anteriores: {}", e.getMessage());
+		}
+	}
+
+	private static RegrasPreco ler(Environment environment) {
+		RegrasPreco padrao = RegrasPreco.PADRAO;
+		List<BigDecimal> fatores = Arrays.stream(TipoCliente.values())
+				.map(tipo -> environment.getProperty(PREFIXO + "frete.fator." + tipo.name().toLowerCase(Locale.ROOT),
+						BigDecimal.class, padrao.fatorFrete(tipo)))
+				.toList();
+
+		return RegrasPreco.compilar(
+				inteiros(environment.getProperty(PREFIXO + "frete.limites-peso", "5,10,50")),
+				decimais(environment.getProperty(PREFIXO + "frete.preco-por-kg", "0,2,4,7")),
+				fatores,
+				decimais(environment.getProperty(PREFIXO + "desconto.limites", "500,1000")),
+				inteiros(environment.getProperty(PREFIXO + "desconto.percentuais", "10,20")),
+				separar(environment.getProperty(PREFIXO + "promocoes", "")).stream().map(Promocao::ler).toList());
+	}
+
+	private static List<Integer> inteiros(String valores) {
+		return separar(valores).stream().map(Integer::valueOf).toList();
+	}
+
+	private static List<BigDecimal> decimais(String valores) {
+		return separar(valores).stream().map(BigDecimal::new).toList();
+	}
+
+	private static List<String> separar(String valores) {
+		return Arrays.stream(valores.split(","))
+				.map(String::trim)
+				.filter(valor -> !valor.isEmpty())
+				.toList();
+	}
+}
@@ -0,0 +1,310 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.service.CalculadoraCusto;
+import ecommerce.service.Promocao;
+import ecommerce.service.RegrasPreco;
+import ecommerce.service.TabelasPreco;
+
+class CalculadoraCustoTest {
+
+    private static final int CASOS_ALEATORIOS = 20_000;
+
+    private static final String[] PRECOS_LIMITE = {
+            "0", "0.01", "0.005", "499.99", "500", "500.00", "500.001", "999.99", "1000", "1000.00", "1E+3",
+            "-0.01", "0.125", "33.333", "92233720368547758.07"
+    };
+
+    private final CalculadoraCusto calculadora = new CalculadoraCusto();
+
+    @Test
+    void calcularCustoTotal_DeveSerIdenticoAoCalculoOriginal_ParaCarrinhosAleatorios() {
+        long semente = System.nanoTime();
+        Random random = new Random(semente);
+
+        for (int caso = 0; caso < CASOS_ALEATORIOS; caso++) {
+            CarrinhoDeCompras carrinho = gerarCarrinho(random);
+
+            BigDecimal esperado = custoTotalOriginal(carrinho);
+            BigDecimal obtido = calculadora.calcularCustoTotal(carrinho);
+
+            assertEquals(esperado, obtido, "semente " + semente + ", caso " + caso);
+        }
+    }
+
+    @Test
+    void calcularCustoTotal_DeveSerIdenticoAoCalculoOriginal_NosLimitesDeDescontoEFrete() {
+        for (TipoCliente tipo : TipoCliente.values()) {
+            for (String preco : PRECOS_LIMITE) {
+                for (int peso = -1; peso <= 52; peso++) {
+                    CarrinhoDeCompras carrinho = criarCarrinho(tipo, List.of(criarItem(new BigDecimal(preco), peso, 1L)));
+
+                    assertEquals(custoTotalOriginal(carrinho), calculadora.calcularCustoTotal(carrinho),
+                            tipo + ", preço " + preco + ", peso " + peso);
+                }
+            }
+        }
+    }
+
+    @Test
+    void calcularCustoTotal_DeveSerIdenticoAoCalculoOriginal_QuandoCentavosEstourariamLong() {
+        CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE, List.of(
+                criarItem(new BigDecimal("9999999999999.99"), 1, Long.MAX_VALUE / 1000),
+                criarItem(new BigDecimal("0.10"), Integer.MAX_VALUE, 3L)));
+
+        assertEquals(custoTotalOriginal(carrinho), calculadora.calcularCustoTotal(carrinho));
+    }
+
+    @Test
+    void calcularCustoTotal_DeveSerIdenticoAoCalculoOriginal_QuandoUsarTotaisMantidosNoCarrinho() {
+        long semente = System.nanoTime();
+        Random random = new Random(semente);
+
+        for (int caso = 0; caso < 2_000; caso++) {
+            TipoCliente tipo = TipoCliente.values()[random.nextInt(TipoCliente.values().length)];
+            CarrinhoDeCompras carrinho = criarCarrinho(tipo, new ArrayList<>());
+            carrinho.recalcularTotais(1L);
+            for (int operacao = random.nextInt(30); operacao > 0; operacao--) {
+                List<ItemCompra> itens = carrinho.getItens();
+                int escolha = itens.isEmpty() ? 0 : random.nextInt(3);
+                if (escolha == 0) {
+                    carrinho.adicionarItem(criarItem(gerarPreco(random), random.nextInt(25), gerarQuantidade(random)));
+                } else if (escolha == 1) {
+                    carrinho.alterarQuantidade(itens.get(random.nextInt(itens.size())), gerarQuantidade(random));
+                } else {
+                    carrinho.removerItem(itens.get(random.nextInt(itens.size())));
+                }
+            }
+            carrinho.setTotaisConferidos(carrinho.totaisValidos(1L));
+
+            assertTrue(carrinho.isTotaisConferidos());
+            assertEquals(custoTotalOriginal(carrinho), calculadora.calcularCustoTotal(carrinho),
+                    "semente " + semente + ", caso " + caso);
+        }
+    }
+
+    @Test
+    void totaisValidos_DeveSerFalso_QuandoVersaoDePrecosMudar() {
+        CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE,
+                new ArrayList<>(List.of(criarItem(BigDecimal.TEN, 2, 3L))));
+
+        assertFalse(carrinho.totaisValidos(1L));
+        carrinho.recalcularTotais(1L);
+
+        assertTrue(carrinho.totaisValidos(1L));
+        assertFalse(carrinho.totaisValidos(2L));
+        assertEquals(new BigDecimal("30"), carrinho.getSubtotal());
+        assertEquals(6, carrinho.getPesoTotal());
+    }
+
+    @Test
+    void calcularCustoTotalExato_DeveSerIdenticoAoCalculoOriginal() {
+        Random random = new Random(42);
+        for (int caso = 0; caso < 1_000; caso++) {
+            CarrinhoDeCompras carrinho = gerarCarrinho(random);
+            assertEquals(custoTotalOriginal(carrinho), calculadora.calcularCustoTotalExato(carrinho));
+        }
+    }
+
+    @Test
+    void calcularCustoTotal_DeveCoincidirComCalculoExato_QuandoRegrasForemPersonalizadas() {
+        RegrasPreco regras = RegrasPreco.compilar(
+                List.of(3, 8, 20, 100),
+                List.of(BigDecimal.ZERO, new BigDecimal("1.25"), new BigDecimal("2.5"), new BigDecimal("3.75"),
+                        new BigDecimal("9.99")),
+                List.of(BigDecimal.ONE, new BigDecimal("0.35"), new BigDecimal("0.1")),
+                List.of(BigDecimal.valueOf(100), BigDecimal.valueOf(300), new BigDecimal("800.50")),
+                List.of(5, 12, 25));
+        CalculadoraCusto personalizada = new CalculadoraCusto(new TabelasPreco(regras));
+        Random random = new Random(7);
+
+        for (int caso = 0; caso < 5_000; caso++) {
+            CarrinhoDeCompras carrinho = gerarCarrinho(random);
+            assertEquals(personalizada.calcularCustoTotalExato(carrinho), personalizada.calcularCustoTotal(carrinho),
+                    "caso " + caso);
+        }
+    }
+
+    @Test
+    void calcularCustoTotal_DeveAplicarFaixasConfiguradas_QuandoRegrasForemPersonalizadas() {
+        RegrasPreco regras = RegrasPreco.compilar(
+                List.of(3, 8),
+                List.of(BigDecimal.ZERO, new BigDecimal("1.5"), BigDecimal.TEN),
+                List.of(BigDecimal.ONE, new BigDecimal("0.5"), BigDecimal.ZERO),
+                List.of(BigDecimal.valueOf(100)),
+                List.of(15));
+        CalculadoraCusto personalizada = new CalculadoraCusto(new TabelasPreco(regras));
+
+        // 3 kg ainda é isento; 4 kg entra na segunda faixa; 9 kg na terceira
+        assertEquals(new BigDecimal("50.00"), personalizada.calcularCustoTotal(
+                criarCarrinho(TipoCliente.BRONZE, List.of(criarItem(BigDecimal.valueOf(50), 3, 1L)))));
+        assertEquals(new BigDecimal("56.00"), personalizada.calcularCustoTotal(
+                criarCarrinho(TipoCliente.BRONZE, List.of(criarItem(BigDecimal.valueOf(50), 4, 1L)))));
+        assertEquals(new BigDecimal("130.00"), personalizada.calcularCustoTotal(
+                criarCarrinho(TipoCliente.PRATA, List.of(criarItem(BigDecimal.valueOf(100), 9, 1L)))));
+    }
+
+    @Test
+    void calcularCustoTotal_DeveAplicarMaiorPromocaoDeCadaTipoAntesDasFaixasDeDesconto() {
+        CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE, List.of(
+                criarItem(BigDecimal.valueOf(300), 0, 2L, TipoProduto.ELETRONICO),
+                criarItem(BigDecimal.TEN, 0, 2L, TipoProduto.ALIMENTO),
+                criarItem(BigDecimal.valueOf(5), 0, 2L, TipoProduto.ALIMENTO),
+                criarItem(BigDecimal.valueOf(50), 0, 1L, TipoProduto.LIVRO)));
+        CalculadoraCusto levePague = calculadoraComPromocoes(
+                Promocao.percentual(TipoProduto.ELETRONICO, 10), Promocao.levePague(TipoProduto.ALIMENTO, 3, 2));
+        CalculadoraCusto levePagueOuPercentual = calculadoraComPromocoes(
+                Promocao.percentual(TipoProduto.ELETRONICO, 10), Promocao.levePague(TipoProduto.ALIMENTO, 3, 2),
+                Promocao.percentual(TipoProduto.ALIMENTO, 20), Promocao.percentual(TipoProduto.ELETRONICO, 5));
+
+        // 680 em produtos: 60 nos eletrônicos e um alimento grátis pelo menor preço (5); 615 com 10% de desconto
+        assertEquals(new BigDecimal("553.50"), levePague.calcularCustoTotal(carrinho));
+        assertEquals(new CalculadoraCusto.Detalhamento(new BigDecimal("680.00"), new BigDecimal("65.00"),
+                new BigDecimal("61.50"), new BigDecimal("0.00"), new BigDecimal("553.50")),
+                levePague.detalhar(carrinho, TipoCliente.BRONZE));
+        // Nos alimentos 20% de 30 (6) supera o leve-pague; nos eletrônicos vale o maior percentual
+        assertEquals(new BigDecimal("552.60"), levePagueOuPercentual.calcularCustoTotal(carrinho));
+    }
+
+    @Test
+    void calcularCustoTotal_DeveCoincidirComCalculoExato_QuandoHouverPromocoes() {
+        long semente = System.nanoTime();
+        Random random = new Random(semente);
+
+        for (int caso = 0; caso < 5_000; caso++) {
+            Promocao[] promocoes = new Promocao[random.nextInt(12)];
+            for (int i = 0; i < promocoes.length; i++) {
+                TipoProduto tipo = TipoProduto.values()[random.nextInt(TipoProduto.values().length)];
+                int leve = 2 + random.nextInt(6);
+                promocoes[i] = random.nextBoolean() ? Promocao.percentual(tipo, random.nextInt(101))
+                        : Promocao.levePague(tipo, leve, 1 + random.nextInt(leve - 1));
+            }
+            CalculadoraCusto calculadoraPromocional = calculadoraComPromocoes(promocoes);
+            CarrinhoDeCompras carrinho = gerarCarrinho(random);
+            carrinho.getItens().forEach(item -> item.getProduto().setTipo(
+                    TipoProduto.values()[random.nextInt(TipoProduto.values().length)]));
+            TipoCliente tipo = carrinho.getCliente().getTipo();
+
+            BigDecimal exato = calculadoraPromocional.calcularCustoTotalExato(carrinho);
+            assertEquals(exato, calculadoraPromocional.calcularCustoTotal(carrinho), "semente " + semente + ", caso " + caso);
+            assertEquals(exato, calculadoraPromocional.detalhar(carrinho, tipo).total(), "semente " + semente + ", caso " + caso);
+        }
+    }
+
+    // Geradores
+
+    private CarrinhoDeCompras gerarCarrinho(Random random) {
+        int quantidadeItens = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(12);
+        List<ItemCompra> itens = new ArrayList<>(quantidadeItens);
+        for (int i = 0; i < quantidadeItens; i++) {
+            itens.add(criarItem(gerarPreco(random), random.nextInt(25), gerarQuantidade(random)));
+        }
+        TipoCliente tipo = TipoCliente.values()[random.nextInt(TipoCliente.values().length)];
+        return criarCarrinho(tipo, itens);
+    }
+
+    private BigDecimal gerarPreco(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return new BigDecimal(PRECOS_LIMITE[random.nextInt(PRECOS_LIMITE.length)]);
+            case 1:
+                return BigDecimal.valueOf(random.nextInt(1_000_000), random.nextInt(5)); // até 4 casas
+            case 2:
+                return BigDecimal.valueOf(random.nextInt(200_000) - 1_000, 2); // alguns negativos
+            default:
+                return BigDecimal.valueOf(random.nextInt(150_000), 2);
+        }
+    }
+
+    private long gerarQuantidade(Random random) {
+        return random.nextInt(20) == 0 ? random.nextInt(1_000) : random.nextInt(6);
+    }
+
+    private ItemCompra criarItem(BigDecimal preco, int peso, long quantidade) {
+        Produto produto = new Produto();
+        produto.setPreco(preco);
+        produto.setPeso(peso);
+        return new ItemCompra(null, produto, quantidade);
+    }
+
+    private ItemCompra criarItem(BigDecimal preco, int peso, long quantidade, TipoProduto tipo) {
+        ItemCompra item = criarItem(preco, peso, quantidade);
+        item.getProduto().setTipo(tipo);
+        return item;
+    }
+
+    private CalculadoraCusto calculadoraComPromocoes(Promocao... promocoes) {
+        return new CalculadoraCusto(new TabelasPreco(RegrasPreco.compilar(List.of(5, 10, 50),
+                List.of(BigDecimal.ZERO, BigDecimal.valueOf(2), BigDecimal.valueOf(4), BigDecimal.valueOf(7)),
+                List.of(BigDecimal.ONE, new BigDecimal("0.5"), BigDecimal.ZERO),
+                List.of(BigDecimal.valueOf(500), BigDecimal.valueOf(1000)), List.of(10, 20), List.of(promocoes))));
+    }
+
+    private CarrinhoDeCompras criarCarrinho(TipoCliente tipo, List<ItemCompra> itens) {
+        Cliente cliente = new Cliente();
+        cliente.setTipo(tipo);
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setCliente(cliente);
+        carrinho.setItens(itens);
+        return carrinho;
+    }
+
+    // Cópia fiel do cálculo original de CompraService, usada como oráculo
+
+    private BigDecimal custoTotalOriginal(CarrinhoDeCompras carrinho) {
+        BigDecimal custoProdutos = carrinho.getItens().stream()
+                .map(item -> item.getProduto().getPreco().multiply(BigDecimal.valueOf(item.getQuantidade())))
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        BigDecimal desconto;
+        if (custoProdutos.compareTo(BigDecimal.valueOf(1000)) > -1) {
+            desconto = custoProdutos.multiply(BigDecimal.valueOf(0.2));
+        } else if (custoProdutos.compareTo(BigDecimal.valueOf(500)) > -1) {
+            desconto = custoProdutos.multiply(BigDecimal.valueOf(0.1));
+        } else {
+            desconto = BigDecimal.ZERO;
+        }
+
+        int pesoTotal = carrinho.getItens().stream()
+                .mapToInt(item -> item.getProduto().getPeso() * item.getQuantidade().intValue())
+                .sum();
+        BigDecimal custoFrete = BigDecimal.ZERO;
+        if (pesoTotal > 5 && pesoTotal <= 10) {
+            custoFrete = BigDecimal.valueOf(pesoTotal).multiply(BigDecimal.valueOf(2));
+        } else if (pesoTotal > 10 && pesoTotal <= 50) {
+            custoFrete = BigDecimal.valueOf(pesoTotal).multiply(BigDecimal.valueOf(4));
+        } else if (pesoTotal > 50) {
+            custoFrete = BigDecimal.valueOf(pesoTotal).multiply(BigDecimal.valueOf(7));
+        }
+        switch (carrinho.getCliente().getTipo()) {
+            case OURO:
+                custoFrete = BigDecimal.ZERO;
+                break;
+            case PRATA:
+                custoFrete = custoFrete.multiply(BigDecimal.valueOf(0.5));
+                break;
+            default:
+                break;
+        }
+
+        if (carrinho.getItens() == null || carrinho.getItens().isEmpty()) {
+            return BigDecimal.ZERO.setScale(2, RoundingMode.HALF_UP);
+        }
+        return custoProdutos.subtract(desconto).add(custoFrete).setScale(2, RoundingMode.HALF_UP);
+    }
+}
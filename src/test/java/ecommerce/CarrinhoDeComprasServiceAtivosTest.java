@@ -0,0 +1,225 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import ecommerce.dto.FinalizacaoCompraDTO;
+import ecommerce.dto.ItemCarrinhoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.CarrinhosAtivos;
+import ecommerce.service.CatalogoProdutos;
+import ecommerce.service.TabelasPreco;
+
+// Slabs de 192 bytes: um carrinho ativo guarda no máximo 8 itens; a expiração zero faz todos expirarem
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "ecommerce.carrinhos-ativos.habilitado=true",
+        "ecommerce.carrinhos-ativos.memoria-maxima=16KB",
+        "ecommerce.carrinhos-ativos.tamanho-slab=192B",
+        "ecommerce.carrinhos-ativos.expiracao=0s" })
+@Import({ CarrinhoDeComprasService.class, CatalogoProdutos.class, TabelasPreco.class, CarrinhosAtivos.class })
+class CarrinhoDeComprasServiceAtivosTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private CarrinhoDeComprasService carrinhoService;
+
+    @Autowired
+    private CarrinhosAtivos carrinhosAtivos;
+
+    private Statistics estatisticas;
+
+    private Long clienteId;
+
+    private Long carrinhoId;
+
+    private Long itemId;
+
+    private List<Long> produtoIds;
+
+    @BeforeEach
+    void setUp() {
+        Cliente cliente = entityManager.persist(new Cliente(null, "Cliente", "Endereço", TipoCliente.BRONZE));
+        clienteId = cliente.getId();
+        produtoIds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            produtoIds.add(entityManager.persist(
+                    new Produto(null, "Produto " + i, "Descrição", BigDecimal.TEN, 1, TipoProduto.LIVRO)).getId());
+        }
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras(null, cliente, new ArrayList<>(), null);
+        carrinho.adicionarItem(new ItemCompra(null, entityManager.find(Produto.class, produtoIds.get(0)), 1L));
+        carrinhoId = entityManager.persist(carrinho).getId();
+        itemId = carrinho.getItens().get(0).getId();
+
+        entityManager.flush();
+        entityManager.clear();
+
+        estatisticas = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        estatisticas.clear();
+    }
+
+    // O armazenamento é do contexto compartilhado e não volta com o rollback do teste
+    @AfterEach
+    void tearDown() {
+        carrinhosAtivos.retirar(carrinhoId, ativo -> ativo);
+    }
+
+    @Test
+    void adicionarItens_NaoDeveEscreverNoBanco_QuandoCarrinhoEstiverAtivo() {
+        // Act
+        carrinhoService.adicionarItem(carrinhoId, clienteId, produtoIds.get(1), 2L);
+        CarrinhoDeCompras alterado = carrinhoService.alterarQuantidade(carrinhoId, clienteId, itemId, 3L);
+        entityManager.flush();
+
+        // Assert
+        assertEquals(0, estatisticas.getEntityInsertCount());
+        assertEquals(0, estatisticas.getEntityUpdateCount());
+        assertEquals(1, carrinhosAtivos.quantidade());
+        assertEquals(new BigDecimal("50.00"), alterado.getSubtotal());
+        assertTrue(alterado.getItens().get(1).getId() > itemId);
+        // A versão do carrinho ativo muda a cada alteração e nunca repete uma do banco
+        long versao = carrinhoService.buscarVersao(carrinhoId, clienteId);
+        assertEquals(alterado.getVersao(), versao);
+        carrinhoService.removerItem(carrinhoId, clienteId, itemId);
+        assertTrue(carrinhoService.buscarVersao(carrinhoId, clienteId) > versao);
+    }
+
+    @Test
+    void alterarQuantidade_DeveRecusarOutroCliente_QuandoCarrinhoEstiverAtivoOuNoBanco() {
+        // Act & Assert
+        // Ainda nas tabelas: a ativação carrega o dono e a alteração é recusada antes de mudar os itens
+        IllegalArgumentException noBanco = assertThrows(IllegalArgumentException.class,
+                () -> carrinhoService.alterarQuantidade(carrinhoId, clienteId + 1, itemId, 9L));
+        carrinhoService.adicionarItem(carrinhoId, clienteId, produtoIds.get(1), 2L);
+        IllegalArgumentException ativo = assertThrows(IllegalArgumentException.class,
+                () -> carrinhoService.removerItem(carrinhoId, clienteId + 1, itemId));
+
+        assertEquals("Carrinho não encontrado.", noBanco.getMessage());
+        assertEquals("Carrinho não encontrado.", ativo.getMessage());
+        CarrinhoDeCompras carrinho = carrinhoService.buscarComProdutos(carrinhoId, clienteId);
+        assertEquals(List.of(1L, 2L), carrinho.getItens().stream().map(ItemCompra::getQuantidade).toList());
+    }
+
+    @Test
+    void buscarPorIds_NaoDeveGravarCarrinhoAtivo_QuandoLotePedirComOutroCliente() {
+        // Arrange
+        carrinhoService.adicionarItem(carrinhoId, clienteId, produtoIds.get(1), 2L);
+        estatisticas.clear();
+
+        // Act
+        Map<Long, CarrinhoDeCompras> carrinhos = carrinhoService.buscarPorIds(
+                List.of(new FinalizacaoCompraDTO(carrinhoId, clienteId + 1)));
+        entityManager.flush();
+
+        // Assert
+        assertTrue(carrinhos.isEmpty());
+        assertEquals(1, carrinhosAtivos.quantidade());
+        assertEquals(0, estatisticas.getEntityInsertCount());
+        assertEquals(0, estatisticas.getEntityUpdateCount());
+    }
+
+    @Test
+    void buscarComProdutos_DeveMontarCarrinhoAtivoComPrecosDoCatalogo() {
+        // Arrange
+        carrinhoService.adicionarItem(carrinhoId, clienteId, produtoIds.get(1), 2L);
+
+        // Act
+        CarrinhoDeCompras carrinho = carrinhoService.buscarComProdutos(carrinhoId, clienteId);
+
+        // Assert
+        assertEquals(2, carrinho.getItens().size());
+        assertEquals("Produto 1", carrinho.getItens().get(1).getProduto().getNome());
+        assertEquals(new BigDecimal("30.00"), carrinho.getSubtotal());
+        assertThrows(IllegalArgumentException.class, () -> carrinhoService.buscarComProdutos(carrinhoId, clienteId + 1));
+    }
+
+    @Test
+    void buscarPorCarrinhoIdEClienteId_DeveGravarCarrinhoAtivoNasTabelas() {
+        // Arrange
+        carrinhoService.adicionarItem(carrinhoId, clienteId, produtoIds.get(1), 2L);
+        CarrinhoDeCompras ativo = carrinhoService.adicionarItem(carrinhoId, clienteId, produtoIds.get(2), 1L);
+        carrinhoService.removerItem(carrinhoId, clienteId, itemId);
+        List<Long> idsAtivos = ativo.getItens().subList(1, 3).stream().map(ItemCompra::getId).toList();
+        // A ativação leu o carrinho sem acompanhamento de alterações
+        entityManager.clear();
+
+        // Act
+        CarrinhoDeCompras finalizado = carrinhoService.buscarPorCarrinhoIdEClienteId(carrinhoId, clienteId);
+        entityManager.flush();
+        entityManager.clear();
+
+        // Assert
+        assertEquals(0, carrinhosAtivos.quantidade());
+        assertEquals(new BigDecimal("30.00"), finalizado.getSubtotal());
+        CarrinhoDeCompras gravado = entityManager.find(CarrinhoDeCompras.class, carrinhoId);
+        assertEquals(List.of(produtoIds.get(1), produtoIds.get(2)),
+                gravado.getItens().stream().map(item -> item.getProduto().getId()).toList());
+        // Os ids devolvidos enquanto o carrinho estava ativo são os mesmos das tabelas
+        assertEquals(idsAtivos, gravado.getItens().stream().map(ItemCompra::getId).toList());
+        assertEquals(idsAtivos, finalizado.getItens().stream().map(ItemCompra::getId).toList());
+        assertEquals(new BigDecimal("30.00"), gravado.getSubtotal());
+        assertNull(entityManager.find(ItemCompra.class, itemId));
+    }
+
+    @Test
+    void adicionarItens_DeveGravarNasTabelas_QuandoCarrinhoDeixarDeCaber() {
+        // Arrange
+        carrinhoService.adicionarItem(carrinhoId, clienteId, produtoIds.get(1), 1L);
+        entityManager.clear();
+        List<ItemCarrinhoDTO> itens = new ArrayList<>();
+        for (int i = 2; i < 10; i++) {
+            itens.add(new ItemCarrinhoDTO(null, produtoIds.get(i), 1L));
+        }
+
+        // Act
+        CarrinhoDeCompras alterado = carrinhoService.adicionarItens(carrinhoId, clienteId, itens);
+        entityManager.flush();
+        entityManager.clear();
+
+        // Assert
+        assertEquals(0, carrinhosAtivos.quantidade());
+        assertEquals(10, alterado.getItens().size());
+        assertTrue(alterado.getItens().stream().allMatch(item -> item.getId() > 0));
+        assertEquals(10, entityManager.find(CarrinhoDeCompras.class, carrinhoId).getItens().size());
+    }
+
+    @Test
+    void gravarExpirados_DeveGravarCarrinhosSemUso() {
+        // Arrange
+        carrinhoService.alterarQuantidade(carrinhoId, clienteId, itemId, 4L);
+        entityManager.clear();
+
+        // Act
+        int gravados = carrinhoService.gravarExpirados();
+        entityManager.flush();
+        entityManager.clear();
+
+        // Assert
+        assertEquals(1, gravados);
+        assertEquals(0, carrinhosAtivos.quantidade());
+        assertEquals(4L, entityManager.find(ItemCompra.class, itemId).getQuantidade());
+    }
+}
@@ -0,0 +1,130 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import ecommerce.dto.ItemCarrinhoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.CarrinhosAtivos;
+import ecommerce.service.CatalogoProdutos;
+import ecommerce.service.TabelasPreco;
+
+// Versão de preços lida uma vez no setUp: as contagens de comandos não incluem a releitura periódica
+@DataJpaTest(properties = { "spring.jpa.properties.hibernate.generate_statistics=true",
+        "ecommerce.cache.produtos.intervalo-versao=1h" })
+@Import({ CarrinhoDeComprasService.class, CatalogoProdutos.class, TabelasPreco.class, CarrinhosAtivos.class })
+class CarrinhoDeComprasServiceEscritasTest {
+
+    private static final int QUANTIDADE_ITENS = 1_000;
+    private static final int QUANTIDADE_PRODUTOS = 100;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private CarrinhoDeComprasService carrinhoService;
+
+    @Autowired
+    private CatalogoProdutos catalogoProdutos;
+
+    private Statistics estatisticas;
+
+    private Long clienteId;
+
+    private Long carrinhoId;
+
+    private List<Long> produtoIds;
+
+    @BeforeEach
+    void setUp() {
+        Cliente cliente = entityManager.persist(new Cliente(null, "Cliente", "Endereço", TipoCliente.BRONZE));
+        produtoIds = new ArrayList<>();
+        for (int i = 0; i < QUANTIDADE_PRODUTOS; i++) {
+            produtoIds.add(entityManager.persist(
+                    new Produto(null, "Produto " + i, "Descrição", BigDecimal.ONE, 1, TipoProduto.LIVRO)).getId());
+        }
+        clienteId = cliente.getId();
+        carrinhoId = entityManager.persist(new CarrinhoDeCompras(null, cliente, new ArrayList<>(), null)).getId();
+
+        entityManager.flush();
+        entityManager.clear();
+
+        catalogoProdutos.versaoPrecos();
+
+        estatisticas = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        estatisticas.clear();
+    }
+
+    @Test
+    void adicionarItens_DeveGravarMilItensEmLote() {
+        carrinhoService.adicionarItens(carrinhoId, clienteId, itensNovos());
+        entityManager.flush();
+
+        assertEquals(QUANTIDADE_ITENS, estatisticas.getEntityInsertCount());
+        // Carrinho, itens atuais, produtos, 3 leituras da sequência, INSERT dos itens em lote e UPDATE dos totais
+        assertEquals(8, estatisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void alterarQuantidades_DeveAtualizarMilItensEmLote() {
+        CarrinhoDeCompras carrinho = carrinhoService.adicionarItens(carrinhoId, clienteId, itensNovos());
+        entityManager.flush();
+        List<ItemCarrinhoDTO> alteracoes = carrinho.getItens().stream()
+                .map(item -> new ItemCarrinhoDTO(item.getId(), null, 2L))
+                .toList();
+        entityManager.clear();
+        estatisticas.clear();
+
+        CarrinhoDeCompras alterado = carrinhoService.alterarQuantidades(carrinhoId, clienteId, alteracoes);
+        entityManager.flush();
+
+        assertEquals(QUANTIDADE_ITENS, estatisticas.getEntityUpdateCount() - 1);
+        // Carrinho, itens, UPDATE dos itens em lote e UPDATE dos totais
+        assertEquals(4, estatisticas.getPrepareStatementCount());
+        assertEquals(new BigDecimal("2000.00"), alterado.getSubtotal());
+    }
+
+    @Test
+    void removerItem_DeveApagarSomenteOItem() {
+        CarrinhoDeCompras carrinho = carrinhoService.adicionarItens(carrinhoId, clienteId, itensNovos().subList(0, 2));
+        entityManager.flush();
+        Long itemId = carrinho.getItens().get(0).getId();
+        entityManager.clear();
+        estatisticas.clear();
+
+        carrinhoService.removerItem(carrinhoId, clienteId, itemId);
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(1, estatisticas.getEntityDeleteCount());
+        assertNull(entityManager.find(ItemCompra.class, itemId));
+        assertEquals(1, entityManager.find(CarrinhoDeCompras.class, carrinhoId).getItens().size());
+    }
+
+    private List<ItemCarrinhoDTO> itensNovos() {
+        List<ItemCarrinhoDTO> itens = new ArrayList<>();
+        for (int i = 0; i < QUANTIDADE_ITENS; i++) {
+            itens.add(new ItemCarrinhoDTO(null, produtoIds.get(i % QUANTIDADE_PRODUTOS), 1L));
+        }
+        return itens;
+    }
+}
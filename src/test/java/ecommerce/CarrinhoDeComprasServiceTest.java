@@ -3,20 +3,36 @@ package ecommerce;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import ecommerce.dto.FinalizacaoCompraDTO;
+import ecommerce.dto.TotaisCarrinhoDTO;
 import ecommerce.entity.CarrinhoDeCompras;
 import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
 import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.service.CalculadoraCusto;
 import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.CatalogoProdutos;
+import ecommerce.service.Promocao;
+import ecommerce.service.RegrasPreco;
+import ecommerce.service.TabelasPreco;
 
 class CarrinhoDeComprasServiceTest {
 
     private final CarrinhoDeComprasRepository repository = mock(CarrinhoDeComprasRepository.class);
-    private final CarrinhoDeComprasService service = new CarrinhoDeComprasService(repository);
+    private final CatalogoProdutos catalogoProdutos = mock(CatalogoProdutos.class);
+    private final CarrinhoDeComprasService service = new CarrinhoDeComprasService(repository, catalogoProdutos);
 
     @Test
     void buscarPorCarrinhoIdEClienteId_DeveRetornarCarrinho_QuandoCarrinhoExistir() {
@@ -49,4 +65,202 @@ class CarrinhoDeComprasServiceTest {
         assertEquals("Carrinho não encontrado.", exception.getMessage());
         verify(repository, times(1)).findByIdAndCliente(carrinhoId, cliente);
     }
+
+    @Test
+    void buscarPorIds_DeveIndexarCarrinhosPorId() {
+        // Arrange
+        CarrinhoDeCompras carrinho1 = new CarrinhoDeCompras();
+        carrinho1.setId(1L);
+        CarrinhoDeCompras carrinho2 = new CarrinhoDeCompras();
+        carrinho2.setId(2L);
+        when(repository.findByIdIn(Set.of(1L, 2L))).thenReturn(List.of(carrinho1, carrinho2));
+
+        // Act
+        Map<Long, CarrinhoDeCompras> resultado = service.buscarPorIds(
+                List.of(new FinalizacaoCompraDTO(1L, 5L), new FinalizacaoCompraDTO(2L, 5L)));
+
+        // Assert
+        assertEquals(Map.of(1L, carrinho1, 2L, carrinho2), resultado);
+        verify(repository, times(1)).findByIdIn(Set.of(1L, 2L));
+    }
+
+    @Test
+    void buscarPorCarrinhoIdEClienteId_DeveUsarProdutosDoCatalogo_QuandoTodosEstiveremEmCache() {
+        // Arrange
+        Long carrinhoId = 1L;
+        Cliente cliente = new Cliente();
+        Produto referencia = new Produto();
+        referencia.setId(7L);
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setItens(List.of(new ItemCompra(1L, referencia, 2L)));
+        Produto produtoCatalogo = new Produto();
+        produtoCatalogo.setId(7L);
+        when(repository.findByIdAndCliente(carrinhoId, cliente)).thenReturn(Optional.of(carrinho));
+        when(catalogoProdutos.buscarEmCache(Set.of(7L))).thenReturn(Map.of(7L, produtoCatalogo));
+
+        // Act
+        CarrinhoDeCompras resultado = service.buscarPorCarrinhoIdEClienteId(carrinhoId, cliente);
+
+        // Assert
+        assertSame(produtoCatalogo, resultado.getItens().get(0).getProduto());
+        assertFalse(resultado.isTotaisConferidos());
+        verify(repository, never()).totalizarPorIds(any());
+    }
+
+    @Test
+    void buscarPorCarrinhoIdEClienteId_DeveUsarTotaisSomadosPeloBanco_QuandoProdutoNaoEstiverEmCache() {
+        // Arrange
+        Long carrinhoId = 1L;
+        Cliente cliente = new Cliente();
+        Produto referencia = new Produto();
+        referencia.setId(7L);
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras(carrinhoId, cliente, List.of(new ItemCompra(1L, referencia, 2L)), null);
+        when(repository.findByIdAndCliente(carrinhoId, cliente)).thenReturn(Optional.of(carrinho));
+        when(catalogoProdutos.buscarEmCache(Set.of(7L))).thenReturn(Map.of());
+        when(repository.totalizarPorIds(List.of(carrinhoId)))
+                .thenReturn(List.of(new TotaisCarrinhoDTO(carrinhoId, new BigDecimal("20.00"), 4L)));
+
+        // Act
+        CarrinhoDeCompras resultado = service.buscarPorCarrinhoIdEClienteId(carrinhoId, cliente);
+
+        // Assert
+        assertTrue(resultado.isTotaisConferidos());
+        assertEquals(new BigDecimal("20.00"), resultado.getSubtotal());
+        assertEquals(4, resultado.getPesoTotal());
+        assertSame(referencia, resultado.getItens().get(0).getProduto());
+        verify(catalogoProdutos, never()).buscarPorIds(any());
+    }
+
+    @Test
+    void buscarPorCarrinhoIdEClienteId_DeveDispensarCatalogo_QuandoTotaisForemDaVersaoAtual() {
+        // Arrange
+        Long carrinhoId = 1L;
+        Cliente cliente = new Cliente();
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setItens(List.of(new ItemCompra(1L, criarProduto(7L, "10.00", 2), 2L)));
+        carrinho.recalcularTotais(5L);
+        when(catalogoProdutos.versaoPrecos()).thenReturn(5L);
+        when(repository.findByIdAndCliente(carrinhoId, cliente)).thenReturn(Optional.of(carrinho));
+
+        // Act
+        CarrinhoDeCompras resultado = service.buscarPorCarrinhoIdEClienteId(carrinhoId, cliente);
+
+        // Assert
+        assertTrue(resultado.isTotaisConferidos());
+        verify(catalogoProdutos, never()).buscarPorIds(any());
+    }
+
+    @Test
+    void buscarPorCarrinhoIdEClienteId_DeveResolverProdutos_QuandoHouverPromocoesMesmoComTotaisDaVersaoAtual() {
+        // Arrange
+        RegrasPreco comPromocao = RegrasPreco.compilar(List.of(5, 10, 50),
+                List.of(BigDecimal.ZERO, BigDecimal.valueOf(2), BigDecimal.valueOf(4), BigDecimal.valueOf(7)),
+                List.of(BigDecimal.ONE, new BigDecimal("0.5"), BigDecimal.ZERO),
+                List.of(BigDecimal.valueOf(500), BigDecimal.valueOf(1000)), List.of(10, 20),
+                List.of(Promocao.percentual(TipoProduto.LIVRO, 10)));
+        CarrinhoDeComprasService comPromocoes = new CarrinhoDeComprasService(repository, catalogoProdutos,
+                new TabelasPreco(comPromocao));
+        Long carrinhoId = 1L;
+        Cliente cliente = new Cliente();
+        Produto referencia = criarProduto(7L, "10.00", 2);
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setItens(List.of(new ItemCompra(1L, referencia, 2L)));
+        carrinho.recalcularTotais(5L);
+        Produto produtoCatalogo = criarProduto(7L, "10.00", 2);
+        produtoCatalogo.setTipo(TipoProduto.LIVRO);
+        when(catalogoProdutos.versaoPrecos()).thenReturn(5L);
+        when(repository.findByIdAndCliente(carrinhoId, cliente)).thenReturn(Optional.of(carrinho));
+        when(catalogoProdutos.buscarPorIds(Set.of(7L))).thenReturn(Map.of(7L, produtoCatalogo));
+
+        // Act
+        CarrinhoDeCompras resultado = comPromocoes.buscarPorCarrinhoIdEClienteId(carrinhoId, cliente);
+
+        // Assert
+        // Os totais guardados não separam os tipos de produto; com promoção a calculadora percorre os itens
+        assertTrue(resultado.isTotaisConferidos());
+        assertSame(produtoCatalogo, resultado.getItens().get(0).getProduto());
+        assertEquals(new BigDecimal("18.00"), new CalculadoraCusto().calcularCustoTotal(resultado, TipoCliente.BRONZE,
+                comPromocao));
+        verify(repository, never()).totalizarPorIds(any());
+    }
+
+    @Test
+    void adicionarItem_DeveSomarAosTotais_QuandoTotaisForemDaVersaoAtual() {
+        // Arrange
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.getItens().add(new ItemCompra(1L, criarProduto(7L, "10.00", 2), 2L));
+        carrinho.recalcularTotais(5L);
+        when(catalogoProdutos.versaoPrecos()).thenReturn(5L);
+        when(repository.findParaAlteracaoByIdAndClienteId(1L, 2L)).thenReturn(Optional.of(carrinho));
+        when(catalogoProdutos.buscarPorId(8L)).thenReturn(criarProduto(8L, "2.50", 3));
+
+        // Act
+        CarrinhoDeCompras resultado = service.adicionarItem(1L, 2L, 8L, 4L);
+
+        // Assert
+        assertEquals(new BigDecimal("30.00"), resultado.getSubtotal());
+        assertEquals(16, resultado.getPesoTotal());
+        assertEquals(2, resultado.getItens().size());
+        verify(catalogoProdutos, never()).buscarPorIds(any());
+    }
+
+    @Test
+    void alterarQuantidade_DeveRecalcularTotais_QuandoPrecosMudaramDesdeAUltimaSoma() {
+        // Arrange
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.getItens().add(new ItemCompra(1L, criarProduto(7L, "10.00", 2), 2L));
+        carrinho.getItens().add(new ItemCompra(2L, criarProduto(8L, "1.00", 1), 1L));
+        carrinho.recalcularTotais(5L);
+        when(catalogoProdutos.versaoPrecos()).thenReturn(6L);
+        when(repository.findParaAlteracaoByIdAndClienteId(1L, 2L)).thenReturn(Optional.of(carrinho));
+        when(catalogoProdutos.buscarPorIds(Set.of(7L, 8L))).thenReturn(
+                Map.of(7L, criarProduto(7L, "12.00", 2), 8L, criarProduto(8L, "1.00", 1)));
+        when(catalogoProdutos.buscarPorIds(Set.of(7L))).thenReturn(Map.of(7L, criarProduto(7L, "12.00", 2)));
+
+        // Act
+        CarrinhoDeCompras resultado = service.alterarQuantidade(1L, 2L, 1L, 3L);
+
+        // Assert
+        assertEquals(new BigDecimal("37.00"), resultado.getSubtotal());
+        assertEquals(7, resultado.getPesoTotal());
+        assertTrue(resultado.totaisValidos(6L));
+    }
+
+    @Test
+    void removerItem_DeveLancarExcecao_QuandoItemNaoExistir() {
+        // Arrange
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.recalcularTotais(5L);
+        when(catalogoProdutos.versaoPrecos()).thenReturn(5L);
+        when(repository.findParaAlteracaoByIdAndClienteId(1L, 2L)).thenReturn(Optional.of(carrinho));
+
+        // Act & Assert
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            service.removerItem(1L, 2L, 9L);
+        });
+
+        assertEquals("Item não encontrado.", exception.getMessage());
+    }
+
+    @Test
+    void alterarQuantidade_DeveLancarExcecao_QuandoCarrinhoForDeOutroCliente() {
+        // Arrange
+        when(repository.findParaAlteracaoByIdAndClienteId(1L, 3L)).thenReturn(Optional.empty());
+
+        // Act & Assert
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            service.alterarQuantidade(1L, 3L, 1L, 2L);
+        });
+
+        assertEquals("Carrinho não encontrado.", exception.getMessage());
+        verify(repository, never()).findParaAlteracaoById(any());
+    }
+
+    private Produto criarProduto(Long id, String preco, int peso) {
+        Produto produto = new Produto();
+        produto.setId(id);
+        produto.setPreco(new BigDecimal(preco));
+        produto.setPeso(peso);
+        return produto;
+    }
 }
@@ -0,0 +1,205 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import ecommerce.service.CarrinhosAtivos;
+import ecommerce.service.CarrinhosAtivos.Instantaneo;
+import ecommerce.service.CarrinhosAtivos.Itens;
+
+class CarrinhosAtivosTest {
+
+    // Segmentos de 4 ou 8 itens (24 bytes cada) em slabs de 192 bytes
+    private static final int TAMANHO_SLAB = 192;
+
+    private static final long CLIENTE = 7L;
+
+    private final Clock relogio = Clock.fixed(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+    private final AtomicInteger carregamentos = new AtomicInteger();
+
+    // Sequência dos itens novos
+    private final AtomicLong ids = new AtomicLong(1000L);
+
+    private final List<Instantaneo> transbordados = new ArrayList<>();
+
+    @Test
+    void alterar_DeveAtivarComItensDoBancoEGuardarAlteracao() {
+        // Arrange
+        CarrinhosAtivos carrinhos = carrinhos(4 * TAMANHO_SLAB, Duration.ofMinutes(30));
+
+        // Act
+        Instantaneo primeiro = alterar(carrinhos, 1L, itens -> itens.adicionar(20L, 1L));
+        Instantaneo segundo = alterar(carrinhos, 1L, itens -> itens.alterarQuantidade(itens.indice(100L), 5L));
+
+        // Assert
+        assertEquals(1, carregamentos.get());
+        assertTrue(primeiro.ativo());
+        // Acima de qualquer versão do banco e maior a cada alteração
+        assertEquals((3L + 1 << 32) + 1, primeiro.versao());
+        assertEquals(primeiro.versao() + 1, segundo.versao());
+        Instantaneo lido = carrinhos.ler(1L);
+        assertEquals(CLIENTE, lido.clienteId());
+        assertEquals(segundo.versao(), lido.versao());
+        assertEquals(2, lido.itens().tamanho());
+        assertEquals(100L, lido.itens().itemId(0));
+        assertEquals(5L, lido.itens().quantidade(0));
+        assertEquals(1001L, lido.itens().itemId(1));
+        assertEquals(20L, lido.itens().produtoId(1));
+        assertEquals(segundo.versao(), carrinhos.versao(1L, CLIENTE));
+        assertThrows(IllegalArgumentException.class, () -> carrinhos.versao(1L, 8L));
+        assertThrows(IllegalArgumentException.class, () -> carrinhos.alterar(1L, 8L, id -> null,
+                itens -> itens.adicionar(21L, 1L), transbordados::add));
+        assertEquals(2, carrinhos.ler(1L).itens().tamanho());
+    }
+
+    @Test
+    void alterar_DeveManterItensEmOrdem_QuandoCarrinhoMudaDeClasse() {
+        // Arrange
+        CarrinhosAtivos carrinhos = carrinhos(4 * TAMANHO_SLAB, Duration.ofMinutes(30));
+
+        // Act
+        alterar(carrinhos, 1L, itens -> {
+            for (long produto = 1; produto <= 6; produto++) {
+                itens.adicionar(produto, produto);
+            }
+        });
+        Instantaneo encolhido = alterar(carrinhos, 1L, itens -> {
+            while (itens.tamanho() > 2) {
+                itens.remover(1);
+            }
+        });
+
+        // Assert
+        assertEquals(List.of(100L, 6L), produtos(encolhido.itens()));
+        assertEquals(List.of(100L, 6L), produtos(carrinhos.ler(1L).itens()));
+        // Um slab com segmentos de 8 itens e outro com segmentos de 4
+        assertEquals(2L * TAMANHO_SLAB, carrinhos.memoriaReservada());
+    }
+
+    @Test
+    void alterar_DeveEntregarCarrinhoAlteradoAoTransbordo_QuandoDeixarDeCaber() {
+        // Arrange
+        CarrinhosAtivos carrinhos = carrinhos(4 * TAMANHO_SLAB, Duration.ofMinutes(30));
+        alterar(carrinhos, 1L, itens -> itens.adicionar(20L, 1L));
+
+        // Act
+        Instantaneo alterado = alterar(carrinhos, 1L, itens -> {
+            for (long produto = 1; produto <= 7; produto++) {
+                itens.adicionar(produto, 1L);
+            }
+        });
+
+        // Assert
+        assertFalse(alterado.ativo());
+        assertEquals(List.of(alterado), transbordados);
+        assertEquals(9, alterado.itens().tamanho());
+        assertNull(carrinhos.ler(1L));
+        assertEquals(0, carrinhos.quantidade());
+    }
+
+    @Test
+    void alterar_DeveDevolverNull_QuandoNaoHouverMemoriaParaOCarrinho() {
+        // Arrange
+        // Um único slab: dois segmentos de 4 itens
+        CarrinhosAtivos carrinhos = carrinhos(TAMANHO_SLAB, Duration.ofMinutes(30));
+        alterar(carrinhos, 1L, itens -> itens.adicionar(20L, 1L));
+        alterar(carrinhos, 2L, itens -> itens.adicionar(20L, 1L));
+
+        // Act
+        Instantaneo terceiro = alterar(carrinhos, 3L, itens -> itens.adicionar(20L, 1L));
+
+        // Assert
+        assertNull(terceiro);
+        assertNull(carrinhos.ler(3L));
+        assertEquals(2, carrinhos.quantidade());
+        // O segmento devolvido na retirada serve ao próximo carrinho
+        carrinhos.retirar(1L, ativo -> ativo);
+        assertNotNull(alterar(carrinhos, 3L, itens -> itens.adicionar(20L, 1L)));
+        assertEquals(TAMANHO_SLAB, carrinhos.memoriaReservada());
+    }
+
+    @Test
+    void alterar_NaoDeveMudarCarrinho_QuandoAlteracaoFalhar() {
+        // Arrange
+        CarrinhosAtivos carrinhos = carrinhos(4 * TAMANHO_SLAB, Duration.ofMinutes(30));
+        long versao = alterar(carrinhos, 1L, itens -> itens.adicionar(20L, 1L)).versao();
+
+        // Act
+        assertThrows(IllegalArgumentException.class, () -> alterar(carrinhos, 1L, itens -> {
+            itens.remover(0);
+            throw new IllegalArgumentException("Item não encontrado.");
+        }));
+
+        // Assert
+        Instantaneo lido = carrinhos.ler(1L);
+        assertEquals(versao, lido.versao());
+        assertEquals(List.of(100L, 20L), produtos(lido.itens()));
+    }
+
+    @Test
+    void retirar_DeveManterCarrinhoAtivo_QuandoGravacaoFalhar() {
+        // Arrange
+        CarrinhosAtivos carrinhos = carrinhos(4 * TAMANHO_SLAB, Duration.ofMinutes(30));
+        alterar(carrinhos, 1L, itens -> itens.adicionar(20L, 1L));
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> carrinhos.retirar(1L, ativo -> {
+            throw new IllegalStateException("Banco fora");
+        }));
+        Instantaneo gravado = carrinhos.retirar(1L, ativo -> ativo);
+
+        // Assert
+        assertEquals(List.of(100L, 20L), produtos(gravado.itens()));
+        assertNull(carrinhos.ler(1L));
+        assertNull(carrinhos.retirar(1L, ativo -> ativo));
+    }
+
+    @Test
+    void expirados_DeveListarCarrinhosSemUsoAlemDaExpiracao() {
+        // Arrange
+        CarrinhosAtivos expiram = carrinhos(4 * TAMANHO_SLAB, Duration.ZERO);
+        CarrinhosAtivos naoExpiram = carrinhos(4 * TAMANHO_SLAB, Duration.ofMinutes(30));
+        alterar(expiram, 1L, itens -> itens.adicionar(20L, 1L));
+        alterar(naoExpiram, 1L, itens -> itens.adicionar(20L, 1L));
+
+        // Act & Assert
+        assertEquals(List.of(1L), expiram.expirados());
+        assertEquals(List.of(), naoExpiram.expirados());
+    }
+
+    // Métodos auxiliares
+
+    private CarrinhosAtivos carrinhos(long memoriaMaxima, Duration expiracao) {
+        return new CarrinhosAtivos(true, memoriaMaxima, TAMANHO_SLAB, expiracao, relogio, ids::incrementAndGet);
+    }
+
+    // O carrinho no banco tem um item (id 100, produto 100) e está na versão 3
+    private Instantaneo alterar(CarrinhosAtivos carrinhos, long carrinhoId, Consumer<Itens> alteracao) {
+        return carrinhos.alterar(carrinhoId, CLIENTE, id -> {
+            carregamentos.incrementAndGet();
+            Itens itens = carrinhos.novosItens(1);
+            itens.incluir(100L, 100L, 2L);
+            return new Instantaneo(id, CLIENTE, 3L, itens, false);
+        }, alteracao, transbordados::add);
+    }
+
+    private static List<Long> produtos(Itens itens) {
+        List<Long> produtos = new ArrayList<>();
+        for (int i = 0; i < itens.tamanho(); i++) {
+            produtos.add(itens.produtoId(i));
+        }
+        return produtos;
+    }
+}
@@ -0,0 +1,147 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.repository.VersaoPrecosRepository;
+import ecommerce.service.CatalogoProdutos;
+
+class CatalogoProdutosTest {
+
+    private final ProdutoRepository repository = mock(ProdutoRepository.class);
+    private final VersaoPrecosRepository versaoRepository = mock(VersaoPrecosRepository.class);
+    // Intervalo zero: a versão é relida do banco a cada consulta
+    private final CatalogoProdutos catalogo = new CatalogoProdutos(repository, versaoRepository, 2,
+            Duration.ofMinutes(10), Duration.ZERO);
+
+    @Test
+    void buscarPorId_DeveConsultarRepositorioSomenteNaPrimeiraVez() {
+        // Arrange
+        when(repository.findDesanexadosByIdIn(List.of(1L))).thenReturn(List.of(criarProduto(1L, "10.00")));
+
+        // Act
+        Produto primeiro = catalogo.buscarPorId(1L);
+        Produto segundo = catalogo.buscarPorId(1L);
+
+        // Assert
+        assertSame(primeiro, segundo);
+        verify(repository, times(1)).findDesanexadosByIdIn(List.of(1L));
+        assertEquals(1, catalogo.estatisticas().hitCount());
+        assertEquals(1, catalogo.estatisticas().missCount());
+    }
+
+    @Test
+    void buscarPorId_DeveLancarExcecao_QuandoProdutoNaoExistir() {
+        // Arrange
+        when(repository.findDesanexadosByIdIn(List.of(1L))).thenReturn(List.of());
+
+        // Act & Assert
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
+            catalogo.buscarPorId(1L);
+        });
+
+        assertEquals("Produto não encontrado.", exception.getMessage());
+    }
+
+    @Test
+    void buscarPorIds_DeveCarregarAusentesEmUmaUnicaConsulta() {
+        // Arrange
+        when(repository.findDesanexadosByIdIn(List.of(1L))).thenReturn(List.of(criarProduto(1L, "10.00")));
+        when(repository.findDesanexadosByIdIn(List.of(2L))).thenReturn(List.of(criarProduto(2L, "20.00")));
+        catalogo.buscarPorId(1L);
+
+        // Act
+        Map<Long, Produto> produtos = catalogo.buscarPorIds(List.of(1L, 2L));
+
+        // Assert
+        assertEquals(new BigDecimal("10.00"), produtos.get(1L).getPreco());
+        assertEquals(new BigDecimal("20.00"), produtos.get(2L).getPreco());
+        verify(repository, times(1)).findDesanexadosByIdIn(List.of(2L));
+    }
+
+    @Test
+    void atualizarPreco_DeveInvalidarProdutoEmCache() {
+        // Arrange
+        Produto produto = criarProduto(1L, "10.00");
+        when(repository.findById(1L)).thenReturn(Optional.of(produto));
+        when(repository.findDesanexadosByIdIn(List.of(1L))).thenAnswer(invocacao -> List.of(produto));
+        when(repository.save(produto)).thenReturn(produto);
+        catalogo.buscarPorId(1L);
+
+        // Act
+        catalogo.atualizarPreco(1L, new BigDecimal("12.50"));
+
+        // Assert
+        assertEquals(new BigDecimal("12.50"), catalogo.buscarPorId(1L).getPreco());
+    }
+
+    @Test
+    void atualizarPreco_DeveAvancarVersaoNoBancoSemDescartarOutrosProdutos() {
+        // Arrange
+        Produto produto = criarProduto(1L, "10.00");
+        when(repository.findById(1L)).thenReturn(Optional.of(produto));
+        when(repository.findDesanexadosByIdIn(List.of(2L))).thenReturn(List.of(criarProduto(2L, "20.00")));
+        when(repository.save(produto)).thenReturn(produto);
+        when(versaoRepository.findValor()).thenReturn(Optional.of(4L));
+        catalogo.versaoPrecos();
+        catalogo.buscarPorId(2L);
+        when(versaoRepository.avancar()).thenReturn(1);
+        when(versaoRepository.findValor()).thenReturn(Optional.of(5L));
+
+        // Act
+        catalogo.atualizarPreco(1L, new BigDecimal("12.50"));
+
+        // Assert
+        verify(versaoRepository).avancar();
+        assertEquals(5L, catalogo.versaoPrecos());
+        catalogo.buscarPorId(2L);
+        verify(repository, times(1)).findDesanexadosByIdIn(List.of(2L));
+    }
+
+    @Test
+    void versaoPrecos_DeveDescartarCache_QuandoVersaoMudarForaDaInstancia() {
+        // Arrange
+        when(repository.findDesanexadosByIdIn(List.of(1L))).thenReturn(List.of(criarProduto(1L, "10.00")));
+        when(versaoRepository.findValor()).thenReturn(Optional.of(4L));
+        catalogo.versaoPrecos();
+        catalogo.buscarPorId(1L);
+        // Preço mudado por outra instância ou direto no banco, que avançou a versão
+        when(repository.findDesanexadosByIdIn(List.of(1L))).thenReturn(List.of(criarProduto(1L, "15.00")));
+        when(versaoRepository.findValor()).thenReturn(Optional.of(6L));
+
+        // Act
+        long versao = catalogo.versaoPrecos();
+
+        // Assert
+        assertEquals(6L, versao);
+        assertEquals(new BigDecimal("15.00"), catalogo.buscarPorId(1L).getPreco());
+    }
+
+    @Test
+    void buscarPorId_DeveCarregarProdutosDesanexadosDaSessao() {
+        // Arrange
+        when(repository.findDesanexadosByIdIn(List.of(1L))).thenReturn(List.of(criarProduto(1L, "10.00")));
+
+        // Act
+        Produto emCache = catalogo.buscarPorId(1L);
+
+        // Assert
+        assertEquals(new BigDecimal("10.00"), emCache.getPreco());
+        verify(repository, never()).findAllById(any());
+    }
+
+    private Produto criarProduto(Long id, String preco) {
+        return new Produto(id, "Produto " + id, "Descrição", new BigDecimal(preco), 1, TipoProduto.LIVRO);
+    }
+}
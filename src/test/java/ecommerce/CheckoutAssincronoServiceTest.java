@@ -0,0 +1,108 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import ecommerce.config.ExecutoresConfig;
+import ecommerce.controller.CompraController;
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.SituacaoCompraDTO;
+import ecommerce.dto.SituacaoCompraDTO.Situacao;
+import ecommerce.service.CheckoutAssincronoService;
+import ecommerce.service.CompraService;
+import ecommerce.service.IdempotenciaService;
+
+class CheckoutAssincronoServiceTest {
+
+    private final CompraService compraService = mock(CompraService.class);
+    private final List<Runnable> tarefas = new ArrayList<>();
+    private final CheckoutAssincronoService service = new CheckoutAssincronoService(compraService, tarefas::add,
+            100, Duration.ofMinutes(10));
+
+    @Test
+    void enfileirar_DeveDevolverTicketPendenteEConcluirEmSegundoPlano() {
+        // Arrange
+        when(compraService.finalizarCompra(1L, 2L)).thenReturn(new CompraDTO(true, 99L, "Compra finalizada com sucesso."));
+
+        // Act
+        SituacaoCompraDTO pendente = service.enfileirar(1L, 2L);
+        SituacaoCompraDTO antes = service.consultar(pendente.ticket()).orElseThrow();
+        tarefas.forEach(Runnable::run);
+        SituacaoCompraDTO depois = service.consultar(pendente.ticket()).orElseThrow();
+
+        // Assert
+        assertEquals(Situacao.PENDENTE, antes.situacao());
+        assertEquals(Situacao.CONCLUIDA, depois.situacao());
+        assertEquals(new CompraDTO(true, 99L, "Compra finalizada com sucesso."), depois.compra());
+    }
+
+    @Test
+    void enfileirar_DeveGuardarMensagemDoErro_QuandoCompraFalhar() {
+        // Arrange
+        when(compraService.finalizarCompra(1L, 2L)).thenThrow(new IllegalStateException("Itens fora de estoque."));
+        when(compraService.finalizarCompra(3L, 2L)).thenThrow(new RuntimeException("falha interna"));
+
+        // Act
+        String conflito = service.enfileirar(1L, 2L).ticket();
+        String erro = service.enfileirar(3L, 2L).ticket();
+        tarefas.forEach(Runnable::run);
+
+        // Assert
+        assertEquals(new CompraDTO(false, null, "Itens fora de estoque."), service.consultar(conflito).orElseThrow().compra());
+        assertEquals(new CompraDTO(false, null, "Erro ao processar compra."), service.consultar(erro).orElseThrow().compra());
+    }
+
+    @Test
+    void consultar_DeveRetornarVazio_QuandoTicketNaoExistir() {
+        assertTrue(service.consultar("desconhecido").isEmpty());
+    }
+
+    @Test
+    void finalizarCompraAssincrona_DeveResponder429EDescartarTicket_QuandoFilaEstiverCheia() throws Exception {
+        // Arrange
+        ThreadPoolTaskExecutor executor = new ExecutoresConfig().checkoutAssincronoExecutor(1, 1, false);
+        executor.initialize();
+        CheckoutAssincronoService limitado = new CheckoutAssincronoService(compraService, executor, 100,
+                Duration.ofMinutes(10));
+        CompraController controller = new CompraController(compraService,
+                new IdempotenciaService(100, Duration.ofMinutes(10), Duration.ofSeconds(5)), limitado);
+        CountDownLatch emAndamento = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        when(compraService.finalizarCompra(1L, 2L)).thenAnswer(invocacao -> {
+            emAndamento.countDown();
+            liberar.await();
+            return new CompraDTO(true, 99L, "Compra finalizada com sucesso.");
+        });
+
+        try {
+            // Act
+            ResponseEntity<SituacaoCompraDTO> processando = controller.finalizarCompraAssincrona(1L, 2L);
+            assertTrue(emAndamento.await(5, TimeUnit.SECONDS));
+            ResponseEntity<SituacaoCompraDTO> naFila = controller.finalizarCompraAssincrona(1L, 2L);
+            ResponseEntity<SituacaoCompraDTO> recusada = controller.finalizarCompraAssincrona(1L, 2L);
+
+            // Assert
+            assertEquals(HttpStatus.ACCEPTED, processando.getStatusCode());
+            assertEquals(HttpStatus.ACCEPTED, naFila.getStatusCode());
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, recusada.getStatusCode());
+            assertEquals("/finalizar/assincrono/" + naFila.getBody().ticket(),
+                    naFila.getHeaders().getLocation().toString());
+            assertEquals(2, executor.getThreadPoolExecutor().getTaskCount());
+        } finally {
+            liberar.countDown();
+            executor.shutdown();
+        }
+    }
+}
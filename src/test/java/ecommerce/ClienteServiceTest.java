@@ -3,19 +3,29 @@ package ecommerce;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import ecommerce.entity.Cliente;
+import ecommerce.entity.TipoCliente;
 import ecommerce.repository.ClienteRepository;
 import ecommerce.service.ClienteService;
 
 class ClienteServiceTest {
 
     private final ClienteRepository repository = mock(ClienteRepository.class);
-    private final ClienteService service = new ClienteService(repository);
+    private final ClienteService service = new ClienteService(repository, 100, Duration.ofMinutes(10));
 
     @Test
     void buscarPorId_DeveRetornarCliente_QuandoIdExistir() {
@@ -48,4 +58,95 @@ class ClienteServiceTest {
         assertEquals("Cliente não encontrado", exception.getMessage());
         verify(repository, times(1)).findById(clienteId);
     }
+
+    @Test
+    void buscarTipoPorId_DeveConsultarRepositorioSomenteNaPrimeiraVez() {
+        // Arrange
+        Long clienteId = 1L;
+        when(repository.findAllById(List.of(clienteId))).thenReturn(List.of(new Cliente(clienteId, "Cliente", "Endereço", TipoCliente.PRATA)));
+
+        // Act
+        TipoCliente primeiro = service.buscarTipoPorId(clienteId);
+        TipoCliente segundo = service.buscarTipoPorId(clienteId);
+
+        // Assert
+        assertEquals(TipoCliente.PRATA, primeiro);
+        assertEquals(TipoCliente.PRATA, segundo);
+        verify(repository, times(1)).findAllById(List.of(clienteId));
+    }
+
+    @Test
+    void buscarTipoPorId_DeveLancarExcecaoSemGuardarNoCache_QuandoIdNaoExistir() {
+        // Arrange
+        Long clienteId = 1L;
+        when(repository.findAllById(List.of(clienteId))).thenReturn(List.of());
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> service.buscarTipoPorId(clienteId));
+        assertThrows(IllegalArgumentException.class, () -> service.buscarTipoPorId(clienteId));
+        verify(repository, times(2)).findAllById(List.of(clienteId));
+    }
+
+    @Test
+    void buscarTipoPorId_DeveFazerUmaUnicaConsulta_QuandoMuitasBuscasConcorrentesFalharemNoCache() throws Exception {
+        // Arrange
+        Long clienteId = 1L;
+        CountDownLatch largada = new CountDownLatch(1);
+        when(repository.findAllById(List.of(clienteId))).thenAnswer(invocacao -> {
+            Thread.sleep(100);
+            return List.of(new Cliente(clienteId, "Cliente", "Endereço", TipoCliente.OURO));
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        // Act
+        List<Future<TipoCliente>> resultados = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            resultados.add(executor.submit(() -> {
+                largada.await();
+                return service.buscarTipoPorId(clienteId);
+            }));
+        }
+        largada.countDown();
+
+        // Assert
+        for (Future<TipoCliente> resultado : resultados) {
+            assertEquals(TipoCliente.OURO, resultado.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        verify(repository, times(1)).findAllById(List.of(clienteId));
+    }
+
+    @Test
+    void buscarTiposPorIds_DeveCarregarAusentesEmUmaUnicaConsulta() {
+        // Arrange
+        Cliente cliente1 = new Cliente(1L, "Cliente 1", "Endereço", TipoCliente.BRONZE);
+        Cliente cliente2 = new Cliente(2L, "Cliente 2", "Endereço", TipoCliente.OURO);
+        when(repository.findAllById(List.of(1L))).thenReturn(List.of(cliente1));
+        when(repository.findAllById(List.of(2L, 3L))).thenReturn(List.of(cliente2));
+        service.buscarTipoPorId(1L);
+
+        // Act
+        Map<Long, TipoCliente> resultado = service.buscarTiposPorIds(List.of(1L, 2L, 3L));
+
+        // Assert
+        assertEquals(Map.of(1L, TipoCliente.BRONZE, 2L, TipoCliente.OURO), resultado);
+        verify(repository, times(1)).findAllById(List.of(2L, 3L));
+    }
+
+    @Test
+    void alterarTipo_DeveInvalidarTipoEmCache() {
+        // Arrange
+        Long clienteId = 1L;
+        Cliente cliente = new Cliente(clienteId, "Cliente", "Endereço", TipoCliente.BRONZE);
+        when(repository.findById(clienteId)).thenReturn(Optional.of(cliente));
+        when(repository.findAllById(List.of(clienteId))).thenReturn(List.of(cliente));
+        when(repository.save(cliente)).thenReturn(cliente);
+        service.buscarTipoPorId(clienteId);
+
+        // Act
+        service.alterarTipo(clienteId, TipoCliente.OURO);
+
+        // Assert
+        assertEquals(TipoCliente.OURO, service.buscarTipoPorId(clienteId));
+    }
 }
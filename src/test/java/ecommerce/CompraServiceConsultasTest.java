@@ -0,0 +1,243 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import ecommerce.config.ExecutoresConfig;
+import ecommerce.dto.CarrinhoExportadoDTO;
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.FinalizacaoCompraDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.service.CalculadoraCusto;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.CarrinhosAtivos;
+import ecommerce.service.CatalogoProdutos;
+import ecommerce.service.ClienteService;
+import ecommerce.service.CompraService;
+import ecommerce.service.MetricasCompra;
+import ecommerce.service.PedidoService;
+import ecommerce.service.TabelasPreco;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Versão de preços lida uma vez no setUp: as contagens de comandos não incluem a releitura periódica
+@DataJpaTest(properties = { "spring.jpa.properties.hibernate.generate_statistics=true",
+        "ecommerce.cache.produtos.intervalo-versao=1h" })
+@Import({ CompraService.class, ClienteService.class, CarrinhoDeComprasService.class, CatalogoProdutos.class,
+        ExecutoresConfig.class, MetricasCompra.class, SimpleMeterRegistry.class, CalculadoraCusto.class,
+        TabelasPreco.class, CarrinhosAtivos.class })
+class CompraServiceConsultasTest {
+
+    private static final int QUANTIDADE_ITENS = 50;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private CompraService compraService;
+
+    @Autowired
+    private CarrinhoDeComprasService carrinhoService;
+
+    @Autowired
+    private CatalogoProdutos catalogoProdutos;
+
+    @Autowired
+    private CalculadoraCusto calculadoraCusto;
+
+    @MockBean
+    private IEstoqueExternal estoqueExternal;
+
+    @MockBean
+    private IPagamentoExternal pagamentoExternal;
+
+    // Só as leituras da finalização; a gravação do pedido tem o próprio teste
+    @MockBean
+    private PedidoService pedidoService;
+
+    private Statistics estatisticas;
+
+    private Long clienteId;
+
+    private Long carrinhoId;
+
+    private Long produtoId;
+
+    private List<Long> produtoIds;
+
+    @BeforeEach
+    void setUp() {
+        Cliente cliente = entityManager.persist(new Cliente(null, "Cliente", "Endereço", TipoCliente.PRATA));
+
+        List<ItemCompra> itens = new ArrayList<>();
+        for (int i = 0; i < QUANTIDADE_ITENS; i++) {
+            Produto produto = entityManager.persist(
+                    new Produto(null, "Produto " + i, "Descrição", BigDecimal.TEN, 1, TipoProduto.LIVRO));
+            itens.add(new ItemCompra(null, produto, 1L));
+        }
+        CarrinhoDeCompras carrinho = entityManager.persist(new CarrinhoDeCompras(null, cliente, itens, null));
+
+        entityManager.flush();
+        entityManager.clear();
+
+        clienteId = cliente.getId();
+        carrinhoId = carrinho.getId();
+        produtoId = itens.get(0).getProduto().getId();
+        produtoIds = itens.stream().map(item -> item.getProduto().getId()).toList();
+
+        catalogoProdutos.versaoPrecos();
+
+        estatisticas = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        estatisticas.clear();
+
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, List.of()));
+    }
+
+    @Test
+    void finalizarCompra_DeveCarregarCarrinhoItensEProdutosSemNMaisUm() {
+        when(pagamentoExternal.autorizarPagamento(eq(clienteId), anyDouble())).thenReturn(new PagamentoDTO(true, 1L));
+
+        CompraDTO compra = compraService.finalizarCompra(carrinhoId, clienteId);
+
+        assertTrue(compra.sucesso());
+        // Tipo do cliente, carrinho com itens e, com o catálogo frio, subtotal e peso somados pelo banco
+        assertEquals(3, estatisticas.getPrepareStatementCount());
+        // Nenhum produto carregado como entidade
+        assertEquals(0, estatisticas.getEntityStatistics(Produto.class.getName()).getLoadCount());
+    }
+
+    @Test
+    void finalizarCompra_DeveLerSomenteIdsEQuantidadesDoBanco_QuandoClienteEProdutosEstiveremEmCache() {
+        when(pagamentoExternal.autorizarPagamento(eq(clienteId), anyDouble())).thenReturn(new PagamentoDTO(true, 1L));
+        compraService.finalizarCompra(carrinhoId, clienteId);
+        catalogoProdutos.buscarPorIds(produtoIds);
+        entityManager.clear();
+        estatisticas.clear();
+
+        CompraDTO compra = compraService.finalizarCompra(carrinhoId, clienteId);
+
+        assertTrue(compra.sucesso());
+        // Só o carrinho com itens; o tipo do cliente e os produtos vêm dos caches
+        assertEquals(1, estatisticas.getPrepareStatementCount());
+        verify(pagamentoExternal, times(2)).autorizarPagamento(clienteId, 550.0);
+    }
+
+    @Test
+    void finalizarCompras_DeveCarregarLoteComConsultasPorConjunto() {
+        when(pagamentoExternal.autorizarPagamento(eq(clienteId), anyDouble())).thenReturn(new PagamentoDTO(true, 1L));
+
+        List<CompraDTO> compras = compraService.finalizarCompras(List.of(new FinalizacaoCompraDTO(carrinhoId, clienteId)));
+
+        assertTrue(compras.get(0).sucesso());
+        // Tipos dos clientes, carrinhos com itens e produtos, cada um em uma única consulta
+        assertEquals(3, estatisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void finalizarCompra_DevePrecificarPelosTotaisDoCarrinho_QuandoForemDaVersaoAtualDePrecos() {
+        when(pagamentoExternal.autorizarPagamento(eq(clienteId), anyDouble())).thenReturn(new PagamentoDTO(true, 1L));
+        carrinhoService.adicionarItem(carrinhoId, clienteId, produtoId, 2L);
+        entityManager.flush();
+        entityManager.clear();
+        estatisticas.clear();
+        long consultasAoCatalogo = catalogoProdutos.estatisticas().requestCount();
+
+        CompraDTO compra = compraService.finalizarCompra(carrinhoId, clienteId);
+
+        assertTrue(compra.sucesso());
+        // Tipo do cliente e carrinho com itens; os produtos nem passam pelo catálogo
+        assertEquals(2, estatisticas.getPrepareStatementCount());
+        assertEquals(consultasAoCatalogo, catalogoProdutos.estatisticas().requestCount());
+        verify(pagamentoExternal).autorizarPagamento(clienteId, 650.0);
+    }
+
+    @Test
+    void buscarPorIds_DeveChegarAoMesmoCustoPelosTotaisDoBancoEPelosProdutosDoCatalogo() {
+        // Arrange
+        Random random = new Random(11);
+        Cliente cliente = entityManager.find(Cliente.class, clienteId);
+        List<Produto> produtos = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            produtos.add(entityManager.persist(new Produto(null, "Aleatório " + i, "Descrição",
+                    BigDecimal.valueOf(random.nextInt(150_000), 2), random.nextInt(25), TipoProduto.LIVRO)));
+        }
+        List<Long> ids = new ArrayList<>();
+        for (int c = 0; c < 60; c++) {
+            List<ItemCompra> itens = new ArrayList<>();
+            for (int i = random.nextInt(12); i > 0; i--) {
+                itens.add(new ItemCompra(null, produtos.get(random.nextInt(produtos.size())), 1L + random.nextInt(40)));
+            }
+            ids.add(entityManager.persist(new CarrinhoDeCompras(null, cliente, itens, null)).getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+        catalogoProdutos.invalidarTodos();
+
+        // Act
+        List<FinalizacaoCompraDTO> finalizacoes = ids.stream().map(id -> new FinalizacaoCompraDTO(id, clienteId)).toList();
+        Map<Long, CarrinhoDeCompras> peloBanco = carrinhoService.buscarPorIds(finalizacoes);
+        entityManager.clear();
+        catalogoProdutos.buscarPorIds(produtos.stream().map(Produto::getId).toList());
+        Map<Long, CarrinhoDeCompras> peloCatalogo = carrinhoService.buscarPorIds(finalizacoes);
+
+        // Assert
+        for (Long id : ids) {
+            CarrinhoDeCompras totalizado = peloBanco.get(id);
+            CarrinhoDeCompras itemAItem = peloCatalogo.get(id);
+            assertEquals(!totalizado.getItens().isEmpty(), totalizado.isTotaisConferidos());
+            assertFalse(itemAItem.isTotaisConferidos());
+            for (TipoCliente tipo : TipoCliente.values()) {
+                assertEquals(calculadoraCusto.calcularCustoTotal(itemAItem, tipo),
+                        calculadoraCusto.calcularCustoTotal(totalizado, tipo), "carrinho " + id + ", " + tipo);
+            }
+        }
+    }
+
+    @Test
+    void exportarCarrinhos_DeveLerTodosOsCarrinhosEmUmaConsultaEPrecificarCadaUm() {
+        Cliente outro = entityManager.persist(new Cliente(null, "Outro", "Endereço", TipoCliente.OURO));
+        Long vazioId = entityManager.persist(new CarrinhoDeCompras(null, outro, new ArrayList<>(), null)).getId();
+        entityManager.flush();
+        entityManager.clear();
+        estatisticas.clear();
+        List<CarrinhoExportadoDTO> exportados = new ArrayList<>();
+
+        compraService.exportarCarrinhos(exportados::add);
+
+        assertEquals(List.of(
+                new CarrinhoExportadoDTO(carrinhoId, clienteId, null, QUANTIDADE_ITENS, new BigDecimal("550.00")),
+                new CarrinhoExportadoDTO(vazioId, outro.getId(), null, 0, new BigDecimal("0.00"))), exportados);
+        // As linhas de todos os carrinhos e, com o catálogo frio, os produtos do primeiro
+        assertEquals(2, estatisticas.getPrepareStatementCount());
+        // Nem carrinhos nem produtos ficam presos à sessão durante a exportação
+        assertEquals(0, estatisticas.getEntityLoadCount());
+        assertEquals(0, entityManager.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount());
+    }
+}
@@ -5,30 +5,53 @@ import static org.mockito.Mockito.*;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
 
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.FinalizacaoCompraDTO;
+import ecommerce.dto.PagamentoDTO;
 import ecommerce.entity.CarrinhoDeCompras;
 import ecommerce.entity.Cliente;
 import ecommerce.entity.ItemCompra;
 import ecommerce.entity.Produto;
 import ecommerce.entity.TipoCliente;
+import ecommerce.external.ServicoIndisponivelException;
 import ecommerce.external.fake.EstoqueSimulado;
 import ecommerce.external.fake.PagamentoSimulado;
 import ecommerce.service.CarrinhoDeComprasService;
 import ecommerce.service.ClienteService;
+import ecommerce.service.CalculadoraCusto;
 import ecommerce.service.CompraService;
+import ecommerce.service.MetricasCompra;
+import ecommerce.service.PedidoService;
+import ecommerce.service.RegrasPreco;
+import ecommerce.service.TabelasPreco;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 class CompraServiceTest {
 
-    @InjectMocks
     private CompraService compraService;
 
     @Mock
@@ -43,9 +66,29 @@ class CompraServiceTest {
     @Mock
     private PagamentoSimulado pagamentoExternal;
 
+    @Mock
+    private PedidoService pedidoService;
+
+    private ExecutorService chamadasExternas;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final MetricasCompra metricas = new MetricasCompra(registry);
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        chamadasExternas = Executors.newCachedThreadPool();
+        compraService = new CompraService(carrinhoService, clienteService, estoqueExternal, pagamentoExternal,
+                chamadasExternas, Duration.ofSeconds(1), Duration.ofSeconds(1), metricas, new CalculadoraCusto(),
+                pedidoService);
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(true, List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        chamadasExternas.shutdownNow();
     }
 
     @Test
@@ -181,8 +224,258 @@ class CompraServiceTest {
         assertEquals(esperado, custoTotal);
     }
 
+    @Test
+    void testFinalizarCompras_FalhaDeUmCarrinhoNaoInterrompeOsDemais() {
+        CarrinhoDeCompras carrinho1 = criarCarrinho(TipoCliente.BRONZE,
+                Collections.singletonList(criarProduto("Produto I", BigDecimal.valueOf(100), 1)),
+                Collections.singletonList(1L));
+        carrinho1.setId(10L);
+        carrinho1.getCliente().setId(1L);
+        CarrinhoDeCompras carrinho2 = criarCarrinho(TipoCliente.OURO,
+                Collections.singletonList(criarProduto("Produto J", BigDecimal.valueOf(50), 1)),
+                Collections.singletonList(2L));
+        carrinho2.setId(20L);
+        carrinho2.getCliente().setId(2L);
+
+        when(clienteService.buscarTiposPorIds(anyCollection()))
+                .thenReturn(Map.of(1L, TipoCliente.BRONZE, 2L, TipoCliente.OURO));
+        when(carrinhoService.buscarPorIds(anyCollection(), any())).thenReturn(Map.of(10L, carrinho1, 20L, carrinho2));
+        when(pagamentoExternal.autorizarPagamento(1L, 100.0)).thenReturn(new PagamentoDTO(true, 111L));
+        when(pagamentoExternal.autorizarPagamento(2L, 100.0)).thenReturn(new PagamentoDTO(false, null));
+
+        List<CompraDTO> compras = compraService.finalizarCompras(List.of(
+                new FinalizacaoCompraDTO(10L, 1L),
+                new FinalizacaoCompraDTO(20L, 1L),
+                new FinalizacaoCompraDTO(20L, 2L),
+                new FinalizacaoCompraDTO(30L, 3L)));
+
+        assertEquals(new CompraDTO(true, 111L, "Compra finalizada com sucesso."), compras.get(0));
+        assertEquals(new CompraDTO(false, null, "Carrinho não encontrado."), compras.get(1));
+        assertEquals(new CompraDTO(false, null, "Pagamento não autorizado."), compras.get(2));
+        assertEquals(new CompraDTO(false, null, "Cliente não encontrado"), compras.get(3));
+        verify(pagamentoExternal, times(2)).autorizarPagamento(anyLong(), anyDouble());
+    }
+
+    @Test
+    void finalizarCompras_DeveRecusarSoOPar_QuandoIdFaltarOuParSeRepetir() {
+        // Arrange
+        CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE,
+                Collections.singletonList(criarProduto("Produto L", BigDecimal.valueOf(100), 1)),
+                Collections.singletonList(1L));
+        carrinho.setId(10L);
+        carrinho.getCliente().setId(1L);
+        when(clienteService.buscarTiposPorIds(Set.of(1L))).thenReturn(Map.of(1L, TipoCliente.BRONZE));
+        when(carrinhoService.buscarPorIds(eq(List.of(new FinalizacaoCompraDTO(10L, 1L))), any()))
+                .thenReturn(Map.of(10L, carrinho));
+        when(pagamentoExternal.autorizarPagamento(1L, 100.0)).thenReturn(new PagamentoDTO(true, 111L));
+
+        // Act
+        List<CompraDTO> compras = compraService.finalizarCompras(Arrays.asList(
+                new FinalizacaoCompraDTO(10L, null),
+                new FinalizacaoCompraDTO(10L, 1L),
+                new FinalizacaoCompraDTO(null, 1L),
+                null,
+                new FinalizacaoCompraDTO(10L, 1L)));
+
+        // Assert
+        assertEquals(List.of(new CompraDTO(false, null, "Cliente não encontrado"),
+                new CompraDTO(true, 111L, "Compra finalizada com sucesso."),
+                new CompraDTO(false, null, "Carrinho não encontrado."),
+                new CompraDTO(false, null, "Carrinho não encontrado."),
+                new CompraDTO(false, null, "Carrinho repetido no lote.")), compras);
+        verify(pagamentoExternal, times(1)).autorizarPagamento(anyLong(), anyDouble());
+    }
+
+    @Test
+    void finalizarCompra_DeveRecusarComoIndisponivel_QuandoPoolDeChamadasExternasRecusar() {
+        // Arrange
+        compraService = new CompraService(carrinhoService, clienteService, estoqueExternal, pagamentoExternal,
+                tarefa -> {
+                    throw new RejectedExecutionException("Pool cheio");
+                }, Duration.ofSeconds(1), Duration.ofSeconds(1), metricas, new CalculadoraCusto(), pedidoService);
+        criarCarrinhoDoCliente(1L);
+
+        // Act
+        ServicoIndisponivelException erro = assertThrows(ServicoIndisponivelException.class,
+                () -> compraService.finalizarCompra(10L, 1L));
+
+        // Assert
+        assertEquals("Serviço de estoque sobrecarregado.", erro.getMessage());
+        assertEquals(1, registry.get("ecommerce.checkout.resultado").tag("resultado", "indisponivel").counter().count());
+    }
+
+    @Test
+    void finalizarCompras_DeveCaberNoPool_QuandoLoteTiverMaisCarrinhosQueAsThreads() {
+        // Arrange
+        ThreadPoolExecutor pequeno = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(2));
+        compraService = new CompraService(carrinhoService, clienteService, estoqueExternal, pagamentoExternal,
+                pequeno, Duration.ofSeconds(1), Duration.ofSeconds(1), metricas, new CalculadoraCusto(), pedidoService,
+                2);
+        Map<Long, CarrinhoDeCompras> carrinhos = new HashMap<>();
+        List<FinalizacaoCompraDTO> finalizacoes = new ArrayList<>();
+        for (long id = 1; id <= 4; id++) {
+            CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE,
+                    Collections.singletonList(criarProduto("Produto " + id, BigDecimal.valueOf(100), 1)),
+                    Collections.singletonList(1L));
+            carrinho.setId(id * 10);
+            carrinho.getCliente().setId(id);
+            carrinhos.put(id * 10, carrinho);
+            finalizacoes.add(new FinalizacaoCompraDTO(id * 10, id));
+            when(pagamentoExternal.autorizarPagamento(id, 100.0)).thenReturn(new PagamentoDTO(true, id));
+        }
+        when(clienteService.buscarTiposPorIds(anyCollection())).thenReturn(Map.of(1L, TipoCliente.BRONZE,
+                2L, TipoCliente.BRONZE, 3L, TipoCliente.BRONZE, 4L, TipoCliente.BRONZE));
+        when(carrinhoService.buscarPorIds(anyCollection(), any())).thenReturn(carrinhos);
+
+        // Act
+        List<CompraDTO> compras = compraService.finalizarCompras(finalizacoes);
+
+        // Assert
+        pequeno.shutdownNow();
+        assertTrue(compras.stream().allMatch(CompraDTO::sucesso), compras.toString());
+    }
+
+    @Test
+    void finalizarCompra_DeveConcluirCompra_QuandoEstoqueEPagamentoConfirmam() {
+        // Arrange
+        CarrinhoDeCompras carrinho = criarCarrinhoDoCliente(1L);
+        when(pagamentoExternal.autorizarPagamento(1L, 100.0)).thenReturn(new PagamentoDTO(true, 111L));
+
+        // Act
+        CompraDTO compra = compraService.finalizarCompra(10L, 1L);
+
+        // Assert
+        assertEquals(new CompraDTO(true, 111L, "Compra finalizada com sucesso."), compra);
+        List<Long> ids = List.of(carrinho.getItens().get(0).getProduto().getId());
+        verify(estoqueExternal).verificarDisponibilidade(ids, List.of(1L));
+        // A baixa fica gravada com o pedido e não é chamada durante a compra
+        verify(pedidoService).registrar(1L, carrinho, new BigDecimal("100.00"), 111L);
+        verify(estoqueExternal, never()).darBaixa(anyList(), anyList());
+        verify(pagamentoExternal, never()).cancelarPagamento(anyLong(), anyLong());
+    }
+
+    @Test
+    void finalizarCompra_DeveRecusarSemCobrar_QuandoItensIndisponiveis() {
+        // Arrange
+        criarCarrinhoDoCliente(1L);
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(5L)));
+
+        // Act
+        IllegalStateException erro = assertThrows(IllegalStateException.class,
+                () -> compraService.finalizarCompra(10L, 1L));
+
+        // Assert
+        assertEquals("Itens fora de estoque.", erro.getMessage());
+        verify(pagamentoExternal, never()).autorizarPagamento(anyLong(), anyDouble());
+        verify(pedidoService, never()).registrar(any(), any(), any(), any());
+    }
+
+    @Test
+    void finalizarCompra_DeveCancelarPagamento_QuandoPedidoNaoForGravado() {
+        // Arrange
+        criarCarrinhoDoCliente(1L);
+        when(pagamentoExternal.autorizarPagamento(1L, 100.0)).thenReturn(new PagamentoDTO(true, 111L));
+        when(pedidoService.registrar(any(), any(), any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("Banco indisponível"));
+
+        // Act
+        assertThrows(DataAccessResourceFailureException.class, () -> compraService.finalizarCompra(10L, 1L));
+
+        // Assert
+        verify(pagamentoExternal).cancelarPagamento(1L, 111L);
+        assertEquals(1, registry.get("ecommerce.checkout.resultado").tag("resultado", "erro").counter().count());
+    }
+
+    @Test
+    void finalizarCompra_DeveCancelarAutorizacaoTardia_QuandoPagamentoEstouraPrazo() throws InterruptedException {
+        // Arrange
+        compraService = new CompraService(carrinhoService, clienteService, estoqueExternal, pagamentoExternal,
+                chamadasExternas, Duration.ofSeconds(1), Duration.ofMillis(50), metricas, new CalculadoraCusto(),
+                pedidoService);
+        criarCarrinhoDoCliente(1L);
+        CountDownLatch liberarPagamento = new CountDownLatch(1);
+        when(pagamentoExternal.autorizarPagamento(1L, 100.0)).thenAnswer(invocation -> {
+            liberarPagamento.await();
+            return new PagamentoDTO(true, 222L);
+        });
+
+        // Act
+        IllegalStateException erro = assertThrows(IllegalStateException.class,
+                () -> compraService.finalizarCompra(10L, 1L));
+        liberarPagamento.countDown();
+
+        // Assert
+        assertEquals("Tempo esgotado na autorização do pagamento.", erro.getMessage());
+        verify(pagamentoExternal, timeout(1000)).cancelarPagamento(1L, 222L);
+        verify(pedidoService, never()).registrar(any(), any(), any(), any());
+    }
+
+    @Test
+    void finalizarCompra_DeveRegistrarEtapasEResultado_QuandoCompraConcluida() {
+        // Arrange
+        criarCarrinhoDoCliente(1L);
+        when(pagamentoExternal.autorizarPagamento(1L, 100.0)).thenReturn(new PagamentoDTO(true, 111L));
+
+        // Act
+        compraService.finalizarCompra(10L, 1L);
+
+        // Assert
+        for (String etapa : List.of("cliente", "carrinho", "precificacao", "estoque", "pagamento", "pedido")) {
+            assertEquals(1, registry.get("ecommerce.checkout.etapa").tag("etapa", etapa).timer().count(), etapa);
+        }
+        assertEquals(1, registry.get("ecommerce.checkout.resultado").tag("resultado", "sucesso").counter().count());
+        assertEquals(1, registry.get("ecommerce.checkout.carrinho.faixa.peso").tag("faixa", "isento").counter().count());
+        assertEquals(0, registry.get("ecommerce.checkout.em.andamento").gauge().value());
+    }
+
+    @Test
+    void registrarCarrinho_DeveUsarFaixasDePesoDaTabelaPublicada() {
+        // Arrange
+        TabelasPreco tabelas = new TabelasPreco(RegrasPreco.PADRAO);
+        MetricasCompra metricasDaTabela = new MetricasCompra(registry, tabelas);
+        CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE,
+                List.of(criarProduto("Produto", BigDecimal.TEN, 25)), List.of(1L));
+        metricasDaTabela.registrarCarrinho(carrinho);
+
+        // Act
+        tabelas.publicar(RegrasPreco.compilar(List.of(20, 30), List.of(BigDecimal.ZERO, BigDecimal.ONE, BigDecimal.TEN),
+                List.of(BigDecimal.ONE, BigDecimal.ONE, BigDecimal.ONE), List.of(), List.of()));
+        metricasDaTabela.registrarCarrinho(carrinho);
+
+        // Assert
+        assertEquals(1, registry.get("ecommerce.checkout.carrinho.faixa.peso").tag("faixa", "ate_50").counter().count());
+        assertEquals(1, registry.get("ecommerce.checkout.carrinho.faixa.peso").tag("faixa", "ate_30").counter().count());
+        assertEquals(0, registry.get("ecommerce.checkout.carrinho.faixa.peso").tag("faixa", "acima_30").counter().count());
+    }
+
+    @Test
+    void finalizarCompra_DeveContarConflito_QuandoItensIndisponiveis() {
+        // Arrange
+        criarCarrinhoDoCliente(1L);
+        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(5L)));
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(10L, 1L));
+
+        // Assert
+        assertEquals(1, registry.get("ecommerce.checkout.resultado").tag("resultado", "conflito").counter().count());
+        assertEquals(0, registry.get("ecommerce.checkout.resultado").tag("resultado", "sucesso").counter().count());
+    }
+
     // Métodos auxiliares
 
+    private CarrinhoDeCompras criarCarrinhoDoCliente(Long clienteId) {
+        Produto produto = criarProduto("Produto K", BigDecimal.valueOf(100), 1);
+        produto.setId(5L);
+        CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE, Collections.singletonList(produto),
+                Collections.singletonList(1L));
+        when(clienteService.buscarTipoPorId(clienteId)).thenReturn(TipoCliente.BRONZE);
+        when(carrinhoService.buscarPorCarrinhoIdEClienteId(eq(10L), eq(clienteId), any())).thenReturn(carrinho);
+        return carrinho;
+    }
+
     private Produto criarProduto(String nome, BigDecimal preco, int peso) {
         Produto produto = new Produto();
         produto.setNome(nome);
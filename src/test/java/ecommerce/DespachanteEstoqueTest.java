@@ -0,0 +1,276 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.EventoEstoque;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Pedido;
+import ecommerce.entity.Produto;
+import ecommerce.entity.SituacaoEvento;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.repository.EventoEstoqueRepository;
+import ecommerce.repository.PedidoRepository;
+import ecommerce.service.DespachanteEstoque;
+import ecommerce.service.PedidoService;
+
+@DataJpaTest
+class DespachanteEstoqueTest {
+
+    private static final long PRODUTO_A = 10L;
+    private static final long PRODUTO_B = 20L;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private EventoEstoqueRepository repository;
+
+    @Autowired
+    private TransactionTemplate transacao;
+
+    private final IEstoqueExternal estoque = mock(IEstoqueExternal.class);
+
+    private Instant agora;
+
+    @BeforeEach
+    void setUp() {
+        // PedidoService e DespachanteEstoque usam o mesmo relógio fixo
+        agora = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    @Test
+    void registrar_DeveGravarPedidoEUmaBaixaPendentePorItem() {
+        // Act
+        Pedido pedido = registrarPedido(PRODUTO_A, 3L, PRODUTO_B, 1L);
+        entityManager.flush();
+        entityManager.clear();
+
+        // Assert
+        Pedido gravado = entityManager.find(Pedido.class, pedido.getId());
+        assertEquals(111L, gravado.getTransacaoId());
+        assertEquals(new BigDecimal("100.00"), gravado.getCustoTotal());
+        List<EventoEstoque> eventos = repository.findAll();
+        assertEquals(List.of(PRODUTO_A, PRODUTO_B), eventos.stream().map(EventoEstoque::getProdutoId).toList());
+        assertEquals(List.of(3L, 1L), eventos.stream().map(EventoEstoque::getQuantidade).toList());
+        assertTrue(eventos.stream().allMatch(evento -> evento.getSituacao() == SituacaoEvento.PENDENTE
+                && pedido.getId().equals(evento.getPedidoId())));
+    }
+
+    @Test
+    void despacharLote_DeveEnviarBaixasDeVariosPedidosEmUmaChamada() {
+        // Arrange
+        registrarPedido(PRODUTO_A, 3L, PRODUTO_B, 1L);
+        registrarPedido(PRODUTO_A, 2L);
+        when(estoque.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+
+        // Act
+        int enviados = despachante(2).despacharLote();
+
+        // Assert
+        assertEquals(3, enviados);
+        // Quantidades do mesmo produto somadas
+        verify(estoque).darBaixa(List.of(PRODUTO_A, PRODUTO_B), List.of(5L, 1L));
+        assertEquals(List.of(SituacaoEvento.ENVIADO), situacoes());
+        assertEquals(0, despachante(2).despacharLote());
+        verifyNoMoreInteractions(estoque);
+    }
+
+    @Test
+    void despacharLote_DeveEnviarUmAUmEManterOrdemPorProduto_QuandoLoteFalha() {
+        // Arrange
+        List<Long> eventos = new ArrayList<>();
+        registrarPedido(PRODUTO_A, 1L, PRODUTO_B, 1L);
+        registrarPedido(PRODUTO_A, 2L);
+        repository.findAll().forEach(evento -> eventos.add(evento.getId()));
+        // Recusa o lote e qualquer baixa do produto A
+        when(estoque.darBaixa(anyList(), anyList())).thenAnswer(invocacao -> {
+            List<Long> ids = invocacao.getArgument(0);
+            return new EstoqueBaixaDTO(ids.size() == 1 && !ids.contains(PRODUTO_A));
+        });
+
+        // Act
+        int enviados = despachante(2).despacharLote();
+
+        // Assert
+        assertEquals(1, enviados);
+        verify(estoque).darBaixa(List.of(PRODUTO_A), List.of(1L));
+        verify(estoque).darBaixa(List.of(PRODUTO_B), List.of(1L));
+        // A segunda baixa do produto A nem é tentada depois da falha da primeira
+        verify(estoque, never()).darBaixa(List.of(PRODUTO_A), List.of(2L));
+        entityManager.flush();
+        entityManager.clear();
+        EventoEstoque falhou = repository.findById(eventos.get(0)).orElseThrow();
+        assertEquals(SituacaoEvento.PENDENTE, falhou.getSituacao());
+        assertEquals(1, falhou.getTentativas());
+        assertEquals(agora.plusSeconds(1), falhou.getProximaTentativa());
+        assertEquals("Baixa recusada pelo estoque.", falhou.getUltimoErro());
+        assertEquals(SituacaoEvento.ENVIADO, repository.findById(eventos.get(1)).orElseThrow().getSituacao());
+        assertEquals(0, repository.findById(eventos.get(2)).orElseThrow().getTentativas());
+
+        // Enquanto a primeira espera, a segunda baixa do produto A também espera
+        clearInvocations(estoque);
+        assertEquals(0, despachante(2).despacharLote());
+        verifyNoInteractions(estoque);
+
+        // Passada a espera, as duas saem juntas e na ordem
+        when(estoque.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+        agora = agora.plusSeconds(1);
+        assertEquals(2, despachante(2).despacharLote());
+        verify(estoque).darBaixa(List.of(PRODUTO_A), List.of(3L));
+        assertEquals(List.of(SituacaoEvento.ENVIADO), situacoes());
+    }
+
+    @Test
+    void despacharLote_DeveDesistirDoEventoEDobrarEspera_QuandoTentativasSeEsgotam() {
+        // Arrange
+        registrarPedido(PRODUTO_A, 1L);
+        registrarPedido(PRODUTO_A, 2L);
+        Long primeiro = repository.findAll().get(0).getId();
+        when(estoque.darBaixa(List.of(PRODUTO_A), List.of(1L))).thenThrow(new IllegalStateException("Estoque fora"));
+        when(estoque.darBaixa(List.of(PRODUTO_A), List.of(3L))).thenReturn(new EstoqueBaixaDTO(false));
+        when(estoque.darBaixa(List.of(PRODUTO_A), List.of(2L))).thenReturn(new EstoqueBaixaDTO(true));
+
+        // Act
+        despachante(3).despacharLote();
+        agora = agora.plusSeconds(1);
+        despachante(3).despacharLote();
+        entityManager.flush();
+        entityManager.clear();
+        Instant segundaEspera = repository.findById(primeiro).orElseThrow().getProximaTentativa();
+        agora = agora.plusSeconds(2);
+        despachante(3).despacharLote();
+
+        // Assert
+        assertEquals(agora, segundaEspera);
+        entityManager.flush();
+        entityManager.clear();
+        EventoEstoque desistido = repository.findById(primeiro).orElseThrow();
+        assertEquals(SituacaoEvento.FALHOU, desistido.getSituacao());
+        assertEquals(3, desistido.getTentativas());
+        assertTrue(desistido.getUltimoErro().contains("Estoque fora"));
+        // O evento abandonado não segura mais o produto
+        agora = agora.plusSeconds(60);
+        assertEquals(1, despachante(3).despacharLote());
+        assertEquals(List.of(SituacaoEvento.ENVIADO, SituacaoEvento.FALHOU), situacoes().stream().sorted().toList());
+    }
+
+    @Test
+    void despacharLote_DeveAdiarLoteInteiroSemEnviarUmAUm_QuandoResultadoDoLoteForIncerto() {
+        // Arrange
+        registrarPedido(PRODUTO_A, 1L, PRODUTO_B, 1L);
+        when(estoque.darBaixa(anyList(), anyList()))
+                .thenThrow(new IllegalStateException("Tempo esgotado na chamada ao serviço de estoque."));
+
+        // Act
+        int enviados = despachante(3).despacharLote();
+
+        // Assert
+        assertEquals(0, enviados);
+        // O lote pode ter sido aplicado: nada é reenviado na mesma rodada
+        verify(estoque, times(1)).darBaixa(anyList(), anyList());
+        entityManager.flush();
+        entityManager.clear();
+        assertTrue(repository.findAll().stream().allMatch(evento -> evento.getSituacao() == SituacaoEvento.PENDENTE
+                && evento.getTentativas() == 1 && agora.plusSeconds(1).equals(evento.getProximaTentativa())
+                && evento.getUltimoErro().contains("Tempo esgotado")));
+    }
+
+    @Test
+    void despacharLote_DeveEnviarOutrosProdutos_QuandoProdutoEmEsperaTiverMaisEventosQueOLote() {
+        // Arrange
+        registrarPedido(PRODUTO_A, 1L);
+        EventoEstoque emEspera = repository.findAll().get(0);
+        emEspera.setTentativas(1);
+        emEspera.setProximaTentativa(agora.plusSeconds(60));
+        for (int i = 0; i < 3; i++) {
+            registrarPedido(PRODUTO_A, 1L);
+        }
+        registrarPedido(PRODUTO_B, 1L);
+        entityManager.flush();
+        when(estoque.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+
+        // Act
+        int enviados = despachante(3, 2).despacharLote();
+
+        // Assert
+        assertEquals(1, enviados);
+        verify(estoque).darBaixa(List.of(PRODUTO_B), List.of(1L));
+        verifyNoMoreInteractions(estoque);
+    }
+
+    @Test
+    void despacharLote_DeveManterEventosSemContarTentativa_QuandoEstoqueIndisponivel() {
+        // Arrange
+        registrarPedido(PRODUTO_A, 1L, PRODUTO_B, 1L);
+        when(estoque.darBaixa(anyList(), anyList())).thenThrow(new ServicoIndisponivelException("Circuito aberto"));
+
+        // Act
+        int enviados = despachante(2).despacharLote();
+
+        // Assert
+        assertEquals(0, enviados);
+        verify(estoque, times(1)).darBaixa(anyList(), anyList());
+        entityManager.flush();
+        entityManager.clear();
+        assertTrue(repository.findAll().stream().allMatch(evento -> evento.getSituacao() == SituacaoEvento.PENDENTE
+                && evento.getTentativas() == 0));
+    }
+
+    // Métodos auxiliares
+
+    private DespachanteEstoque despachante(int tentativasMaximas) {
+        return despachante(tentativasMaximas, 100);
+    }
+
+    private DespachanteEstoque despachante(int tentativasMaximas, int tamanhoLote) {
+        return new DespachanteEstoque(repository, estoque, transacao, tamanhoLote, tentativasMaximas,
+                Duration.ofSeconds(1), Duration.ofMinutes(5), relogio());
+    }
+
+    private Clock relogio() {
+        return Clock.fixed(agora, ZoneOffset.UTC);
+    }
+
+    // Pares de produto e quantidade
+    private Pedido registrarPedido(long... produtosEQuantidades) {
+        List<ItemCompra> itens = new ArrayList<>();
+        for (int i = 0; i < produtosEQuantidades.length; i += 2) {
+            Produto produto = new Produto(produtosEQuantidades[i], "Produto", "Descrição", BigDecimal.TEN, 1,
+                    TipoProduto.LIVRO);
+            itens.add(new ItemCompra(null, produto, produtosEQuantidades[i + 1]));
+        }
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras(5L, null, itens, null);
+        return new PedidoService(pedidoRepository, repository, relogio())
+                .registrar(1L, carrinho, new BigDecimal("100.00"), 111L);
+    }
+
+    private List<SituacaoEvento> situacoes() {
+        entityManager.flush();
+        entityManager.clear();
+        return repository.findAll().stream().map(EventoEstoque::getSituacao).distinct().toList();
+    }
+}
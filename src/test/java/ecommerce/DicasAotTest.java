@@ -0,0 +1,54 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import ecommerce.config.DicasAot;
+import ecommerce.dto.CarrinhoExportadoDTO;
+import ecommerce.dto.TotaisCarrinhoDTO;
+import ecommerce.entity.EventoEstoque;
+import ecommerce.entity.Produto;
+import ecommerce.entity.SequenciaComIdAtribuido;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+
+class DicasAotTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @Test
+    void registerHints_DeveRegistrarCamposEConstrutoresDasEntidades() throws Exception {
+        // Act
+        new DicasAot().registerHints(hints, getClass().getClassLoader());
+
+        // Assert
+        assertTrue(RuntimeHintsPredicates.reflection().onType(Produto.class)
+                .withMemberCategories(MemberCategory.DECLARED_FIELDS, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)
+                .test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onField(EventoEstoque.class.getDeclaredField("proximaTentativa"))
+                .test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(TipoProduto.class.getMethod("valueOf", String.class))
+                .test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onConstructor(SequenciaComIdAtribuido.class.getConstructor())
+                .test(hints));
+    }
+
+    @Test
+    void registerHints_DeveRegistrarConstrutoresDosDtosEProxiesDosClientesExternos() {
+        // Act
+        new DicasAot().registerHints(hints, getClass().getClassLoader());
+
+        // Assert
+        // Construtor usado pelo "select new" da soma dos totais dos carrinhos
+        assertTrue(RuntimeHintsPredicates.reflection().onConstructor(TotaisCarrinhoDTO.class.getDeclaredConstructors()[0])
+                .test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(CarrinhoExportadoDTO.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.proxies().forInterfaces(IEstoqueExternal.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.proxies().forInterfaces(IPagamentoExternal.class).test(hints));
+    }
+}
@@ -0,0 +1,216 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.external.EstoqueAgrupado;
+import ecommerce.external.IEstoqueExternal;
+
+class EstoqueAgrupadoTest {
+
+    private final IEstoqueExternal estoque = mock(IEstoqueExternal.class);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void darBaixa_DeveSomarQuantidadesEmUmaChamada_QuandoPedidosChegamNaMesmaJanela() throws Exception {
+        // Arrange
+        // Janela longa: o lote só fecha quando atinge o tamanho máximo
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofSeconds(30), 3);
+        when(estoque.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(true));
+
+        // Act
+        List<EstoqueBaixaDTO> resultados = emParalelo(
+                () -> agrupado.darBaixa(List.of(1L, 2L), List.of(1L, 2L)),
+                () -> agrupado.darBaixa(List.of(2L), List.of(3L)),
+                () -> agrupado.darBaixa(List.of(3L), List.of(1L)));
+
+        // Assert
+        resultados.forEach(resultado -> assertTrue(resultado.sucesso()));
+        ArgumentCaptor<List<Long>> ids = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<Long>> quantidades = ArgumentCaptor.forClass(List.class);
+        verify(estoque, times(1)).darBaixa(ids.capture(), quantidades.capture());
+        Map<Long, Long> totais = new HashMap<>();
+        for (int i = 0; i < ids.getValue().size(); i++) {
+            totais.put(ids.getValue().get(i), quantidades.getValue().get(i));
+        }
+        assertEquals(Map.of(1L, 1L, 2L, 5L, 3L, 1L), totais);
+    }
+
+    @Test
+    void darBaixa_DeveRepetirPedidosIndividualmente_QuandoLoteForRecusado() throws Exception {
+        // Arrange
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofSeconds(30), 2);
+        when(estoque.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(false));
+        when(estoque.darBaixa(List.of(1L), List.of(1L))).thenReturn(new EstoqueBaixaDTO(true));
+
+        // Act
+        List<EstoqueBaixaDTO> resultados = emParalelo(
+                () -> agrupado.darBaixa(List.of(1L), List.of(1L)),
+                () -> agrupado.darBaixa(List.of(2L), List.of(5L)));
+
+        // Assert
+        assertTrue(resultados.get(0).sucesso());
+        assertFalse(resultados.get(1).sucesso());
+        verify(estoque, times(3)).darBaixa(anyList(), anyList());
+    }
+
+    @Test
+    void darBaixa_DeveRepetirPedidosAoMesmoTempo_QuandoLoteForRecusado() throws Exception {
+        // Arrange
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofSeconds(30), 2);
+        // Cada repetição só termina quando a outra também começou
+        CountDownLatch repeticoes = new CountDownLatch(2);
+        when(estoque.darBaixa(anyList(), anyList())).thenReturn(new EstoqueBaixaDTO(false));
+        when(estoque.darBaixa(List.of(1L), List.of(1L))).thenAnswer(invocation -> {
+            repeticoes.countDown();
+            return new EstoqueBaixaDTO(repeticoes.await(5, TimeUnit.SECONDS));
+        });
+        when(estoque.darBaixa(List.of(2L), List.of(1L))).thenAnswer(invocation -> {
+            repeticoes.countDown();
+            return new EstoqueBaixaDTO(repeticoes.await(5, TimeUnit.SECONDS));
+        });
+
+        // Act
+        List<EstoqueBaixaDTO> resultados = emParalelo(
+                () -> agrupado.darBaixa(List.of(1L), List.of(1L)),
+                () -> agrupado.darBaixa(List.of(2L), List.of(1L)));
+
+        // Assert
+        resultados.forEach(resultado -> assertTrue(resultado.sucesso()));
+        verify(estoque, times(3)).darBaixa(anyList(), anyList());
+    }
+
+    @Test
+    void verificarDisponibilidade_DeveConsultarIndividualmente_QuandoLoteIndisponivelNaoInformarProdutos()
+            throws Exception {
+        // Arrange
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofSeconds(30), 2);
+        when(estoque.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(false, List.of()));
+        when(estoque.verificarDisponibilidade(List.of(1L), List.of(1L)))
+                .thenReturn(new DisponibilidadeDTO(true, List.of()));
+        when(estoque.verificarDisponibilidade(List.of(2L), List.of(1L)))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(2L)));
+
+        // Act
+        List<DisponibilidadeDTO> resultados = emParalelo(
+                () -> agrupado.verificarDisponibilidade(List.of(1L), List.of(1L)),
+                () -> agrupado.verificarDisponibilidade(List.of(2L), List.of(1L)));
+
+        // Assert
+        assertTrue(resultados.get(0).disponivel());
+        assertEquals(new DisponibilidadeDTO(false, List.of(2L)), resultados.get(1));
+        verify(estoque, times(3)).verificarDisponibilidade(anyList(), anyList());
+    }
+
+    @Test
+    void verificarDisponibilidade_DeveAtribuirIndisponiveisAoPedido_QuandoProdutoNaoForCompartilhado() throws Exception {
+        // Arrange
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofSeconds(30), 2);
+        when(estoque.verificarDisponibilidade(anyList(), anyList()))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(2L)));
+
+        // Act
+        List<DisponibilidadeDTO> resultados = emParalelo(
+                () -> agrupado.verificarDisponibilidade(List.of(1L), List.of(1L)),
+                () -> agrupado.verificarDisponibilidade(List.of(2L, 3L), List.of(1L, 1L)));
+
+        // Assert
+        assertEquals(new DisponibilidadeDTO(true, List.of()), resultados.get(0));
+        assertEquals(new DisponibilidadeDTO(false, List.of(2L)), resultados.get(1));
+        verify(estoque, times(1)).verificarDisponibilidade(anyList(), anyList());
+    }
+
+    @Test
+    void verificarDisponibilidade_DeveConsultarIndividualmente_QuandoProdutoIndisponivelForCompartilhado()
+            throws Exception {
+        // Arrange
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofSeconds(30), 2);
+        when(estoque.verificarDisponibilidade(List.of(1L), List.of(3L)))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(1L)));
+        when(estoque.verificarDisponibilidade(List.of(1L), List.of(1L)))
+                .thenReturn(new DisponibilidadeDTO(true, List.of()));
+        when(estoque.verificarDisponibilidade(List.of(1L), List.of(2L)))
+                .thenReturn(new DisponibilidadeDTO(true, List.of()));
+
+        // Act
+        List<DisponibilidadeDTO> resultados = emParalelo(
+                () -> agrupado.verificarDisponibilidade(List.of(1L), List.of(1L)),
+                () -> agrupado.verificarDisponibilidade(List.of(1L), List.of(2L)));
+
+        // Assert
+        assertTrue(resultados.get(0).disponivel());
+        assertTrue(resultados.get(1).disponivel());
+        verify(estoque, times(3)).verificarDisponibilidade(anyList(), anyList());
+    }
+
+    @Test
+    void darBaixa_DeveChamarEstoqueDiretamente_QuandoJanelaFecharComUmPedido() {
+        // Arrange
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofMillis(1), 200);
+        when(estoque.darBaixa(List.of(1L), List.of(4L))).thenReturn(new EstoqueBaixaDTO(true));
+
+        // Act
+        EstoqueBaixaDTO resultado = agrupado.darBaixa(List.of(1L), List.of(4L));
+
+        // Assert
+        assertTrue(resultado.sucesso());
+        verify(estoque).darBaixa(List.of(1L), List.of(4L));
+    }
+
+    @Test
+    void darBaixa_DevePropagarErroParaTodosOsPedidos_QuandoChamadaDoLoteFalhar() throws Exception {
+        // Arrange
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofSeconds(30), 2);
+        when(estoque.darBaixa(anyList(), anyList())).thenThrow(new IllegalStateException("Estoque indisponível."));
+
+        // Act
+        List<Future<EstoqueBaixaDTO>> pedidos = List.of(
+                executor.submit(() -> agrupado.darBaixa(List.of(1L), List.of(1L))),
+                executor.submit(() -> agrupado.darBaixa(List.of(2L), List.of(1L))));
+
+        // Assert
+        for (Future<EstoqueBaixaDTO> pedido : pedidos) {
+            Exception erro = assertThrows(Exception.class, () -> pedido.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, erro.getCause());
+        }
+        verify(estoque, times(1)).darBaixa(anyList(), anyList());
+    }
+
+    @SafeVarargs
+    private <T> List<T> emParalelo(Callable<T>... chamadas) throws Exception {
+        List<Future<T>> futuros = new ArrayList<>();
+        for (Callable<T> chamada : chamadas) {
+            futuros.add(executor.submit(chamada));
+        }
+        List<T> resultados = new ArrayList<>();
+        for (Future<T> futuro : futuros) {
+            resultados.add(futuro.get(5, TimeUnit.SECONDS));
+        }
+        return resultados;
+    }
+}
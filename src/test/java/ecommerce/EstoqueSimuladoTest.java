@@ -0,0 +1,144 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.external.fake.EstoqueSimulado;
+
+class EstoqueSimuladoTest {
+
+    @Test
+    void darBaixa_DeveSubtrairTodosOsProdutos_QuandoHouverEstoque() {
+        // Arrange
+        EstoqueSimulado estoque = new EstoqueSimulado(0, 16);
+        estoque.definirEstoque(1L, 10);
+        estoque.definirEstoque(2L, 5);
+
+        // Act
+        boolean sucesso = estoque.darBaixa(List.of(1L, 2L, 1L), List.of(3L, 5L, 2L)).sucesso();
+
+        // Assert
+        assertTrue(sucesso);
+        assertEquals(5, estoque.consultarEstoque(1L));
+        assertEquals(0, estoque.consultarEstoque(2L));
+    }
+
+    @Test
+    void darBaixa_NaoDeveAlterarNenhumProduto_QuandoUmDelesNaoTiverEstoque() {
+        // Arrange
+        EstoqueSimulado estoque = new EstoqueSimulado(0, 16);
+        estoque.definirEstoque(1L, 10);
+        estoque.definirEstoque(2L, 1);
+
+        // Act
+        boolean sucesso = estoque.darBaixa(List.of(1L, 2L, 3L), List.of(4L, 1L, 1L)).sucesso();
+
+        // Assert
+        assertFalse(sucesso);
+        assertEquals(10, estoque.consultarEstoque(1L));
+        assertEquals(1, estoque.consultarEstoque(2L));
+    }
+
+    @Test
+    void verificarDisponibilidade_DeveInformarProdutosIndisponiveis() {
+        // Arrange
+        EstoqueSimulado estoque = new EstoqueSimulado(0, 16);
+        estoque.definirEstoque(1L, 10);
+        estoque.definirEstoque(2L, 1);
+
+        // Act
+        DisponibilidadeDTO disponibilidade = estoque.verificarDisponibilidade(List.of(1L, 2L, 3L), List.of(10L, 2L, 1L));
+
+        // Assert
+        assertEquals(new DisponibilidadeDTO(false, List.of(2L, 3L)), disponibilidade);
+    }
+
+    @Test
+    void darBaixa_DeveRegistrarProdutosDesconhecidos_QuandoHouverQuantidadeInicial() {
+        // Arrange
+        EstoqueSimulado estoque = new EstoqueSimulado(100, 16);
+
+        // Act
+        // Força o crescimento da tabela várias vezes
+        for (long id = 1; id <= 5_000; id++) {
+            assertTrue(estoque.darBaixa(List.of(id), List.of(id % 100)).sucesso());
+        }
+
+        // Assert
+        for (long id = 1; id <= 5_000; id++) {
+            assertEquals(100 - id % 100, estoque.consultarEstoque(id));
+        }
+    }
+
+    @Test
+    void darBaixa_NuncaDeveDeixarEstoqueNegativo_QuandoHouverConcorrencia() throws Exception {
+        // Arrange
+        int produtos = 32;
+        long estoqueInicial = 20_000;
+        int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+        EstoqueSimulado estoque = new EstoqueSimulado(0, 8);
+        for (long id = 1; id <= produtos; id++) {
+            estoque.definirEstoque(id, estoqueInicial);
+        }
+        AtomicLongArray baixados = new AtomicLongArray(produtos + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch largada = new CountDownLatch(1);
+
+        // Act
+        List<Future<?>> tarefas = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tarefas.add(executor.submit(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                largada.await();
+                for (int i = 0; i < 50_000; i++) {
+                    int itens = aleatorio.nextInt(1, 4);
+                    List<Long> ids = new ArrayList<>(itens);
+                    List<Long> quantidades = new ArrayList<>(itens);
+                    for (int j = 0; j < itens; j++) {
+                        ids.add(aleatorio.nextLong(1, produtos + 1));
+                        quantidades.add(aleatorio.nextLong(1, 6));
+                    }
+                    if (estoque.darBaixa(ids, quantidades).sucesso()) {
+                        for (int j = 0; j < itens; j++) {
+                            baixados.addAndGet(ids.get(j).intValue(), quantidades.get(j));
+                        }
+                    }
+                    for (long id = 1; id <= produtos; id++) {
+                        if (estoque.consultarEstoque(id) < 0) {
+                            throw new AssertionError("Estoque negativo no produto " + id);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        largada.countDown();
+        for (Future<?> tarefa : tarefas) {
+            tarefa.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        // Assert
+        long totalBaixado = 0;
+        for (int id = 1; id <= produtos; id++) {
+            long restante = estoque.consultarEstoque((long) id);
+            assertTrue(restante >= 0);
+            assertEquals(estoqueInicial - baixados.get(id), restante);
+            totalBaixado += baixados.get(id);
+        }
+        // A carga pedida é bem maior que o estoque, então boa parte dele precisa ter sido consumida
+        assertTrue(totalBaixado > produtos * estoqueInicial / 2);
+    }
+}
@@ -0,0 +1,193 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import ecommerce.controller.CompraController;
+import ecommerce.dto.CompraDTO;
+import ecommerce.service.CheckoutAssincronoService;
+import ecommerce.service.CompraRecusadaException;
+import ecommerce.service.CompraService;
+import ecommerce.service.IdempotenciaService;
+
+class IdempotenciaServiceTest {
+
+    private final IdempotenciaService service = new IdempotenciaService(100, Duration.ofMinutes(10), Duration.ofSeconds(5));
+
+    @Test
+    void executar_DeveExecutarUmaVez_QuandoHouverRepeticoesConcorrentes() throws Exception {
+        // Arrange
+        CompraService compraService = mock(CompraService.class);
+        CompraController controller = new CompraController(compraService, service, mock(CheckoutAssincronoService.class));
+        CountDownLatch liberarPagamento = new CountDownLatch(1);
+        when(compraService.finalizarCompra(1L, 2L)).thenAnswer(invocation -> {
+            liberarPagamento.await();
+            return new CompraDTO(true, 99L, "Compra finalizada com sucesso.");
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+
+        // Act
+        List<Future<ResponseEntity<CompraDTO>>> respostas = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            respostas.add(executor.submit(() -> controller.finalizarCompra(1L, 2L, "chave-1")));
+        }
+        Thread.sleep(50);
+        liberarPagamento.countDown();
+
+        // Assert
+        for (Future<ResponseEntity<CompraDTO>> resposta : respostas) {
+            ResponseEntity<CompraDTO> resultado = resposta.get(5, TimeUnit.SECONDS);
+            assertEquals(HttpStatus.OK, resultado.getStatusCode());
+            assertEquals(99L, resultado.getBody().transacaoPagamentoId());
+        }
+        assertEquals(99L, controller.finalizarCompra(1L, 2L, "chave-1").getBody().transacaoPagamentoId());
+        verify(compraService, times(1)).finalizarCompra(1L, 2L);
+        executor.shutdown();
+    }
+
+    @Test
+    void executar_DeveEsperarExecucaoEmAndamento_QuandoElaDurarMaisQueAExpiracao() throws Exception {
+        // Arrange
+        IdempotenciaService curta = new IdempotenciaService(1, Duration.ofMillis(10), Duration.ofSeconds(5));
+        AtomicInteger pagamentos = new AtomicInteger();
+        CountDownLatch liberarPagamento = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Integer> primeira = executor.submit(() -> curta.executar("chave", 1, () -> {
+            aguardar(liberarPagamento);
+            return pagamentos.incrementAndGet();
+        }, resultado -> true));
+        Thread.sleep(50);
+        curta.executar("outra", 1, () -> 0, resultado -> true);
+
+        // Act
+        Future<Integer> repeticao = executor.submit(
+                () -> curta.executar("chave", 1, pagamentos::incrementAndGet, resultado -> true));
+        Thread.sleep(50);
+        liberarPagamento.countDown();
+
+        // Assert
+        assertEquals(1, primeira.get(5, TimeUnit.SECONDS));
+        assertEquals(1, repeticao.get(5, TimeUnit.SECONDS));
+        assertEquals(1, pagamentos.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void executar_DeveExecutarNovamente_QuandoResultadoNaoForReaproveitavel() {
+        // Arrange
+        AtomicInteger execucoes = new AtomicInteger();
+
+        // Act
+        service.executar("chave", 1, execucoes::incrementAndGet, resultado -> false);
+        int segunda = service.executar("chave", 1, execucoes::incrementAndGet, resultado -> false);
+
+        // Assert
+        assertEquals(2, segunda);
+    }
+
+    @Test
+    void executar_DeveLiberarChave_QuandoAcaoLancarExcecao() {
+        // Arrange
+        AtomicInteger execucoes = new AtomicInteger();
+
+        // Act
+        assertThrows(IllegalArgumentException.class, () -> service.executar("chave", 1, () -> {
+            execucoes.incrementAndGet();
+            throw new IllegalArgumentException("Carrinho não encontrado.");
+        }, resultado -> true));
+        int resultado = service.executar("chave", 1, execucoes::incrementAndGet, r -> true);
+
+        // Assert
+        assertEquals(2, resultado);
+    }
+
+    @Test
+    void executar_DeveRecusarChave_QuandoUsadaComOutraRequisicao() {
+        // Arrange
+        service.executar("chave", List.of(1L, 2L), () -> "primeira", resultado -> true);
+
+        // Act
+        IllegalStateException erro = assertThrows(IllegalStateException.class,
+                () -> service.executar("chave", List.of(3L, 2L), () -> "segunda", resultado -> true));
+
+        // Assert
+        assertEquals("Chave de idempotência já usada em outra requisição.", erro.getMessage());
+    }
+
+    @Test
+    void finalizarCompra_NaoDeveGuardarResposta_QuandoErroInterno() {
+        // Arrange
+        CompraService compraService = mock(CompraService.class);
+        CompraController controller = new CompraController(compraService, service, mock(CheckoutAssincronoService.class));
+        when(compraService.finalizarCompra(1L, 2L))
+                .thenThrow(new RuntimeException("falha"))
+                .thenReturn(new CompraDTO(true, 7L, "Compra finalizada com sucesso."));
+
+        // Act
+        ResponseEntity<CompraDTO> primeira = controller.finalizarCompra(1L, 2L, "chave-2");
+        ResponseEntity<CompraDTO> segunda = controller.finalizarCompra(1L, 2L, "chave-2");
+
+        // Assert
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, primeira.getStatusCode());
+        assertEquals(HttpStatus.OK, segunda.getStatusCode());
+        verify(compraService, times(2)).finalizarCompra(1L, 2L);
+    }
+
+    @Test
+    void finalizarCompra_DeveExecutarDeNovo_QuandoPrimeiraTentativaEstourarOPrazo() {
+        // Arrange
+        CompraService compraService = mock(CompraService.class);
+        CompraController controller = new CompraController(compraService, service, mock(CheckoutAssincronoService.class));
+        when(compraService.finalizarCompra(1L, 2L))
+                .thenThrow(new IllegalStateException("Tempo esgotado na consulta ao estoque."))
+                .thenReturn(new CompraDTO(true, 7L, "Compra finalizada com sucesso."));
+
+        // Act
+        ResponseEntity<CompraDTO> primeira = controller.finalizarCompra(1L, 2L, "chave-3");
+        ResponseEntity<CompraDTO> segunda = controller.finalizarCompra(1L, 2L, "chave-3");
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, primeira.getStatusCode());
+        assertEquals(HttpStatus.OK, segunda.getStatusCode());
+        verify(compraService, times(2)).finalizarCompra(1L, 2L);
+    }
+
+    @Test
+    void finalizarCompra_DeveGuardarRecusa_QuandoPagamentoForNegado() {
+        // Arrange
+        CompraService compraService = mock(CompraService.class);
+        CompraController controller = new CompraController(compraService, service, mock(CheckoutAssincronoService.class));
+        when(compraService.finalizarCompra(1L, 2L)).thenThrow(new CompraRecusadaException("Pagamento não autorizado."));
+
+        // Act
+        controller.finalizarCompra(1L, 2L, "chave-4");
+        ResponseEntity<CompraDTO> repeticao = controller.finalizarCompra(1L, 2L, "chave-4");
+
+        // Assert
+        assertEquals(HttpStatus.CONFLICT, repeticao.getStatusCode());
+        assertEquals("Pagamento não autorizado.", repeticao.getBody().mensagem());
+        verify(compraService, times(1)).finalizarCompra(1L, 2L);
+    }
+
+    private static void aguardar(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.Disjuntor;
+import ecommerce.external.Disjuntor.Situacao;
+import ecommerce.external.EstoqueResiliente;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.Isolamento;
+import ecommerce.external.PagamentoResiliente;
+import ecommerce.external.ServicoIndisponivelException;
+
+class IsolamentoTest {
+
+    private final AtomicLong relogio = new AtomicLong();
+    private final List<Isolamento> isolamentos = new ArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        isolamentos.forEach(Isolamento::close);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void disjuntor_DeveAbrirNoLimiteDeFalhasEFecharAposChamadaDeTeste() {
+        // Arrange
+        Disjuntor disjuntor = new Disjuntor("teste", 3, Duration.ofSeconds(10), relogio::get);
+
+        // Act
+        disjuntor.registrarFalha();
+        disjuntor.registrarFalha();
+        disjuntor.registrarSucesso();
+        disjuntor.registrarFalha();
+        disjuntor.registrarFalha();
+        assertEquals(Situacao.FECHADO, disjuntor.situacao());
+        disjuntor.registrarFalha();
+
+        // Assert
+        assertEquals(Situacao.ABERTO, disjuntor.situacao());
+        assertFalse(disjuntor.permitir());
+        relogio.addAndGet(Duration.ofSeconds(10).toNanos());
+        // Só uma chamada de teste passa enquanto o circuito está meio aberto
+        assertTrue(disjuntor.permitir());
+        assertFalse(disjuntor.permitir());
+        disjuntor.registrarSucesso();
+        assertEquals(Situacao.FECHADO, disjuntor.situacao());
+    }
+
+    @Test
+    void disjuntor_DeveReabrir_QuandoChamadaDeTesteFalhar() {
+        // Arrange
+        Disjuntor disjuntor = new Disjuntor("teste", 1, Duration.ofSeconds(10), relogio::get);
+        disjuntor.registrarFalha();
+        relogio.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        // Act
+        assertTrue(disjuntor.permitir());
+        disjuntor.registrarFalha();
+
+        // Assert
+        assertEquals(Situacao.ABERTO, disjuntor.situacao());
+        relogio.addAndGet(Duration.ofSeconds(9).toNanos());
+        assertFalse(disjuntor.permitir());
+    }
+
+    @Test
+    void executar_NaoDeveDeixarCircuitoMeioAberto_QuandoCompartimentoCheioRecusarAChamadaDeTeste() throws Exception {
+        // Arrange
+        CountDownLatch liberarEstoque = new CountDownLatch(1);
+        Isolamento isolamento = criarIsolamento("estoque", 1, Duration.ofSeconds(30), 1);
+        EstoqueResiliente estoque = new EstoqueResiliente(new EstoqueBloqueado(liberarEstoque), isolamento);
+        Future<DisponibilidadeDTO> consultaPresa = executor.submit(
+                () -> estoque.verificarDisponibilidade(List.of(1L), List.of(1L)));
+        Thread.sleep(50);
+        isolamento.disjuntor().registrarFalha();
+        relogio.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        // Act
+        ServicoIndisponivelException recusa = assertThrows(ServicoIndisponivelException.class,
+                () -> isolamento.executar(() -> new EstoqueBaixaDTO(true)));
+
+        // Assert
+        assertEquals("Serviço de estoque sobrecarregado.", recusa.getMessage());
+        assertEquals(Situacao.ABERTO, isolamento.disjuntor().situacao());
+        liberarEstoque.countDown();
+        consultaPresa.get(5, TimeUnit.SECONDS);
+        assertTrue(isolamento.executar(() -> new EstoqueBaixaDTO(true)).sucesso());
+        assertEquals(Situacao.FECHADO, isolamento.disjuntor().situacao());
+    }
+
+    @Test
+    void executar_DeveRecusarNaHora_QuandoPrazosEstouradosAbriremOCircuito() {
+        // Arrange
+        Isolamento isolamento = criarIsolamento("estoque", 4, Duration.ofMillis(50), 2);
+        EstoqueResiliente estoque = new EstoqueResiliente(new EstoqueLento(Duration.ofSeconds(5)), isolamento);
+
+        // Act
+        for (int i = 0; i < 2; i++) {
+            IllegalStateException prazo = assertThrows(IllegalStateException.class,
+                    () -> estoque.verificarDisponibilidade(List.of(1L), List.of(1L)));
+            assertEquals("Tempo esgotado na chamada ao serviço de estoque.", prazo.getMessage());
+        }
+        long inicio = System.nanoTime();
+        ServicoIndisponivelException recusa = assertThrows(ServicoIndisponivelException.class,
+                () -> estoque.darBaixa(List.of(1L), List.of(1L)));
+
+        // Assert
+        assertEquals("Serviço de estoque indisponível.", recusa.getMessage());
+        assertTrue(System.nanoTime() - inicio < TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(Situacao.ABERTO, isolamento.disjuntor().situacao());
+    }
+
+    @Test
+    void executar_DeveManterCapacidadeDoPagamento_QuandoEstoqueLentoOcuparTodasAsSuasThreads() throws Exception {
+        // Arrange
+        CountDownLatch liberarEstoque = new CountDownLatch(1);
+        EstoqueResiliente estoque = new EstoqueResiliente(new EstoqueBloqueado(liberarEstoque),
+                criarIsolamento("estoque", 2, Duration.ofSeconds(30), 5));
+        PagamentoResiliente pagamento = new PagamentoResiliente(new PagamentoLento(Duration.ofMillis(10)),
+                criarIsolamento("pagamento", 2, Duration.ofSeconds(1), 5));
+        List<Future<DisponibilidadeDTO>> consultasPresas = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            consultasPresas.add(executor.submit(() -> estoque.verificarDisponibilidade(List.of(1L), List.of(1L))));
+        }
+        Thread.sleep(50);
+
+        // Act
+        ServicoIndisponivelException recusa = assertThrows(ServicoIndisponivelException.class,
+                () -> estoque.verificarDisponibilidade(List.of(2L), List.of(1L)));
+        List<PagamentoDTO> pagamentos = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            pagamentos.add(pagamento.autorizarPagamento(1L, 10.0));
+        }
+
+        // Assert
+        assertEquals("Serviço de estoque sobrecarregado.", recusa.getMessage());
+        pagamentos.forEach(autorizacao -> assertTrue(autorizacao.autorizado()));
+        liberarEstoque.countDown();
+        for (Future<DisponibilidadeDTO> consulta : consultasPresas) {
+            assertTrue(consulta.get(5, TimeUnit.SECONDS).disponivel());
+        }
+    }
+
+    @Test
+    void executar_NaoDeveContarFalha_QuandoRespostaForNegativa() {
+        // Arrange
+        Isolamento isolamento = criarIsolamento("estoque", 2, Duration.ofSeconds(1), 1);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            assertFalse(isolamento.executar(() -> new EstoqueBaixaDTO(false)).sucesso());
+        }
+
+        // Assert
+        assertEquals(Situacao.FECHADO, isolamento.disjuntor().situacao());
+    }
+
+    private Isolamento criarIsolamento(String servico, int threads, Duration prazo, int falhasParaAbrir) {
+        Isolamento isolamento = new Isolamento(servico, threads, prazo,
+                new Disjuntor(servico, falhasParaAbrir, Duration.ofSeconds(10), relogio::get),
+                Thread.ofPlatform().daemon().factory());
+        isolamentos.add(isolamento);
+        return isolamento;
+    }
+
+    // Dublês locais com latência injetada
+
+    private record EstoqueLento(Duration latencia) implements IEstoqueExternal {
+
+        @Override
+        public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+            esperar(latencia);
+            return new EstoqueBaixaDTO(true);
+        }
+
+        @Override
+        public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+            esperar(latencia);
+            return new DisponibilidadeDTO(true, List.of());
+        }
+    }
+
+    private record EstoqueBloqueado(CountDownLatch liberar) implements IEstoqueExternal {
+
+        @Override
+        public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+            aguardar();
+            return new EstoqueBaixaDTO(true);
+        }
+
+        @Override
+        public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+            aguardar();
+            return new DisponibilidadeDTO(true, List.of());
+        }
+
+        private void aguardar() {
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private record PagamentoLento(Duration latencia) implements IPagamentoExternal {
+
+        @Override
+        public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+            esperar(latencia);
+            return new PagamentoDTO(true, 1L);
+        }
+
+        @Override
+        public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+        }
+    }
+
+    private static void esperar(Duration latencia) {
+        try {
+            Thread.sleep(latencia);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ecommerce.config.ExecutoresConfig;
+import ecommerce.controller.CarrinhoController;
+import ecommerce.dto.OrcamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.entity.VersaoPrecos;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.repository.VersaoPrecosRepository;
+import ecommerce.service.CalculadoraCusto;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.CarrinhosAtivos;
+import ecommerce.service.CatalogoProdutos;
+import ecommerce.service.ChaveOrcamento;
+import ecommerce.service.ClienteService;
+import ecommerce.service.CompraService;
+import ecommerce.service.MetricasCompra;
+import ecommerce.service.OrcamentoService;
+import ecommerce.service.PedidoService;
+import ecommerce.service.TabelasPreco;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Intervalo zero: cada identificação relê a versão de preços do banco
+@DataJpaTest(properties = { "spring.jpa.properties.hibernate.generate_statistics=true",
+        "ecommerce.cache.produtos.intervalo-versao=0s" })
+@Import({ OrcamentoService.class, CompraService.class, ClienteService.class, CarrinhoDeComprasService.class,
+        CatalogoProdutos.class, ExecutoresConfig.class, MetricasCompra.class, SimpleMeterRegistry.class,
+        CalculadoraCusto.class, TabelasPreco.class, PedidoService.class, CarrinhosAtivos.class })
+class OrcamentoServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private OrcamentoService orcamentoService;
+
+    @Autowired
+    private CarrinhoDeComprasService carrinhoService;
+
+    @Autowired
+    private CompraService compraService;
+
+    @Autowired
+    private VersaoPrecosRepository versaoPrecosRepository;
+
+    @MockBean
+    private IEstoqueExternal estoqueExternal;
+
+    @MockBean
+    private IPagamentoExternal pagamentoExternal;
+
+    private Statistics estatisticas;
+
+    private Long clienteId;
+
+    private Long carrinhoId;
+
+    private Long brindeId;
+
+    private Long livroId;
+
+    @BeforeEach
+    void setUp() {
+        Cliente cliente = entityManager.persist(new Cliente(null, "Cliente", "Endereço", TipoCliente.PRATA));
+        Produto livro = entityManager.persist(
+                new Produto(null, "Livro", "Descrição", new BigDecimal("120.00"), 3, TipoProduto.LIVRO));
+        Produto brinde = entityManager.persist(
+                new Produto(null, "Brinde", "Descrição", BigDecimal.ZERO, 0, TipoProduto.LIVRO));
+        List<ItemCompra> itens = new ArrayList<>(List.of(new ItemCompra(null, livro, 5L), new ItemCompra(null, brinde, 1L)));
+        CarrinhoDeCompras carrinho = entityManager.persist(new CarrinhoDeCompras(null, cliente, itens, null));
+        entityManager.persist(new VersaoPrecos(VersaoPrecos.ID, 1L));
+        entityManager.flush();
+        entityManager.clear();
+
+        clienteId = cliente.getId();
+        carrinhoId = carrinho.getId();
+        brindeId = itens.get(1).getId();
+        livroId = livro.getId();
+        estatisticas = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void orcar_DeveDetalharOCustoTotalDaFinalizacao() {
+        // Act
+        OrcamentoDTO orcamento = orcamentoService.orcar(orcamentoService.identificar(carrinhoId, clienteId));
+
+        // Assert
+        // 600 em produtos com 10% de desconto; 15 kg a R$ 4/kg com metade do frete para PRATA
+        assertEquals(new BigDecimal("600.00"), orcamento.subtotal());
+        assertEquals(new BigDecimal("60.00"), orcamento.desconto());
+        assertEquals(new BigDecimal("30.00"), orcamento.frete());
+        assertEquals(new BigDecimal("570.00"), orcamento.total());
+        assertEquals(new BigDecimal("600.00"), orcamento.itens().get(0).valor());
+        assertEquals(compraService.calcularCustoTotal(
+                carrinhoService.buscarPorCarrinhoIdEClienteId(carrinhoId, clienteId)), orcamento.total());
+    }
+
+    @Test
+    void orcar_DeveReaproveitarOrcamentoSemPrecificar_QuandoChaveNaoMudar() {
+        // Arrange
+        OrcamentoDTO primeiro = orcamentoService.orcar(orcamentoService.identificar(carrinhoId, clienteId));
+        entityManager.clear();
+        estatisticas.clear();
+
+        // Act
+        OrcamentoDTO segundo = orcamentoService.orcar(orcamentoService.identificar(carrinhoId, clienteId));
+
+        // Assert
+        assertSame(primeiro, segundo);
+        // Só as versões de preços e do carrinho; nem itens nem produtos
+        assertEquals(2, estatisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void identificar_DeveMudarAChave_QuandoQuantidadeMudarMesmoSemMudarOsTotais() {
+        // Arrange
+        ChaveOrcamento antes = orcamentoService.identificar(carrinhoId, clienteId);
+
+        // Act
+        carrinhoService.alterarQuantidade(carrinhoId, clienteId, brindeId, 3L);
+        entityManager.flush();
+        entityManager.clear();
+        ChaveOrcamento depois = orcamentoService.identificar(carrinhoId, clienteId);
+
+        // Assert
+        assertNotEquals(antes.etag(), depois.etag());
+        assertEquals(3L, orcamentoService.orcar(depois).itens().get(1).quantidade());
+    }
+
+    @Test
+    void identificar_DeveMudarAEtag_QuandoPrecoMudarForaDaInstancia() {
+        // Arrange
+        ChaveOrcamento antes = orcamentoService.identificar(carrinhoId, clienteId);
+        orcamentoService.orcar(antes);
+        // Outra instância, ou um UPDATE direto no banco, muda o preço e avança a versão
+        entityManager.getEntityManager().createQuery("update Produto p set p.preco = 100 where p.id = :id")
+                .setParameter("id", livroId)
+                .executeUpdate();
+        versaoPrecosRepository.avancar();
+        entityManager.clear();
+
+        // Act
+        ChaveOrcamento depois = orcamentoService.identificar(carrinhoId, clienteId);
+
+        // Assert
+        assertNotEquals(antes.etag(), depois.etag());
+        assertEquals(new BigDecimal("500.00"), orcamentoService.orcar(depois).subtotal());
+    }
+
+    @Test
+    void orcar_DeveResponder304_QuandoIfNoneMatchTiverAEtagAtual() {
+        // Arrange
+        CarrinhoController controller = new CarrinhoController(carrinhoService, compraService, orcamentoService,
+                new ObjectMapper());
+        ResponseEntity<OrcamentoDTO> primeira = controller.orcar(carrinhoId, clienteId, requisicao(null));
+        String etag = primeira.getHeaders().getETag();
+        estatisticas.clear();
+
+        // Act
+        ResponseEntity<OrcamentoDTO> segunda = controller.orcar(carrinhoId, clienteId, requisicao(etag));
+
+        // Assert
+        assertEquals(HttpStatus.OK, primeira.getStatusCode());
+        assertFalse(etag.startsWith("W/"));
+        assertEquals(HttpStatus.NOT_MODIFIED, segunda.getStatusCode());
+        assertNull(segunda.getBody());
+        assertEquals(2, estatisticas.getPrepareStatementCount());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.orcar(carrinhoId, clienteId + 1, requisicao(null)).getStatusCode());
+    }
+
+    private static ServletWebRequest requisicao(String etag) {
+        MockHttpServletRequest requisicao = new MockHttpServletRequest("GET", "/carrinhos/1/orcamento");
+        if (etag != null) {
+            requisicao.addHeader("If-None-Match", etag);
+        }
+        return new ServletWebRequest(requisicao, new MockHttpServletResponse());
+    }
+}
@@ -0,0 +1,96 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import ecommerce.controller.CompraController;
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.Disjuntor;
+import ecommerce.external.Disjuntor.Situacao;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.Isolamento;
+import ecommerce.external.PagamentoResiliente;
+import ecommerce.external.ServicoIndisponivelException;
+import ecommerce.service.CheckoutAssincronoService;
+import ecommerce.service.CompraService;
+import ecommerce.service.IdempotenciaService;
+
+class PagamentoResilienteTest {
+
+    private final IPagamentoExternal pagamentoExternal = mock(IPagamentoExternal.class);
+    private final Isolamento isolamento = new Isolamento("pagamento", 4, Duration.ofMillis(100),
+            new Disjuntor("pagamento", 1, Duration.ofMinutes(1)), Thread.ofPlatform().daemon().factory());
+    private final PagamentoResiliente pagamento = new PagamentoResiliente(pagamentoExternal, isolamento);
+
+    @AfterEach
+    void tearDown() {
+        isolamento.close();
+    }
+
+    @Test
+    void autorizarPagamento_DeveCancelarAutorizacaoAtrasada_QuandoPrazoEstourar() throws Exception {
+        // Arrange
+        CountDownLatch liberarAutorizacao = new CountDownLatch(1);
+        when(pagamentoExternal.autorizarPagamento(1L, 10.0)).thenAnswer(invocation -> {
+            liberarAutorizacao.await();
+            return new PagamentoDTO(true, 77L);
+        });
+
+        // Act
+        IllegalStateException prazo = assertThrows(IllegalStateException.class,
+                () -> pagamento.autorizarPagamento(1L, 10.0));
+        liberarAutorizacao.countDown();
+
+        // Assert
+        assertEquals("Tempo esgotado na chamada ao serviço de pagamento.", prazo.getMessage());
+        // A autorização não foi interrompida e foi desfeita ao chegar
+        verify(pagamentoExternal, timeout(TimeUnit.SECONDS.toMillis(5))).cancelarPagamento(1L, 77L);
+    }
+
+    @Test
+    void cancelarPagamento_DeveCompensar_QuandoCircuitoEstiverAberto() {
+        // Arrange
+        when(pagamentoExternal.autorizarPagamento(1L, 10.0)).thenThrow(new RuntimeException("fora do ar"));
+        assertThrows(RuntimeException.class, () -> pagamento.autorizarPagamento(1L, 10.0));
+        assertEquals(Situacao.ABERTO, isolamento.disjuntor().situacao());
+
+        // Act
+        assertThrows(ServicoIndisponivelException.class, () -> pagamento.autorizarPagamento(1L, 10.0));
+        pagamento.cancelarPagamento(1L, 5L);
+
+        // Assert
+        verify(pagamentoExternal, times(1)).autorizarPagamento(1L, 10.0);
+        verify(pagamentoExternal).cancelarPagamento(1L, 5L);
+    }
+
+    @Test
+    void finalizarCompra_DeveResponder503_QuandoServicoEstiverIndisponivel() {
+        // Arrange
+        CompraService compraService = mock(CompraService.class);
+        CompraController controller = new CompraController(compraService,
+                new IdempotenciaService(100, Duration.ofMinutes(10), Duration.ofSeconds(5)),
+                mock(CheckoutAssincronoService.class));
+        when(compraService.finalizarCompra(1L, 2L))
+                .thenThrow(new ServicoIndisponivelException("Serviço de pagamento indisponível."));
+
+        // Act
+        ResponseEntity<CompraDTO> resposta = controller.finalizarCompra(1L, 2L, "chave");
+
+        // Assert
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, resposta.getStatusCode());
+        assertEquals("Serviço de pagamento indisponível.", resposta.getBody().mensagem());
+        // Respostas 5xx não ficam guardadas: a repetição tenta de novo
+        controller.finalizarCompra(1L, 2L, "chave");
+        verify(compraService, times(2)).finalizarCompra(1L, 2L);
+    }
+}
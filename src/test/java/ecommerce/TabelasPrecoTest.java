@@ -0,0 +1,166 @@
+package ecommerce;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.mock.env.MockEnvironment;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.service.CalculadoraCusto;
+import ecommerce.service.Promocao;
+import ecommerce.service.RegrasPreco;
+import ecommerce.service.TabelasPreco;
+
+class TabelasPrecoTest {
+
+    private final MockEnvironment environment = new MockEnvironment();
+
+    @Test
+    void aoMudarAmbiente_DevePublicarNovasRegras_QuandoPropriedadesDePrecoMudarem() {
+        // Arrange
+        TabelasPreco tabelas = new TabelasPreco(environment);
+        CalculadoraCusto calculadora = new CalculadoraCusto(tabelas);
+        CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE, BigDecimal.valueOf(600), 6);
+        assertEquals(new BigDecimal("552.00"), calculadora.calcularCustoTotal(carrinho));
+
+        // Act
+        environment.setProperty("ecommerce.precos.desconto.limites", "600");
+        environment.setProperty("ecommerce.precos.desconto.percentuais", "30");
+        environment.setProperty("ecommerce.precos.frete.preco-por-kg", "0,3,4,7");
+        tabelas.aoMudarAmbiente(new EnvironmentChangeEvent(Set.of("ecommerce.precos.desconto.limites")));
+
+        // Assert
+        assertEquals(new BigDecimal("438.00"), calculadora.calcularCustoTotal(carrinho));
+    }
+
+    @Test
+    void aoMudarAmbiente_DeveManterRegrasAnteriores_QuandoConfiguracaoForInvalida() {
+        // Arrange
+        TabelasPreco tabelas = new TabelasPreco(environment);
+        RegrasPreco anteriores = tabelas.atuais();
+
+        // Act
+        environment.setProperty("ecommerce.precos.frete.limites-peso", "10,5");
+        tabelas.aoMudarAmbiente(new EnvironmentChangeEvent(Set.of("ecommerce.precos.frete.limites-peso")));
+
+        // Assert
+        assertSame(anteriores, tabelas.atuais());
+    }
+
+    @Test
+    void aoMudarAmbiente_DeveIgnorarEvento_QuandoNenhumaPropriedadeDePrecoMudar() {
+        // Arrange
+        TabelasPreco tabelas = new TabelasPreco(environment);
+        RegrasPreco anteriores = tabelas.atuais();
+
+        // Act
+        environment.setProperty("ecommerce.precos.desconto.percentuais", "50,60");
+        tabelas.aoMudarAmbiente(new EnvironmentChangeEvent(Set.of("spring.application.name")));
+
+        // Assert
+        assertSame(anteriores, tabelas.atuais());
+    }
+
+    @Test
+    void aoMudarAmbiente_DevePublicarPromocoes_QuandoPropriedadeDePromocoesMudar() {
+        // Arrange
+        TabelasPreco tabelas = new TabelasPreco(environment);
+        CalculadoraCusto calculadora = new CalculadoraCusto(tabelas);
+        CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE, BigDecimal.valueOf(600), 6);
+        carrinho.getItens().get(0).getProduto().setTipo(TipoProduto.ELETRONICO);
+        assertTrue(tabelas.atuais().promocoes().vazia());
+
+        // Act
+        environment.setProperty("ecommerce.precos.promocoes", "eletronico:percentual:25, alimento:leve-pague:3:2");
+        tabelas.aoMudarAmbiente(new EnvironmentChangeEvent(Set.of("ecommerce.precos.promocoes")));
+
+        // Assert
+        // 450 depois da promoção, abaixo do primeiro limite de desconto; 6 kg a R$ 2/kg
+        assertFalse(tabelas.atuais().promocoes().vazia());
+        assertEquals(new BigDecimal("462.00"), calculadora.calcularCustoTotal(carrinho));
+    }
+
+    @Test
+    void calcularCustoTotal_DeveAplicarPromocoes_QuandoForemPublicadasDepoisDeConferirOsTotais() {
+        // Arrange
+        TabelasPreco tabelas = new TabelasPreco(environment);
+        CalculadoraCusto calculadora = new CalculadoraCusto(tabelas);
+        CarrinhoDeCompras carrinho = criarCarrinho(TipoCliente.BRONZE, BigDecimal.valueOf(600), 6);
+        carrinho.getItens().get(0).getProduto().setTipo(TipoProduto.ELETRONICO);
+        carrinho.recalcularTotais(1L);
+        carrinho.setTotaisConferidos(true);
+        RegrasPreco anteriores = calculadora.regras();
+
+        // Act
+        environment.setProperty("ecommerce.precos.promocoes", "eletronico:percentual:25");
+        tabelas.aoMudarAmbiente(new EnvironmentChangeEvent(Set.of("ecommerce.precos.promocoes")));
+
+        // Assert
+        // Os totais conferidos valem só para a tabela sem promoções com que foram preparados
+        assertEquals(new BigDecimal("462.00"), calculadora.calcularCustoTotal(carrinho));
+        assertEquals(new BigDecimal("462.00"), calculadora.detalhar(carrinho, TipoCliente.BRONZE).total());
+        assertEquals(new BigDecimal("552.00"), calculadora.calcularCustoTotal(carrinho, TipoCliente.BRONZE, anteriores));
+    }
+
+    @Test
+    void impressao_DeveDependerSoDoConteudoDasTabelas() {
+        // Arrange
+        environment.setProperty("ecommerce.precos.promocoes", "eletronico:percentual:25");
+        TabelasPreco tabelas = new TabelasPreco(environment);
+        // Outra instância com a mesma configuração, sem nenhuma recarga
+        long outraInstancia = new TabelasPreco(environment).atuais().impressao();
+
+        // Act
+        environment.setProperty("ecommerce.precos.promocoes", "eletronico:percentual:30");
+        tabelas.aoMudarAmbiente(new EnvironmentChangeEvent(Set.of("ecommerce.precos.promocoes")));
+        long alterada = tabelas.atuais().impressao();
+        environment.setProperty("ecommerce.precos.promocoes", "eletronico:percentual:25");
+        tabelas.aoMudarAmbiente(new EnvironmentChangeEvent(Set.of("ecommerce.precos.promocoes")));
+
+        // Assert
+        assertNotEquals(outraInstancia, alterada);
+        assertEquals(outraInstancia, tabelas.atuais().impressao());
+        assertNotEquals(RegrasPreco.PADRAO.impressao(), outraInstancia);
+    }
+
+    @Test
+    void ler_DeveRecusarPromocaoMalFormada() {
+        for (String definicao : List.of("eletronico:10", "brinquedo:percentual:10", "livro:percentual:dez",
+                "alimento:leve-pague:3", "livro:percentual:101", "alimento:leve-pague:2:2")) {
+            assertThrows(IllegalArgumentException.class, () -> Promocao.ler(definicao), definicao);
+        }
+        assertEquals(Promocao.levePague(TipoProduto.ALIMENTO, 3, 2), Promocao.ler(" Alimento : leve-pague : 3 : 2 "));
+    }
+
+    @Test
+    void compilar_DeveRecusarFatorComMaisDeDuasCasas() {
+        IllegalArgumentException erro = assertThrows(IllegalArgumentException.class, () -> RegrasPreco.compilar(
+                List.of(5), List.of(BigDecimal.ZERO, BigDecimal.ONE),
+                List.of(BigDecimal.ONE, new BigDecimal("0.333"), BigDecimal.ZERO),
+                List.of(), List.of()));
+
+        assertTrue(erro.getMessage().startsWith("Fator de frete"));
+    }
+
+    private CarrinhoDeCompras criarCarrinho(TipoCliente tipo, BigDecimal preco, int peso) {
+        Produto produto = new Produto();
+        produto.setPreco(preco);
+        produto.setPeso(peso);
+        Cliente cliente = new Cliente();
+        cliente.setTipo(tipo);
+        CarrinhoDeCompras carrinho = new CarrinhoDeCompras();
+        carrinho.setCliente(cliente);
+        carrinho.setItens(List.of(new ItemCompra(null, produto, 1L)));
+        return carrinho;
+    }
+}